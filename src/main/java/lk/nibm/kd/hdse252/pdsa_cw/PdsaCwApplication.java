@@ -2,8 +2,10 @@ package lk.nibm.kd.hdse252.pdsa_cw;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class PdsaCwApplication {
 
     public static void main(String[] args) {
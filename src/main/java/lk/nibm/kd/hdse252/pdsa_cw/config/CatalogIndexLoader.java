@@ -0,0 +1,53 @@
+package lk.nibm.kd.hdse252.pdsa_cw.config;
+
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.repositories.ProductRepository;
+import lk.nibm.kd.hdse252.pdsa_cw.services.CatalogIndex;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Loads the in-memory catalog indexes once at startup, before the web server accepts requests
+ * After this the indexes are kept up to date by ProductIndexListener
+ */
+@Component
+public class CatalogIndexLoader implements SmartInitializingSingleton {
+    
+    @Autowired
+    private ProductRepository productRepository;
+    
+    @Autowired
+    private List<CatalogIndex> catalogIndexes;
+    
+    @Override
+    public void afterSingletonsInstantiated() {
+        int loaded = loadCatalogIndexes();
+        System.out.println("✓ Catalog indexes loaded (" + loaded + " products)");
+    }
+    
+    /**
+     * Load every index from the database, returns the number of products loaded
+     */
+    public int loadCatalogIndexes() {
+        List<Product> products = productRepository.findAll();
+        for (CatalogIndex index : catalogIndexes) {
+            index.loadAll(products);
+        }
+        return products.size();
+    }
+    
+    /**
+     * Reload every index after writes that bypassed ProductIndexListener (bulk import)
+     * Slow indexes may finish in the background, see CatalogIndex.reloadAll
+     */
+    public int reloadCatalogIndexes() {
+        List<Product> products = productRepository.findAll();
+        for (CatalogIndex index : catalogIndexes) {
+            index.reloadAll(products);
+        }
+        return products.size();
+    }
+}
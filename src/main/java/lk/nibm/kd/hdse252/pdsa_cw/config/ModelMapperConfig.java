@@ -1,16 +0,0 @@
-package lk.nibm.kd.hdse252.pdsa_cw.config;
-
-import org.modelmapper.ModelMapper;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-
-@Configuration
-public class ModelMapperConfig {
-    
-    @Bean
-    public ModelMapper modelMapper() {
-        return new ModelMapper();
-    }
-}
-
-
@@ -1,15 +1,24 @@
 package lk.nibm.kd.hdse252.pdsa_cw.controllers;
 
+import lk.nibm.kd.hdse252.pdsa_cw.dto.FacetResultDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductImportResultDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductPageDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductSearchDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.dto.RestockRequestDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.StockPredictionDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.services.ProductAnalyticsService;
+import lk.nibm.kd.hdse252.pdsa_cw.services.ProductImportService;
 import lk.nibm.kd.hdse252.pdsa_cw.services.ProductService;
+import lk.nibm.kd.hdse252.pdsa_cw.services.StockReservationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -18,12 +27,21 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class ProductController {
     
+    // Autocomplete is called on every keystroke, so one call never returns more than this
+    private static final int MAX_AUTOCOMPLETE_LIMIT = 50;
+    
     @Autowired
     private ProductService productService;
     
     @Autowired
     private ProductAnalyticsService analyticsService;
     
+    @Autowired
+    private ProductImportService importService;
+    
+    @Autowired
+    private StockReservationService stockReservationService;
+    
     /**
      * Add a new product
      */
@@ -37,6 +55,26 @@ public class ProductController {
         }
     }
     
+    /**
+     * Bulk import products from a CSV (text/csv, header row of field names) or NDJSON (application/x-ndjson) body
+     * The body is streamed, rows that fail are reported per chunk and the rest are imported
+     */
+    @PostMapping("/import")
+    public ResponseEntity<?> importProducts(
+            InputStream body,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+            @RequestParam(required = false) String format) {
+        if (format == null) {
+            format = contentType != null && contentType.contains("json") ? "ndjson" : "csv";
+        }
+        try {
+            ProductImportResultDTO result = importService.importProducts(body, format);
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        } catch (IllegalArgumentException | IOException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+    
     /**
      * Update an existing product
      */
@@ -85,6 +123,23 @@ public class ProductController {
         return new ResponseEntity<>(products, HttpStatus.OK);
     }
     
+    /**
+     * Get one page of the product grid (keyset pagination)
+     * Pass the returned nextCursor as cursor to get the following page
+     */
+    @GetMapping("/page")
+    public ResponseEntity<?> getProductPage(
+            @RequestParam(defaultValue = "productCode") String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        try {
+            ProductPageDTO page = productService.getProductPage(sort, cursor, size);
+            return new ResponseEntity<>(page, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+    
     /**
      * Search product by product code (using BST)
      */
@@ -98,6 +153,18 @@ public class ProductController {
         }
     }
     
+    /**
+     * Autocomplete products by code or name prefix (using Radix Tree)
+     * limit is capped at MAX_AUTOCOMPLETE_LIMIT
+     */
+    @GetMapping("/autocomplete")
+    public ResponseEntity<List<ProductDTO>> autocomplete(
+            @RequestParam String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        List<ProductDTO> products = productService.autocomplete(prefix, Math.min(limit, MAX_AUTOCOMPLETE_LIMIT));
+        return new ResponseEntity<>(products, HttpStatus.OK);
+    }
+    
     /**
      * Advanced search with multiple criteria
      */
@@ -107,6 +174,15 @@ public class ProductController {
         return new ResponseEntity<>(products, HttpStatus.OK);
     }
     
+    /**
+     * Advanced search with facet counts for the current filter
+     */
+    @PostMapping("/search/facets")
+    public ResponseEntity<FacetResultDTO> searchWithFacets(@RequestBody ProductSearchDTO searchDTO) {
+        FacetResultDTO result = productService.searchWithFacets(searchDTO);
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+    
     /**
      * Get sorted products (using BST - sorted by product code)
      */
@@ -134,6 +210,14 @@ public class ProductController {
         return new ResponseEntity<>(lowStockProducts, HttpStatus.OK);
     }
     
+    /**
+     * Stock free for new orders and units reserved by pending orders
+     */
+    @GetMapping("/{id}/availability")
+    public ResponseEntity<Map<String, Object>> getAvailability(@PathVariable Long id) {
+        return new ResponseEntity<>(stockReservationService.getAvailability(id), HttpStatus.OK);
+    }
+    
     /**
      * Get all restock requests (from Queue)
      */
@@ -158,14 +242,18 @@ public class ProductController {
     
     /**
      * Enhanced Functionality 1: Stock Prediction using Moving Average Algorithm
+     * algorithm: moving-average (default), holt or holt-winters
      */
     @GetMapping("/predict-stock/{productCode}")
     public ResponseEntity<Map<String, Object>> predictStockRequirements(
             @PathVariable String productCode,
-            @RequestParam(defaultValue = "30") int days) {
+            @RequestParam(defaultValue = "30") int days,
+            @RequestParam(defaultValue = "moving-average") String algorithm) {
         try {
-            Map<String, Object> prediction = analyticsService.predictStockRequirements(productCode, days);
+            Map<String, Object> prediction = analyticsService.predictStockRequirements(productCode, days, algorithm);
             return new ResponseEntity<>(prediction, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         } catch (Exception e) {
             return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
         }
@@ -175,9 +263,9 @@ public class ProductController {
      * Predict stock for all products
      */
     @GetMapping("/predict-stock/all")
-    public ResponseEntity<List<Map<String, Object>>> predictAllProductsStock(
+    public ResponseEntity<List<StockPredictionDTO>> predictAllProductsStock(
             @RequestParam(defaultValue = "30") int days) {
-        List<Map<String, Object>> predictions = analyticsService.predictAllProductsStock(days);
+        List<StockPredictionDTO> predictions = analyticsService.predictAllProductsStock(days);
         return new ResponseEntity<>(predictions, HttpStatus.OK);
     }
     
@@ -198,18 +286,50 @@ public class ProductController {
     
     /**
      * Enhanced Functionality 2: Product Recommendation using Similarity Algorithm
+     * mode=co-purchase returns the products most often bought together instead
      */
     @GetMapping("/recommend/{productCode}")
     public ResponseEntity<List<ProductDTO>> recommendSimilarProducts(
             @PathVariable String productCode,
-            @RequestParam(defaultValue = "5") int maxRecommendations) {
+            @RequestParam(defaultValue = "5") int maxRecommendations,
+            @RequestParam(defaultValue = "similarity") String mode) {
         try {
-            List<ProductDTO> recommendations = analyticsService.recommendSimilarProducts(productCode, maxRecommendations);
+            List<ProductDTO> recommendations;
+            switch (mode) {
+                case "similarity":
+                    recommendations = analyticsService.recommendSimilarProducts(productCode, maxRecommendations);
+                    break;
+                case "co-purchase":
+                    recommendations = analyticsService.recommendCoPurchasedProducts(productCode, maxRecommendations);
+                    break;
+                default:
+                    return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+            }
             return new ResponseEntity<>(recommendations, HttpStatus.OK);
         } catch (Exception e) {
             return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
         }
     }
+    
+    /**
+     * Rebuild the similar-product (or co-purchase) index in the background
+     */
+    @PostMapping("/recommend/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildRecommendations(
+            @RequestParam(defaultValue = "similarity") String mode) {
+        Map<String, Object> status;
+        switch (mode) {
+            case "similarity":
+                status = analyticsService.rebuildSimilarityIndex();
+                break;
+            case "co-purchase":
+                status = analyticsService.rebuildCoPurchaseIndex();
+                break;
+            default:
+                return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(status, HttpStatus.ACCEPTED);
+    }
 }
 
 
@@ -0,0 +1,20 @@
+package lk.nibm.kd.hdse252.pdsa_cw.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetResultDTO {
+    private List<ProductDTO> products;
+    private Integer total; // Number of matching products
+    private Map<String, Integer> categories; // Category -> count, most common first
+    private Map<String, Integer> woodTypes;
+    private Map<String, Integer> finishedTypes;
+    private Map<String, Integer> priceRanges; // Fixed price buckets, in price order
+}
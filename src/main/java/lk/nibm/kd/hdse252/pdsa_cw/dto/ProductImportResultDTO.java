@@ -0,0 +1,39 @@
+package lk.nibm.kd.hdse252.pdsa_cw.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductImportResultDTO {
+    private Integer totalRows; // Data rows read (header excluded)
+    private Integer imported;
+    private Integer failed;
+    private Long durationMs;
+    private List<ImportChunkDTO> chunks = new ArrayList<>();
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ImportChunkDTO {
+        private Integer chunk; // 1-based
+        private Integer firstRow; // Row number of the first row in the chunk
+        private Integer rows;
+        private Integer imported;
+        private List<ImportRowErrorDTO> errors = new ArrayList<>();
+    }
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ImportRowErrorDTO {
+        private Integer row; // 1-based data row number
+        private String productCode;
+        private String message;
+    }
+}
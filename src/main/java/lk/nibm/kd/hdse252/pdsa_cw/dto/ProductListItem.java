@@ -0,0 +1,19 @@
+package lk.nibm.kd.hdse252.pdsa_cw.dto;
+
+/**
+ * Projection of the columns shown in the product grid
+ * Filled straight from the query, so no Product entity is created or tracked
+ */
+public interface ProductListItem {
+    Long getId();
+    String getProductCode();
+    String getName();
+    String getItemType();
+    String getFinishedType();
+    String getWoodType();
+    Boolean getIsCarved();
+    Double getCost();
+    Double getSellingPrice();
+    Integer getStock();
+    Integer getMinStockLevel();
+}
@@ -0,0 +1,17 @@
+package lk.nibm.kd.hdse252.pdsa_cw.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductPageDTO {
+    private List<ProductListItem> items;
+    private String sort; // productCode or id
+    private Integer size; // Requested page size
+    private String nextCursor; // Pass as cursor to get the next page, null on the last page
+}
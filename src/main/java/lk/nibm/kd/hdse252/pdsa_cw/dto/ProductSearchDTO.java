@@ -9,11 +9,15 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 public class ProductSearchDTO {
     private String searchTerm;
+    private String searchMode; // AND (default): every word must match, OR: any word
     private String category;
     private String woodType;
+    private String itemType;
+    private String finishedType;
     private Double minPrice;
     private Double maxPrice;
     private Integer minStock;
+    private Integer maxStock;
 }
 
 
@@ -15,6 +15,7 @@ public class RestockRequestDTO {
     private String productName;
     private Integer requestedQuantity;
     private Integer currentStock;
+    private Double stockRatio;
     private String priority; // HIGH, MEDIUM, LOW
     private LocalDateTime requestedAt;
     private String status; // PENDING, PROCESSED, CANCELLED
@@ -0,0 +1,22 @@
+package lk.nibm.kd.hdse252.pdsa_cw.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockPredictionDTO {
+    private String productCode;
+    private String productName;
+    private Integer currentStock;
+    private Integer predictedStock; // Stock left after daysPredicted (never below 0)
+    private Double predictedConsumption;
+    private Integer recommendedOrderQuantity;
+    private Integer daysPredicted;
+    private LocalDateTime predictionDate;
+    private String algorithm;
+}
@@ -6,6 +6,7 @@ import lombok.NoArgsConstructor;
 
 /**
  * Binary Search Tree Node for efficient product searching and sorting
+ * Height is kept so the tree can rebalance itself (AVL)
  */
 @Data
 @NoArgsConstructor
@@ -14,12 +15,12 @@ public class BSTNode {
     private Product product;
     private BSTNode left;
     private BSTNode right;
+    private int height;
     
     public BSTNode(Product product) {
         this.product = product;
         this.left = null;
         this.right = null;
+        this.height = 1;
     }
 }
-
-
@@ -0,0 +1,177 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sparse item-item co-occurrence matrix built from orders
+ *
+ * The row of product A holds, for every product B bought together with A, the
+ * number of orders containing both (a LongIntHashMap keyed by B's id), plus the
+ * number of orders containing A. Rows are found through a LongIntHashMap from
+ * product id to row, so nothing is boxed. Each row also keeps its best partners
+ * in a sorted NeighborList, so the top K is read in O(K).
+ *
+ * Counts only grow while orders are added, so a partner outside the top list
+ * can only enter it when it is incremented, which is exactly when it is offered.
+ * Not thread safe, callers guard it with their own lock
+ */
+public class CoPurchaseMatrix {
+    
+    private static final int MISSING = -1;
+    
+    private final int topSize;
+    private final LongIntHashMap rowIndex = new LongIntHashMap();
+    private final List<Row> rows = new ArrayList<>();
+    
+    public CoPurchaseMatrix(int topSize) {
+        this.topSize = topSize;
+    }
+    
+    /**
+     * Count an order and keep the top lists in step (productIds must be distinct)
+     */
+    public void addOrder(long[] productIds) {
+        for (long productId : productIds) {
+            Row row = rowFor(productId);
+            row.orders++;
+            for (long partnerId : productIds) {
+                if (partnerId != productId) {
+                    int count = row.partners.addTo(partnerId, 1);
+                    row.top.remove(partnerId);
+                    row.top.offer(partnerId, count);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Count an order into the rows owned by this partition only, without touching the top lists
+     * Used by a parallel build, where every partition fills a disjoint set of rows
+     */
+    public void countOrder(long[] productIds, int partition, int partitions) {
+        for (long productId : productIds) {
+            if (Math.floorMod(productId, partitions) != partition) {
+                continue;
+            }
+            Row row = rowFor(productId);
+            row.orders++;
+            for (long partnerId : productIds) {
+                if (partnerId != productId) {
+                    row.partners.addTo(partnerId, 1);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Rebuild every top list from the counts (after countOrder)
+     */
+    public void rankPartners() {
+        for (Row row : rows) {
+            row.rank(topSize);
+        }
+    }
+    
+    /**
+     * Move the rows of another matrix into this one, the two must not share a row
+     */
+    public void absorb(CoPurchaseMatrix other) {
+        for (Row row : other.rows) {
+            rowIndex.put(row.productId, rows.size(), MISSING);
+            rows.add(row);
+        }
+        other.rows.clear();
+        other.rowIndex.clear();
+    }
+    
+    /**
+     * Drop a product's row and column, lists that held it are re-ranked
+     */
+    public void removeProduct(long productId) {
+        int index = rowIndex.remove(productId, MISSING);
+        if (index == MISSING) {
+            return;
+        }
+        Row removed = rows.get(index);
+        Row last = rows.remove(rows.size() - 1);
+        if (last != removed) {
+            rows.set(index, last);
+            rowIndex.put(last.productId, index, MISSING);
+        }
+        
+        // The matrix is symmetric, so only the removed product's partners can hold it
+        removed.partners.forEach((partnerId, count) -> {
+            Row partner = row(partnerId);
+            if (partner != null) {
+                partner.partners.remove(productId, 0);
+                if (partner.top.remove(productId)) {
+                    partner.rank(topSize);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Number of orders containing the product
+     */
+    public int orderCount(long productId) {
+        Row row = row(productId);
+        return row != null ? row.orders : 0;
+    }
+    
+    /**
+     * The products most often bought with this one, best first (null if it was never ordered)
+     * Up to topSize partners are the stored list, more are ranked from the counts
+     */
+    public NeighborList topPartners(long productId, int limit) {
+        Row row = row(productId);
+        if (row == null) {
+            return null;
+        }
+        if (limit <= topSize) {
+            return row.top;
+        }
+        TopKHeap heap = new TopKHeap(limit);
+        row.partners.forEach(heap::offer);
+        return heap.drainToNeighborList(limit);
+    }
+    
+    public int size() {
+        return rows.size();
+    }
+    
+    private Row row(long productId) {
+        int index = rowIndex.get(productId, MISSING);
+        return index == MISSING ? null : rows.get(index);
+    }
+    
+    private Row rowFor(long productId) {
+        int index = rowIndex.get(productId, MISSING);
+        if (index != MISSING) {
+            return rows.get(index);
+        }
+        Row row = new Row(productId, topSize);
+        rowIndex.put(productId, rows.size(), MISSING);
+        rows.add(row);
+        return row;
+    }
+    
+    private static class Row {
+        private final long productId;
+        private final LongIntHashMap partners = new LongIntHashMap(8);
+        private NeighborList top;
+        private int orders;
+        
+        Row(long productId, int topSize) {
+            this.productId = productId;
+            this.top = new NeighborList(topSize);
+        }
+        
+        void rank(int topSize) {
+            TopKHeap heap = new TopKHeap(topSize);
+            partners.forEach(heap::offer);
+            top = heap.drainToNeighborList(topSize);
+        }
+    }
+}
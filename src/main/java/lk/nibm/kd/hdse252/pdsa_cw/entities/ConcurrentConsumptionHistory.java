@@ -0,0 +1,147 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread safe daily consumption history for one product
+ *
+ * Today's consumption goes into a LongAdder, so concurrent writers to the same
+ * product add to separate cells instead of contending on one lock. Closed days
+ * live in a ConsumptionRingBuffer. The first caller to see a new day takes the
+ * write lock once and moves the adder's total into the ring (day rollover).
+ * Readers take an optimistic read of the ring and today's total, and retry
+ * under the read lock if a rollover ran meanwhile, so every read sees one
+ * consistent window.
+ *
+ * Each closed day (and each empty day after it) is also folded into Holt and
+ * Holt-Winters smoothing state, so those forecasts cost O(1) per day of
+ * history. Late records for an already closed day only reach the window.
+ *
+ * A record that races with the rollover at midnight may be counted on the
+ * new day, it is never lost.
+ */
+public class ConcurrentConsumptionHistory {
+    
+    // Empty days folded into the smoothing state after a gap, longer gaps only decay it this far
+    private static final int MAX_EMPTY_DAYS = 56;
+    
+    private final StampedLock lock = new StampedLock();
+    private final ConsumptionRingBuffer closedDays = new ConsumptionRingBuffer();
+    private final SmoothingForecast holt = new SmoothingForecast(false);
+    private final SmoothingForecast holtWinters = new SmoothingForecast(true);
+    private final LongAdder today = new LongAdder();
+    private volatile long currentDay;
+    private volatile boolean recordedToday;
+    
+    public ConcurrentConsumptionHistory(long day) {
+        this.currentDay = day;
+    }
+    
+    /**
+     * Add consumption on an epoch day
+     */
+    public void record(long day, int quantity) {
+        if (day > currentDay) {
+            rollOver(day);
+        }
+        if (day == currentDay) {
+            today.add(quantity);
+            if (!recordedToday) {
+                recordedToday = true;
+            }
+            return;
+        }
+        
+        // Late record for a closed day (rare), written straight into the ring
+        long stamp = lock.writeLock();
+        try {
+            closedDays.record(day, quantity);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Consistent copy of the last 30 days as of the given day, today included
+     */
+    public ConsumptionRingBuffer snapshot(long day) {
+        if (day > currentDay) {
+            rollOver(day);
+        }
+        
+        long stamp = lock.tryOptimisticRead();
+        ConsumptionRingBuffer snapshot = closedDays.copy();
+        long snapshotDay = currentDay;
+        boolean hasToday = recordedToday;
+        long todayTotal = today.sum();
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                snapshot = closedDays.copy();
+                snapshotDay = currentDay;
+                hasToday = recordedToday;
+                todayTotal = today.sum();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        
+        if (hasToday || todayTotal != 0) {
+            snapshot.record(snapshotDay, (int) todayTotal);
+        }
+        return snapshot;
+    }
+    
+    /**
+     * Smoothing state as of the given day (Holt, or Holt-Winters when seasonal)
+     * Only days before that day are folded in
+     */
+    public SmoothingForecast forecastState(long day, boolean seasonal) {
+        if (day > currentDay) {
+            rollOver(day);
+        }
+        SmoothingForecast source = seasonal ? holtWinters : holt;
+        long stamp = lock.tryOptimisticRead();
+        SmoothingForecast state = source.copy();
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                state = source.copy();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return state;
+    }
+    
+    /**
+     * Close the current day: move today's total into the ring and start the new day
+     */
+    private void rollOver(long day) {
+        long stamp = lock.writeLock();
+        try {
+            if (day <= currentDay) {
+                return; // another caller already rolled over
+            }
+            long total = today.sumThenReset();
+            if (recordedToday || total != 0) {
+                closedDays.record(currentDay, (int) total);
+            }
+            if (recordedToday || total != 0 || holt.hasObservations()) {
+                holt.observe(currentDay, total);
+                holtWinters.observe(currentDay, total);
+                long lastEmptyDay = Math.min(day - 1, currentDay + MAX_EMPTY_DAYS);
+                for (long emptyDay = currentDay + 1; emptyDay <= lastEmptyDay; emptyDay++) {
+                    holt.observe(emptyDay, 0);
+                    holtWinters.observe(emptyDay, 0);
+                }
+            }
+            recordedToday = false;
+            closedDays.advanceTo(day);
+            currentDay = day;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import java.util.Arrays;
+
+/**
+ * Circular buffer of daily stock consumption for one product (last 30 days)
+ * Slot = epoch day % 30, so a day's slot is reused once it falls out of the window
+ * Running totals for the 30 and 7 day windows are kept up to date as days pass,
+ * so recording and moving average queries are O(1) and allocate nothing
+ * Not thread safe, callers guard it with their own lock
+ */
+public class ConsumptionRingBuffer {
+    
+    public static final int WINDOW_DAYS = 30;
+    public static final int AVERAGE_DAYS = 7;
+    
+    private static final long NO_DAY = Long.MIN_VALUE;
+    
+    private final long[] days = new long[WINDOW_DAYS];
+    private final int[] quantities = new int[WINDOW_DAYS];
+    private long currentDay = NO_DAY;
+    private long firstDay = NO_DAY; // first day with a record that is still in the window
+    private long windowTotal = 0;
+    private long averageTotal = 0;
+    private int recordedDays = 0;
+    
+    public ConsumptionRingBuffer() {
+        Arrays.fill(days, NO_DAY);
+    }
+    
+    /**
+     * Independent copy of this buffer
+     */
+    public ConsumptionRingBuffer copy() {
+        ConsumptionRingBuffer copy = new ConsumptionRingBuffer();
+        System.arraycopy(days, 0, copy.days, 0, WINDOW_DAYS);
+        System.arraycopy(quantities, 0, copy.quantities, 0, WINDOW_DAYS);
+        copy.currentDay = currentDay;
+        copy.firstDay = firstDay;
+        copy.windowTotal = windowTotal;
+        copy.averageTotal = averageTotal;
+        copy.recordedDays = recordedDays;
+        return copy;
+    }
+    
+    /**
+     * Add consumption on an epoch day, days older than the window are ignored
+     */
+    public void record(long day, int quantity) {
+        advanceTo(day);
+        if (day <= currentDay - WINDOW_DAYS) {
+            return;
+        }
+        
+        int slot = slotOf(day);
+        if (days[slot] != day) {
+            days[slot] = day;
+            quantities[slot] = 0;
+            recordedDays++;
+        }
+        quantities[slot] += quantity;
+        windowTotal += quantity;
+        if (day > currentDay - AVERAGE_DAYS) {
+            averageTotal += quantity;
+        }
+        if (firstDay == NO_DAY || day < firstDay) {
+            firstDay = day;
+        }
+    }
+    
+    /**
+     * Average daily consumption over the last 7 days up to today
+     * Products with a shorter history are averaged over the days since their first record
+     */
+    public double movingAverage(long today) {
+        advanceTo(today);
+        if (recordedDays == 0) {
+            return 0.0;
+        }
+        long span = Math.min(AVERAGE_DAYS, currentDay - firstDay + 1);
+        return (double) averageTotal / Math.max(1, span);
+    }
+    
+    /**
+     * True if nothing was recorded in the last 30 days
+     */
+    public boolean isEmpty(long today) {
+        advanceTo(today);
+        return recordedDays == 0;
+    }
+    
+    public long getWindowTotal(long today) {
+        advanceTo(today);
+        return windowTotal;
+    }
+    
+    /**
+     * Move the window forward to a day, dropping the days that fall out of it
+     */
+    public void advanceTo(long day) {
+        if (currentDay == NO_DAY) {
+            currentDay = day;
+            return;
+        }
+        if (day <= currentDay) {
+            return;
+        }
+        if (day - currentDay >= WINDOW_DAYS) {
+            Arrays.fill(days, NO_DAY);
+            Arrays.fill(quantities, 0);
+            windowTotal = 0;
+            averageTotal = 0;
+            recordedDays = 0;
+            firstDay = NO_DAY;
+            currentDay = day;
+            return;
+        }
+        
+        for (long next = currentDay + 1; next <= day; next++) {
+            // next - 7 leaves the averaging window, next - 30 leaves the buffer
+            int leavingAverage = slotOf(next - AVERAGE_DAYS);
+            if (days[leavingAverage] == next - AVERAGE_DAYS) {
+                averageTotal -= quantities[leavingAverage];
+            }
+            int leavingWindow = slotOf(next - WINDOW_DAYS);
+            if (days[leavingWindow] == next - WINDOW_DAYS) {
+                windowTotal -= quantities[leavingWindow];
+                days[leavingWindow] = NO_DAY;
+                quantities[leavingWindow] = 0;
+                recordedDays--;
+            }
+        }
+        currentDay = day;
+        if (firstDay != NO_DAY && firstDay <= currentDay - WINDOW_DAYS) {
+            firstDay = recordedDays == 0 ? NO_DAY : oldestRecordedDay();
+        }
+    }
+    
+    private long oldestRecordedDay() {
+        long oldest = NO_DAY;
+        for (long day : days) {
+            if (day != NO_DAY && (oldest == NO_DAY || day < oldest)) {
+                oldest = day;
+            }
+        }
+        return oldest;
+    }
+    
+    private static int slotOf(long day) {
+        return (int) Math.floorMod(day, (long) WINDOW_DAYS);
+    }
+}
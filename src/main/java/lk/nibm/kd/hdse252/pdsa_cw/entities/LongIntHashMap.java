@@ -0,0 +1,200 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long keys to int values (linear probing)
+ * Keys and values live in primitive arrays, so lookups never box a Long
+ * Removal shifts the following entries back instead of leaving tombstones
+ * Not thread safe, callers guard it with their own lock
+ */
+public class LongIntHashMap {
+    
+    private static final long FREE_KEY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.5f;
+    
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    
+    public LongIntHashMap() {
+        this(16);
+    }
+    
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+    
+    /**
+     * Get the value for a key, or missingValue if the key is not present
+     */
+    public int get(long key, int missingValue) {
+        int slot = findSlot(key);
+        return keys[slot] == FREE_KEY ? missingValue : values[slot];
+    }
+    
+    /**
+     * Get that may run while another thread writes, for StampedLock optimistic reads
+     * Reads one keys array and probes it at most once round, so it never throws or spins,
+     * but the result is only valid if the caller's stamp still validates afterwards
+     */
+    public int getOptimistic(long key, int missingValue) {
+        long[] table = keys;
+        int[] tableValues = values;
+        int tableMask = table.length - 1;
+        int slot = hash(key, tableMask);
+        for (int probes = 0; probes <= tableMask; probes++) {
+            long current = table[slot];
+            if (current == key) {
+                return slot < tableValues.length ? tableValues[slot] : missingValue;
+            }
+            if (current == FREE_KEY) {
+                break;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        return missingValue;
+    }
+    
+    public boolean containsKey(long key) {
+        return keys[findSlot(key)] != FREE_KEY;
+    }
+    
+    /**
+     * Put a value, returning the previous value or missingValue
+     */
+    public int put(long key, int value, int missingValue) {
+        checkKey(key);
+        int slot = findSlot(key);
+        if (keys[slot] != FREE_KEY) {
+            int previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+    
+    /**
+     * Add delta to the value of a key (starting from 0), returning the new value
+     */
+    public int addTo(long key, int delta) {
+        checkKey(key);
+        int slot = findSlot(key);
+        if (keys[slot] != FREE_KEY) {
+            values[slot] += delta;
+            return values[slot];
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+        return delta;
+    }
+    
+    /**
+     * Remove a key, returning its value or missingValue
+     */
+    public int remove(long key, int missingValue) {
+        int slot = findSlot(key);
+        if (keys[slot] == FREE_KEY) {
+            return missingValue;
+        }
+        int removed = values[slot];
+        
+        // Shift back entries whose probe sequence passes through the freed slot
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != FREE_KEY) {
+            int home = hash(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = FREE_KEY;
+        size--;
+        return removed;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        size = 0;
+    }
+    
+    /**
+     * Call the visitor for every entry (in table order)
+     */
+    public void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+    
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(long key, int value);
+    }
+    
+    private int findSlot(long key) {
+        int slot = hash(key);
+        while (keys[slot] != FREE_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    private int hash(long key) {
+        return hash(key, mask);
+    }
+    
+    private static int hash(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+    
+    private void checkKey(long key) {
+        if (key == FREE_KEY) {
+            throw new IllegalArgumentException("Key " + key + " is reserved");
+        }
+    }
+    
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE_KEY);
+        mask = capacity - 1;
+    }
+    
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE_KEY) {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+/**
+ * Bounded list of the most similar products to one product
+ * Kept sorted by score (highest first), ties by product id (lowest first)
+ * Not thread safe, callers guard it with their own lock
+ */
+public class NeighborList {
+    
+    private final long[] productIds;
+    private final double[] scores;
+    private int size;
+    
+    public NeighborList(int capacity) {
+        productIds = new long[capacity];
+        scores = new double[capacity];
+    }
+    
+    /**
+     * Insert a neighbor if it ranks among the best, returns the product id it pushed out
+     * Returns -1 if nothing was pushed out, or productId itself if it did not make the list
+     */
+    public long offer(long productId, double score) {
+        int capacity = productIds.length;
+        if (size == capacity && !ranksBefore(productId, score, productIds[size - 1], scores[size - 1])) {
+            return productId;
+        }
+        
+        long evicted = size == capacity ? productIds[size - 1] : -1;
+        int position = size == capacity ? size - 1 : size;
+        while (position > 0 && ranksBefore(productId, score, productIds[position - 1], scores[position - 1])) {
+            productIds[position] = productIds[position - 1];
+            scores[position] = scores[position - 1];
+            position--;
+        }
+        productIds[position] = productId;
+        scores[position] = score;
+        if (size < capacity) {
+            size++;
+        }
+        return evicted;
+    }
+    
+    /**
+     * Remove a neighbor, returns false if it was not in the list
+     */
+    public boolean remove(long productId) {
+        int position = indexOf(productId);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(productIds, position + 1, productIds, position, size - position - 1);
+        System.arraycopy(scores, position + 1, scores, position, size - position - 1);
+        size--;
+        return true;
+    }
+    
+    public boolean contains(long productId) {
+        return indexOf(productId) >= 0;
+    }
+    
+    public boolean isFull() {
+        return size == productIds.length;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public long productIdAt(int index) {
+        return productIds[index];
+    }
+    
+    public double scoreAt(int index) {
+        return scores[index];
+    }
+    
+    /**
+     * True if (id1, score1) is ranked ahead of (id2, score2)
+     */
+    public static boolean ranksBefore(long id1, double score1, long id2, double score2) {
+        return score1 > score2 || (score1 == score2 && id1 < id2);
+    }
+    
+    private int indexOf(long productId) {
+        for (int i = 0; i < size; i++) {
+            if (productIds[i] == productId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,99 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import java.util.Arrays;
+
+/**
+ * Compressed posting list for the inverted index
+ * Each entry is (gap from previous document id, term frequency), both written as varints,
+ * so a typical entry takes 2 bytes instead of 8
+ * Document ids must be added in increasing order
+ */
+public class PostingList {
+    
+    private byte[] data = new byte[8];
+    private int length = 0;
+    private int lastDocumentId = -1;
+    private int liveDocumentCount = 0; // document frequency used for ranking
+    
+    public void add(int documentId, int termFrequency) {
+        if (documentId <= lastDocumentId) {
+            throw new IllegalArgumentException("Document ids must increase: " + documentId + " after " + lastDocumentId);
+        }
+        ensureCapacity(10);
+        writeVarint(documentId - lastDocumentId);
+        writeVarint(termFrequency);
+        lastDocumentId = documentId;
+        liveDocumentCount++;
+    }
+    
+    /**
+     * A document in this list was deleted (its entry stays until the index is rebuilt)
+     */
+    public void documentDeleted() {
+        liveDocumentCount--;
+    }
+    
+    public int getLiveDocumentCount() {
+        return liveDocumentCount;
+    }
+    
+    public int getSizeInBytes() {
+        return length;
+    }
+    
+    public Cursor cursor() {
+        return new Cursor();
+    }
+    
+    /**
+     * Forward-only reader over the entries
+     */
+    public class Cursor {
+        private int position = 0;
+        private int documentId = -1;
+        private int termFrequency = 0;
+        
+        public boolean next() {
+            if (position >= length) {
+                return false;
+            }
+            documentId += readVarint();
+            termFrequency = readVarint();
+            return true;
+        }
+        
+        public int documentId() {
+            return documentId;
+        }
+        
+        public int termFrequency() {
+            return termFrequency;
+        }
+        
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+    
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+    
+    private void ensureCapacity(int extra) {
+        if (length + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+        }
+    }
+}
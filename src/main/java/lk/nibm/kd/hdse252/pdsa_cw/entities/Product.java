@@ -1,6 +1,7 @@
 package lk.nibm.kd.hdse252.pdsa_cw.entities;
 
 import jakarta.persistence.*;
+import lk.nibm.kd.hdse252.pdsa_cw.services.ProductIndexListener;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -9,6 +10,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "products")
+@EntityListeners(ProductIndexListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -73,6 +75,11 @@ public class Product {
     @Column(nullable = false)
     private LocalDateTime updatedAt;
     
+    // Optimistic lock, a save from a stale copy fails instead of overwriting newer changes
+    @Version
+    @Column(nullable = false)
+    private Long version;
+    
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -0,0 +1,25 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Radix Tree (compressed trie) Node for prefix search over product codes and names
+ * Each edge holds a whole run of characters instead of a single one
+ */
+@Data
+@NoArgsConstructor
+public class RadixTrieNode {
+    private String label = ""; // characters on the edge leading to this node
+    private TreeMap<Character, RadixTrieNode> children = new TreeMap<>();
+    private Set<Long> productIds = new LinkedHashSet<>(); // products whose key ends here
+    private int shortestKeyLength = Integer.MAX_VALUE; // length of the shortest key ending in this subtree
+    
+    public RadixTrieNode(String label) {
+        this.label = label;
+    }
+}
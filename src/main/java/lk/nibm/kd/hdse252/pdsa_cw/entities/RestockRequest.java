@@ -7,7 +7,7 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 /**
- * Entity for restock requests managed in a Queue
+ * Entity for restock requests managed in a Priority Queue
  */
 @Data
 @NoArgsConstructor
@@ -18,6 +18,7 @@ public class RestockRequest {
     private String productName;
     private Integer requestedQuantity;
     private Integer currentStock;
+    private Double stockRatio; // currentStock / minStockLevel, lower is more urgent
     private String priority; // HIGH, MEDIUM, LOW
     private LocalDateTime requestedAt;
     private String status; // PENDING, PROCESSED, CANCELLED
@@ -0,0 +1,93 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+/**
+ * Holt (level + trend) exponential smoothing of daily consumption, optionally with
+ * additive weekly seasonality (Holt-Winters). The state is a few doubles, each
+ * closed day updates it in O(1) and a forecast never looks at past days.
+ * Not thread safe, callers guard it with their own lock
+ */
+public class SmoothingForecast {
+    
+    public static final int SEASON_DAYS = 7;
+    
+    private static final double LEVEL_SMOOTHING = 0.3;   // alpha
+    private static final double TREND_SMOOTHING = 0.1;   // beta
+    private static final double SEASON_SMOOTHING = 0.2;  // gamma
+    
+    private final boolean seasonal;
+    private final double[] season = new double[SEASON_DAYS];
+    private double level;
+    private double trend;
+    private long observedDays = 0;
+    private long lastDay;
+    
+    public SmoothingForecast(boolean seasonal) {
+        this.seasonal = seasonal;
+    }
+    
+    /**
+     * Fold in the total consumption of one closed day (days must come in order)
+     */
+    public void observe(long day, double quantity) {
+        int slot = slotOf(day);
+        if (observedDays == 0) {
+            level = quantity;
+            trend = 0.0;
+        } else {
+            double previousLevel = level;
+            double seasonalPart = seasonal ? season[slot] : 0.0;
+            level = LEVEL_SMOOTHING * (quantity - seasonalPart) + (1 - LEVEL_SMOOTHING) * (level + trend);
+            trend = TREND_SMOOTHING * (level - previousLevel) + (1 - TREND_SMOOTHING) * trend;
+            if (seasonal) {
+                season[slot] = SEASON_SMOOTHING * (quantity - level) + (1 - SEASON_SMOOTHING) * season[slot];
+            }
+        }
+        observedDays++;
+        lastDay = day;
+    }
+    
+    /**
+     * Total consumption forecast for the days from firstDay to firstDay + days - 1
+     * Each day's forecast is clamped at 0
+     */
+    public double forecastTotal(long firstDay, int days) {
+        double total = 0.0;
+        for (int i = 0; i < days; i++) {
+            long day = firstDay + i;
+            long ahead = day - lastDay;
+            double daily = level + ahead * trend + (seasonal ? season[slotOf(day)] : 0.0);
+            total += Math.max(0.0, daily);
+        }
+        return total;
+    }
+    
+    public boolean hasObservations() {
+        return observedDays > 0;
+    }
+    
+    public long getObservedDays() {
+        return observedDays;
+    }
+    
+    public double getLevel() {
+        return level;
+    }
+    
+    public double getTrend() {
+        return trend;
+    }
+    
+    public SmoothingForecast copy() {
+        SmoothingForecast copy = new SmoothingForecast(seasonal);
+        System.arraycopy(season, 0, copy.season, 0, SEASON_DAYS);
+        copy.level = level;
+        copy.trend = trend;
+        copy.observedDays = observedDays;
+        copy.lastDay = lastDay;
+        return copy;
+    }
+    
+    private static int slotOf(long day) {
+        return (int) Math.floorMod(day, (long) SEASON_DAYS);
+    }
+}
@@ -0,0 +1,230 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free stock reservations for pending sales orders
+ *
+ * Every product has one AtomicLong packing its stock on hand (high 32 bits) and
+ * the units reserved by pending orders (low 32 bits). Reserving is a single
+ * compare-and-set that checks on hand - reserved >= quantity and adds to the
+ * reserved count in the same step, so two orders can never claim the same unit,
+ * and reading the free stock is one volatile read. Counters live in a
+ * ConcurrentHashMap, so orders for different products never contend.
+ *
+ * Stock on hand comes from the database with the product's version, and an
+ * update carrying an older version than the one applied is ignored, so a slow
+ * reconciliation read cannot undo a newer committed change.
+ *
+ * Reservations are kept per order with an expiry time. Releasing removes the
+ * order's entry first, so confirmation, cancellation, expiry and reconciliation
+ * can race to release the same order and its units are given back once. Expiry
+ * only removes the exact entry it found expired, so an order renewed for its
+ * confirmation in the meantime keeps its units.
+ */
+public class StockReservationLedger {
+    
+    private final ConcurrentHashMap<Long, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Reservation> reservations = new ConcurrentHashMap<>();
+    
+    /**
+     * Set a product's stock on hand, keeping its reserved units
+     * Ignored if the ledger already holds a newer version of the product
+     */
+    public void setOnHand(long productId, int onHand, long version) {
+        Counter counter = counters.computeIfAbsent(productId, id -> new Counter(onHand, version));
+        // Only on hand updates lock the counter, reservations keep going through the CAS
+        synchronized (counter) {
+            if (version < counter.version) {
+                return;
+            }
+            counter.version = version;
+            counter.state.getAndUpdate(state -> pack(onHand, reserved(state)));
+        }
+    }
+    
+    /**
+     * Start tracking a product that has not been loaded yet
+     */
+    public void trackIfAbsent(long productId, int onHand, long version) {
+        counters.computeIfAbsent(productId, id -> new Counter(onHand, version));
+    }
+    
+    public void removeProduct(long productId) {
+        counters.remove(productId);
+    }
+    
+    /**
+     * Reserve every line of an order (product id -> quantity) or none of them
+     * Returns the first product without enough free stock, or null once all lines are reserved
+     */
+    public Long reserve(long orderId, Map<Long, Integer> lines, long expiresAt) {
+        List<Map.Entry<Long, Integer>> taken = new ArrayList<>(lines.size());
+        for (Map.Entry<Long, Integer> line : lines.entrySet()) {
+            if (!tryReserve(line.getKey(), line.getValue())) {
+                for (Map.Entry<Long, Integer> reserved : taken) {
+                    unreserve(reserved.getKey(), reserved.getValue());
+                }
+                return line.getKey();
+            }
+            taken.add(line);
+        }
+        
+        Reservation previous = reservations.put(orderId, new Reservation(lines, expiresAt));
+        if (previous != null) {
+            previous.giveBack(this);
+        }
+        return null;
+    }
+    
+    /**
+     * The order that holds this reservation is visible in the database
+     */
+    public void markCommitted(long orderId) {
+        Reservation reservation = reservations.get(orderId);
+        if (reservation != null) {
+            reservation.committed = true;
+        }
+    }
+    
+    /**
+     * Move an order's expiry to expiresAt, returns false if it holds no reservation
+     */
+    public boolean renew(long orderId, long expiresAt) {
+        return reservations.computeIfPresent(orderId, (id, reservation) -> reservation.renewed(expiresAt)) != null;
+    }
+    
+    /**
+     * Give an order's reserved units back, returns false if it held none
+     */
+    public boolean release(long orderId) {
+        Reservation reservation = reservations.remove(orderId);
+        if (reservation == null) {
+            return false;
+        }
+        reservation.giveBack(this);
+        return true;
+    }
+    
+    /**
+     * Release every reservation that expired at or before now, returns how many were released
+     */
+    public int expire(long now) {
+        int released = 0;
+        for (Map.Entry<Long, Reservation> entry : reservations.entrySet()) {
+            Reservation reservation = entry.getValue();
+            // Removes this entry only, not one that replaced it after the expiry check
+            if (reservation.expiresAt <= now && reservations.remove(entry.getKey(), reservation)) {
+                reservation.giveBack(this);
+                released++;
+            }
+        }
+        return released;
+    }
+    
+    /**
+     * Orders whose reservation was committed, take this before reading the database for reconciliation
+     */
+    public Set<Long> committedOrderIds() {
+        Set<Long> orderIds = new HashSet<>();
+        for (Map.Entry<Long, Reservation> entry : reservations.entrySet()) {
+            if (entry.getValue().committed) {
+                orderIds.add(entry.getKey());
+            }
+        }
+        return orderIds;
+    }
+    
+    /**
+     * Stock on hand minus reserved units, 0 for a product that is not tracked
+     */
+    public int freeStock(long productId) {
+        Counter counter = counters.get(productId);
+        if (counter == null) {
+            return 0;
+        }
+        long state = counter.state.get();
+        return onHand(state) - reserved(state);
+    }
+    
+    public int reservedStock(long productId) {
+        Counter counter = counters.get(productId);
+        return counter != null ? reserved(counter.state.get()) : 0;
+    }
+    
+    private boolean tryReserve(long productId, int quantity) {
+        Counter counter = counters.get(productId);
+        if (counter == null) {
+            return false;
+        }
+        while (true) {
+            long state = counter.state.get();
+            int reserved = reserved(state);
+            if (onHand(state) - reserved < quantity) {
+                return false;
+            }
+            if (counter.state.compareAndSet(state, pack(onHand(state), reserved + quantity))) {
+                return true;
+            }
+        }
+    }
+    
+    private void unreserve(long productId, int quantity) {
+        Counter counter = counters.get(productId);
+        if (counter != null) {
+            counter.state.getAndUpdate(state -> pack(onHand(state), Math.max(0, reserved(state) - quantity)));
+        }
+    }
+    
+    private static long pack(int onHand, int reserved) {
+        return ((long) onHand << 32) | (reserved & 0xFFFFFFFFL);
+    }
+    
+    private static int onHand(long state) {
+        return (int) (state >> 32);
+    }
+    
+    private static int reserved(long state) {
+        return (int) state;
+    }
+    
+    private static class Counter {
+        private final AtomicLong state;
+        // Guarded by the counter's monitor
+        private long version;
+        
+        Counter(int onHand, long version) {
+            this.state = new AtomicLong(pack(onHand, 0));
+            this.version = version;
+        }
+    }
+    
+    private static class Reservation {
+        private final Map<Long, Integer> lines;
+        private final long expiresAt;
+        private volatile boolean committed;
+        
+        Reservation(Map<Long, Integer> lines, long expiresAt) {
+            this.lines = lines;
+            this.expiresAt = expiresAt;
+        }
+        
+        Reservation renewed(long newExpiresAt) {
+            Reservation reservation = new Reservation(lines, newExpiresAt);
+            reservation.committed = committed;
+            return reservation;
+        }
+        
+        void giveBack(StockReservationLedger ledger) {
+            for (Map.Entry<Long, Integer> line : lines.entrySet()) {
+                ledger.unreserve(line.getKey(), line.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+/**
+ * Fixed-size binary min-heap that keeps the K best (product id, score) pairs
+ * The root is the weakest pair kept, so a new pair only has to beat the root
+ * Ranking is score (highest first), then product id (lowest first)
+ * Scores and ids live in primitive arrays, offer is O(log K) and never allocates
+ */
+public class TopKHeap {
+    
+    private final long[] productIds;
+    private final double[] scores;
+    private int size;
+    
+    public TopKHeap(int capacity) {
+        productIds = new long[capacity];
+        scores = new double[capacity];
+    }
+    
+    /**
+     * Keep the pair if it is among the K best seen so far
+     */
+    public void offer(long productId, double score) {
+        if (productIds.length == 0) {
+            return;
+        }
+        if (size < productIds.length) {
+            productIds[size] = productId;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (NeighborList.ranksBefore(productId, score, productIds[0], scores[0])) {
+            productIds[0] = productId;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+    
+    /**
+     * Offer every pair of another heap (used to combine partial results)
+     */
+    public void offerAll(TopKHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.productIds[i], other.scores[i]);
+        }
+    }
+    
+    public boolean isFull() {
+        return size == productIds.length;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Score of the weakest pair kept (the one a new pair has to beat)
+     */
+    public double weakestScore() {
+        return scores[0];
+    }
+    
+    /**
+     * The kept pairs as a NeighborList, best first (the heap is emptied)
+     */
+    public NeighborList drainToNeighborList(int capacity) {
+        int count = size;
+        long[] sortedIds = new long[count];
+        double[] sortedScores = new double[count];
+        for (int i = count - 1; i >= 0; i--) {
+            sortedIds[i] = productIds[0];
+            sortedScores[i] = scores[0];
+            size--;
+            productIds[0] = productIds[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        
+        NeighborList list = new NeighborList(capacity);
+        for (int i = 0; i < count; i++) {
+            list.offer(sortedIds[i], sortedScores[i]);
+        }
+        return list;
+    }
+    
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!weaker(index, parent)) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+    
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                break;
+            }
+            int right = left + 1;
+            int weakest = right < size && weaker(right, left) ? right : left;
+            if (!weaker(weakest, index)) {
+                break;
+            }
+            swap(index, weakest);
+            index = weakest;
+        }
+    }
+    
+    // True if the pair at a ranks after the pair at b
+    private boolean weaker(int a, int b) {
+        return NeighborList.ranksBefore(productIds[b], scores[b], productIds[a], scores[a]);
+    }
+    
+    private void swap(int a, int b) {
+        long id = productIds[a];
+        productIds[a] = productIds[b];
+        productIds[b] = id;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -1,16 +1,19 @@
 package lk.nibm.kd.hdse252.pdsa_cw.repositories;
 
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductListItem;
 import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductRepositoryCustom {
     Optional<Product> findByProductCode(String productCode);
     
     List<Product> findByCategory(String category);
@@ -28,5 +31,29 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     
     @Query("SELECT p FROM Product p WHERE p.stock >= :minStock")
     List<Product> findByMinStock(@Param("minStock") Integer minStock);
+    
+    @Query("SELECT p.productCode FROM Product p WHERE p.productCode IN :productCodes")
+    List<String> findExistingProductCodes(@Param("productCodes") Collection<String> productCodes);
+    
+    // (id, stock, version) of every product, for reconciling in-memory stock counters
+    @Query("SELECT p.id, p.stock, p.version FROM Product p")
+    List<Object[]> findStockLevels();
+    
+    // Stock as stored in the database, a managed copy of the product may be older
+    @Query("SELECT p.stock FROM Product p WHERE p.id = :id")
+    Optional<Integer> findStockById(@Param("id") Long id);
+    
+    // Keyset pages for the product grid: seek past the last key of the previous page instead of using OFFSET
+    @Query("SELECT p.id AS id, p.productCode AS productCode, p.name AS name, p.itemType AS itemType, "
+            + "p.finishedType AS finishedType, p.woodType AS woodType, p.isCarved AS isCarved, p.cost AS cost, "
+            + "p.sellingPrice AS sellingPrice, p.stock AS stock, p.minStockLevel AS minStockLevel "
+            + "FROM Product p WHERE p.productCode > :afterCode ORDER BY p.productCode")
+    List<ProductListItem> findListItemsAfterCode(@Param("afterCode") String afterCode, Limit limit);
+    
+    @Query("SELECT p.id AS id, p.productCode AS productCode, p.name AS name, p.itemType AS itemType, "
+            + "p.finishedType AS finishedType, p.woodType AS woodType, p.isCarved AS isCarved, p.cost AS cost, "
+            + "p.sellingPrice AS sellingPrice, p.stock AS stock, p.minStockLevel AS minStockLevel "
+            + "FROM Product p WHERE p.id > :afterId ORDER BY p.id")
+    List<ProductListItem> findListItemsAfterId(@Param("afterId") Long afterId, Limit limit);
 }
 
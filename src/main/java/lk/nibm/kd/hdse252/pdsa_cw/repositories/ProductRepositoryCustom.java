@@ -0,0 +1,26 @@
+package lk.nibm.kd.hdse252.pdsa_cw.repositories;
+
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Product writes that bypass the persistence context
+ */
+public interface ProductRepositoryCustom {
+    
+    /**
+     * Insert new products with one JDBC batch
+     * Entity callbacks and listeners do not run, so the caller sets timestamps and refreshes the indexes
+     */
+    void insertAll(List<Product> products);
+    
+    /**
+     * Add a delta to the stock of each product with one JDBC batch of conditional updates
+     * A row is only changed if its stock stays at or above zero; returns the ids that were not changed,
+     * or whose change the driver did not confirm, so the caller must roll back if any are returned
+     * Managed entities are not refreshed and listeners do not run, see StockAdjustmentService
+     */
+    List<Long> adjustStock(Map<Long, Integer> deltas);
+}
@@ -0,0 +1,87 @@
+package lk.nibm.kd.hdse252.pdsa_cw.repositories;
+
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JDBC batch writes for products
+ * Hibernate cannot batch inserts for IDENTITY ids, so bulk imports go through JdbcTemplate instead.
+ * Stock adjustments are conditional updates, so concurrent orders cannot lose or oversell units
+ */
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+    
+    private static final String INSERT_SQL = "INSERT INTO products (product_code, name, description, category, "
+            + "item_type, wood_type, finished_type, is_carved, cost, selling_price, stock, stock_quantity, "
+            + "min_stock_level, dimensions, weight, price, created_at, updated_at, version) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+    
+    // The version is bumped so a stale entity saved later fails its optimistic check
+    private static final String ADJUST_STOCK_SQL = "UPDATE products SET stock = stock + ?, "
+            + "version = version + 1, updated_at = ? WHERE id = ? AND stock + ? >= 0";
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Override
+    public void insertAll(List<Product> products) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, products, products.size(), ProductRepositoryCustomImpl::bind);
+    }
+    
+    @Override
+    public List<Long> adjustStock(Map<Long, Integer> deltas) {
+        // Rows are locked in id order, so two batches over the same products cannot deadlock
+        List<Map.Entry<Long, Integer>> rows = new ArrayList<>(new TreeMap<>(deltas).entrySet());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int[][] counts = jdbcTemplate.batchUpdate(ADJUST_STOCK_SQL, rows, rows.size(), (statement, row) -> {
+            statement.setInt(1, row.getValue());
+            statement.setTimestamp(2, now);
+            statement.setLong(3, row.getKey());
+            statement.setInt(4, row.getValue());
+        });
+        
+        List<Long> rejected = new ArrayList<>();
+        int index = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                // Only 1 confirms the change; 0 is a miss, and SUCCESS_NO_INFO or EXECUTE_FAILED
+                // cannot tell whether the guard passed, so those rows are reported as not changed too
+                if (count != 1) {
+                    rejected.add(rows.get(index).getKey());
+                }
+                index++;
+            }
+        }
+        return rejected;
+    }
+    
+    private static void bind(PreparedStatement statement, Product product) throws SQLException {
+        statement.setString(1, product.getProductCode());
+        statement.setString(2, product.getName());
+        statement.setString(3, product.getDescription());
+        statement.setString(4, product.getCategory());
+        statement.setString(5, product.getItemType());
+        statement.setString(6, product.getWoodType());
+        statement.setString(7, product.getFinishedType());
+        statement.setBoolean(8, product.getIsCarved());
+        statement.setDouble(9, product.getCost());
+        statement.setDouble(10, product.getSellingPrice());
+        statement.setInt(11, product.getStock());
+        statement.setObject(12, product.getStockQuantityLegacy());
+        statement.setInt(13, product.getMinStockLevel());
+        statement.setString(14, product.getDimensions());
+        statement.setDouble(15, product.getWeight());
+        statement.setObject(16, product.getPrice());
+        statement.setTimestamp(17, Timestamp.valueOf(product.getCreatedAt()));
+        statement.setTimestamp(18, Timestamp.valueOf(product.getUpdatedAt()));
+    }
+}
@@ -2,8 +2,11 @@ package lk.nibm.kd.hdse252.pdsa_cw.repositories;
 
 import lk.nibm.kd.hdse252.pdsa_cw.entities.SalesOrder;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,6 +16,18 @@ public interface SalesOrderRepository extends JpaRepository<SalesOrder, Long> {
     List<SalesOrder> findByStatus(String status);
     List<SalesOrder> findByCustomerId(Long customerId);
     boolean existsByOrderNumber(String orderNumber);
+    
+    // (order id, product id) of every item on orders with these statuses, grouped by order
+    @Query("SELECT i.salesOrder.id, i.product.id FROM SalesOrderItem i WHERE i.salesOrder.status IN :statuses ORDER BY i.salesOrder.id")
+    List<Object[]> findOrderProductIds(@Param("statuses") Collection<String> statuses);
+    
+    // (order id, product id, quantity, order created at) of every item on orders with this status, grouped by order
+    @Query("SELECT i.salesOrder.id, i.product.id, i.quantity, i.salesOrder.createdAt FROM SalesOrderItem i "
+            + "WHERE i.salesOrder.status = :status ORDER BY i.salesOrder.id")
+    List<Object[]> findOrderLines(@Param("status") String status);
+    
+    @Query("SELECT o.id FROM SalesOrder o WHERE o.status = :status")
+    List<Long> findIdsByStatus(@Param("status") String status);
 }
 
 
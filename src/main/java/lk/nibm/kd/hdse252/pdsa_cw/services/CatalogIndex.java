@@ -0,0 +1,50 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+
+import java.util.List;
+
+/**
+ * In-memory index over the product catalog
+ * Loaded once at startup and then kept up to date by ProductIndexListener
+ */
+public interface CatalogIndex {
+    
+    /**
+     * Replace the whole index with the given products
+     */
+    void loadAll(List<Product> products);
+    
+    /**
+     * Replace the whole index after a bulk write that bypassed ProductIndexListener
+     * Indexes that are slow to build may finish the work in the background
+     */
+    default void reloadAll(List<Product> products) {
+        loadAll(products);
+    }
+    
+    /**
+     * A product was inserted or updated
+     */
+    void productSaved(Product product);
+    
+    /**
+     * A product was deleted
+     */
+    void productRemoved(Product product);
+    
+    /**
+     * True if the stored copy comes from a later commit than the incoming one
+     * After-commit callbacks of concurrent transactions can arrive in either order
+     */
+    static boolean isOlder(Product incoming, Product stored) {
+        return stored != null && versionOf(incoming) < versionOf(stored);
+    }
+    
+    /**
+     * Optimistic lock version of the product, 0 before its first save
+     */
+    static long versionOf(Product product) {
+        return product.getVersion() != null ? product.getVersion() : 0;
+    }
+}
@@ -0,0 +1,329 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.entities.CoPurchaseMatrix;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.NeighborList;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.repositories.SalesOrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * "Bought together" recommendations from confirmed sales orders
+ *
+ * Keeps a CoPurchaseMatrix over every order that was confirmed (or shipped or
+ * delivered). It is built from the order history at startup, updated after
+ * commit whenever an order is confirmed, and can be rebuilt in the background.
+ * A full build splits the rows across cores: every partition reads all orders
+ * but only counts the rows it owns, so the partial matrices never overlap.
+ *
+ * The score of a partner is the share of the product's orders that also
+ * contained it (orders with both / orders with the product).
+ */
+@Service
+public class CoPurchaseIndexService implements CatalogIndex {
+    
+    // Partners stored per product, larger requests are ranked from the counts
+    static final int NEIGHBORS = 10;
+    
+    // Order statuses whose items count as bought together
+    static final List<String> PURCHASED_STATUSES = List.of("CONFIRMED", "SHIPPED", "DELIVERED");
+    
+    // Number of orders from which a full build is split across cores
+    private static final int PARALLEL_THRESHOLD = 2048;
+    
+    @Autowired
+    private SalesOrderRepository salesOrderRepository;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Product> products = new HashMap<>();
+    private final Map<String, Long> idsByCode = new HashMap<>();
+    private CoPurchaseMatrix matrix = new CoPurchaseMatrix(NEIGHBORS);
+    
+    // Background rebuild state, changes made while it runs are re-applied afterwards
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private final List<ConfirmedOrder> confirmedDuringRebuild = new ArrayList<>();
+    private final Set<Long> removedDuringRebuild = new HashSet<>();
+    
+    @Override
+    public void loadAll(List<Product> catalog) {
+        OrderHistory history = loadHistory();
+        CoPurchaseMatrix built = buildMatrix(history);
+        lock.writeLock().lock();
+        try {
+            products.clear();
+            idsByCode.clear();
+            for (Product product : catalog) {
+                products.put(product.getId(), product);
+                idsByCode.put(product.getProductCode(), product.getId());
+            }
+            matrix = built;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * A bulk product write leaves the order history alone, so only the catalog is swapped
+     */
+    @Override
+    public void reloadAll(List<Product> catalog) {
+        lock.writeLock().lock();
+        try {
+            products.clear();
+            idsByCode.clear();
+            for (Product product : catalog) {
+                products.put(product.getId(), product);
+                idsByCode.put(product.getProductCode(), product.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void productSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            Product previous = products.get(product.getId());
+            if (CatalogIndex.isOlder(product, previous)) {
+                return;
+            }
+            products.put(product.getId(), product);
+            if (previous != null) {
+                idsByCode.remove(previous.getProductCode());
+            }
+            idsByCode.put(product.getProductCode(), product.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void productRemoved(Product product) {
+        lock.writeLock().lock();
+        try {
+            Product removed = products.remove(product.getId());
+            if (removed != null) {
+                idsByCode.remove(removed.getProductCode());
+            }
+            matrix.removeProduct(product.getId());
+            if (rebuilding.get()) {
+                removedDuringRebuild.add(product.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Count a confirmed order once the current transaction commits
+     */
+    public void orderConfirmed(long orderId, Collection<Long> productIds) {
+        long[] distinctIds = productIds.stream().mapToLong(Long::longValue).distinct().toArray();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            applyOrder(new ConfirmedOrder(orderId, distinctIds));
+            return;
+        }
+        
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                applyOrder(new ConfirmedOrder(orderId, distinctIds));
+            }
+        });
+    }
+    
+    /**
+     * Products most often bought together with the product with this code, best first
+     * Up to NEIGHBORS results are an O(K) read of the stored list
+     */
+    public List<ProductAnalyticsService.ProductSimilarity> findCoPurchased(String productCode, int limit) {
+        List<ProductAnalyticsService.ProductSimilarity> result = new ArrayList<>();
+        
+        lock.readLock().lock();
+        try {
+            Long productId = idsByCode.get(productCode);
+            if (productId == null) {
+                throw new RuntimeException("Product not found");
+            }
+            if (limit <= 0) {
+                return result;
+            }
+            
+            NeighborList partners = matrix.topPartners(productId, limit);
+            if (partners == null) {
+                return result;
+            }
+            double orders = matrix.orderCount(productId);
+            for (int i = 0; i < partners.size() && result.size() < limit; i++) {
+                Product partner = products.get(partners.productIdAt(i));
+                if (partner != null) {
+                    result.add(new ProductAnalyticsService.ProductSimilarity(
+                            partner, partners.scoreAt(i) / orders));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+    
+    /**
+     * Rebuild the matrix from the order history on a background thread
+     * Returns false if a rebuild is already running
+     */
+    public boolean rebuildInBackground() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        
+        Thread worker = new Thread(() -> {
+            try {
+                OrderHistory history = loadHistory();
+                CoPurchaseMatrix rebuilt = buildMatrix(history);
+                lock.writeLock().lock();
+                try {
+                    matrix = rebuilt;
+                    // Confirmations the history query did not see are counted again on top of it
+                    for (ConfirmedOrder order : confirmedDuringRebuild) {
+                        if (!history.contains(order.orderId)) {
+                            matrix.addOrder(order.productIds);
+                        }
+                    }
+                    for (Long productId : removedDuringRebuild) {
+                        matrix.removeProduct(productId);
+                    }
+                    confirmedDuringRebuild.clear();
+                    removedDuringRebuild.clear();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                System.out.println("✓ Co-purchase index rebuilt (" + history.size() + " orders)");
+            } catch (RuntimeException e) {
+                System.err.println("Co-purchase index rebuild failed - " + e.getMessage());
+            } finally {
+                rebuilding.set(false);
+            }
+        }, "co-purchase-index-rebuild");
+        worker.setDaemon(true);
+        worker.start();
+        return true;
+    }
+    
+    public boolean isRebuilding() {
+        return rebuilding.get();
+    }
+    
+    /**
+     * Number of products that appear on at least one counted order
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return matrix.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private void applyOrder(ConfirmedOrder order) {
+        lock.writeLock().lock();
+        try {
+            matrix.addOrder(order.productIds);
+            if (rebuilding.get()) {
+                confirmedDuringRebuild.add(order);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Read every counted order as (order id, distinct product ids), ordered by order id
+     */
+    private OrderHistory loadHistory() {
+        List<Object[]> items = salesOrderRepository.findOrderProductIds(PURCHASED_STATUSES);
+        List<Long> orderIds = new ArrayList<>();
+        List<long[]> orders = new ArrayList<>();
+        
+        int start = 0;
+        while (start < items.size()) {
+            long orderId = ((Number) items.get(start)[0]).longValue();
+            int end = start;
+            while (end < items.size() && ((Number) items.get(end)[0]).longValue() == orderId) {
+                end++;
+            }
+            long[] productIds = new long[end - start];
+            for (int i = start; i < end; i++) {
+                productIds[i - start] = ((Number) items.get(i)[1]).longValue();
+            }
+            orderIds.add(orderId);
+            orders.add(Arrays.stream(productIds).distinct().toArray());
+            start = end;
+        }
+        return new OrderHistory(orderIds.stream().mapToLong(Long::longValue).toArray(), orders);
+    }
+    
+    private static CoPurchaseMatrix buildMatrix(OrderHistory history) {
+        int partitions = history.size() >= PARALLEL_THRESHOLD
+                ? Runtime.getRuntime().availableProcessors()
+                : 1;
+        return IntStream.range(0, partitions).parallel()
+                .mapToObj(partition -> {
+                    CoPurchaseMatrix part = new CoPurchaseMatrix(NEIGHBORS);
+                    for (long[] productIds : history.orders) {
+                        part.countOrder(productIds, partition, partitions);
+                    }
+                    part.rankPartners();
+                    return part;
+                })
+                .reduce((left, right) -> {
+                    left.absorb(right);
+                    return left;
+                })
+                .orElseGet(() -> new CoPurchaseMatrix(NEIGHBORS));
+    }
+    
+    private static class ConfirmedOrder {
+        private final long orderId;
+        private final long[] productIds;
+        
+        ConfirmedOrder(long orderId, long[] productIds) {
+            this.orderId = orderId;
+            this.productIds = productIds;
+        }
+    }
+    
+    private static class OrderHistory {
+        // Sorted, the query returns items ordered by order id
+        private final long[] orderIds;
+        private final List<long[]> orders;
+        
+        OrderHistory(long[] orderIds, List<long[]> orders) {
+            this.orderIds = orderIds;
+            this.orders = orders;
+        }
+        
+        boolean contains(long orderId) {
+            return Arrays.binarySearch(orderIds, orderId) >= 0;
+        }
+        
+        int size() {
+            return orderIds.length;
+        }
+    }
+}
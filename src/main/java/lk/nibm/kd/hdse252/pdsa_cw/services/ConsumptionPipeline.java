@@ -0,0 +1,176 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous pipeline that feeds stock movements from confirmed orders into the analytics history
+ *
+ * Movements are collected per transaction and handed over after commit, so rolled back
+ * confirmations are never counted. Publishing never blocks: batches go into a bounded queue,
+ * and when it is full they are summed into an overflow map keyed by product instead, which
+ * keeps memory bounded by the number of products. A single worker drains the queue, adds
+ * up the quantities per product and records one consumption per product per batch.
+ * A total that fails to record goes back into the overflow map and is retried after a delay.
+ */
+@Component
+public class ConsumptionPipeline {
+    
+    private static final int MAX_BATCH = 512;
+    private static final long IDLE_POLL_MS = 100;
+    
+    @Autowired
+    private ProductAnalyticsService productAnalyticsService;
+    
+    @Value("${analytics.consumption.pipeline.capacity:4096}")
+    private int capacity;
+    
+    @Value("${analytics.consumption.pipeline.retry-delay-ms:1000}")
+    private long retryDelayMs;
+    
+    private BlockingQueue<Map<String, Integer>> queue;
+    
+    // Movements that did not fit in the queue, summed per product until the worker takes them
+    private final ConcurrentHashMap<String, Integer> overflow = new ConcurrentHashMap<>();
+    
+    private volatile boolean running;
+    private Thread worker;
+    
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        running = true;
+        worker = new Thread(this::drainLoop, "consumption-pipeline");
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join();
+        // Record whatever was still waiting, so a clean shutdown loses nothing
+        if (!drainOnce(null)) {
+            System.err.println("Consumption pipeline: stopped with " + overflow.size() + " products not recorded");
+        }
+    }
+    
+    /**
+     * Publish a stock movement for a product
+     * Inside a transaction the movement is held until commit, otherwise it is queued right away
+     */
+    @SuppressWarnings("unchecked")
+    public void publish(String productCode, int quantity) {
+        if (productCode == null || quantity <= 0) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            Map<String, Integer> movement = new HashMap<>();
+            movement.put(productCode, quantity);
+            submit(movement);
+            return;
+        }
+        
+        // One batch per transaction, registered with the first movement
+        Map<String, Integer> batch = (Map<String, Integer>) TransactionSynchronizationManager.getResource(this);
+        if (batch == null) {
+            Map<String, Integer> transactionBatch = new LinkedHashMap<>();
+            TransactionSynchronizationManager.bindResource(this, transactionBatch);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(transactionBatch);
+                }
+                
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ConsumptionPipeline.this);
+                }
+            });
+            batch = transactionBatch;
+        }
+        batch.merge(productCode, quantity, Integer::sum);
+    }
+    
+    /**
+     * Number of batches waiting in the queue plus products waiting in the overflow map
+     */
+    public int getBacklog() {
+        return queue.size() + overflow.size();
+    }
+    
+    private void submit(Map<String, Integer> batch) {
+        if (batch.isEmpty() || queue.offer(batch)) {
+            return;
+        }
+        // Queue full: coalesce instead of blocking the committing thread
+        batch.forEach((code, quantity) -> overflow.merge(code, quantity, Integer::sum));
+    }
+    
+    private void drainLoop() {
+        while (running) {
+            try {
+                Map<String, Integer> first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (!drainOnce(first)) {
+                    Thread.sleep(retryDelayMs);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Consumption pipeline: batch failed - " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Take up to MAX_BATCH queued batches plus the overflow map and record one total per product
+     * Returns false if a total failed and was put back into the overflow map
+     */
+    private boolean drainOnce(Map<String, Integer> first) {
+        List<Map<String, Integer>> batches = new ArrayList<>();
+        if (first != null) {
+            batches.add(first);
+        }
+        queue.drainTo(batches, MAX_BATCH);
+        
+        Map<String, Integer> totals = new HashMap<>();
+        for (Map<String, Integer> batch : batches) {
+            batch.forEach((code, quantity) -> totals.merge(code, quantity, Integer::sum));
+        }
+        for (String code : overflow.keySet()) {
+            Integer quantity = overflow.remove(code);
+            if (quantity != null) {
+                totals.merge(code, quantity, Integer::sum);
+            }
+        }
+        
+        boolean recorded = true;
+        for (Map.Entry<String, Integer> total : totals.entrySet()) {
+            try {
+                productAnalyticsService.recordStockConsumption(total.getKey(), total.getValue());
+            } catch (RuntimeException e) {
+                overflow.merge(total.getKey(), total.getValue(), Integer::sum);
+                System.err.println("Consumption pipeline: recording " + total.getKey() + " failed, will retry - "
+                        + e.getMessage());
+                recorded = false;
+            }
+        }
+        return recorded;
+    }
+}
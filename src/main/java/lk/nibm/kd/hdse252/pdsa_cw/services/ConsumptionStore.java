@@ -0,0 +1,507 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk time series of stock consumption, so predictions survive restarts
+ *
+ * Consumption events are buffered in memory and written in batches (one block
+ * per flush). A block is [int length][int crc32][payload], the payload starts
+ * with a base epoch day and holds records:
+ *   'P' varint id, varint length, UTF-8 bytes   product code -> id (per file)
+ *   'D' varint id, zigzag varint day delta, varint quantity   daily total
+ *   'W' varint id, zigzag varint day delta, varint quantity   weekly total
+ * Day deltas are relative to the previous record of the block, so a batch of
+ * same-day events costs about 3 bytes each.
+ *
+ * Compaction rolls the file up: the last 30 days stay as one daily total per
+ * product and day, older days are summed into weeks (Monday start) and weeks
+ * older than a year are dropped. Startup reads the file through a memory map.
+ *
+ * Buffered events, and the product ids their block defines, are only dropped
+ * from memory once the block has been forced to disk. A failed write is cut
+ * off the file before the next one, so a torn block can only be left at the
+ * end of the file by a crash, and load truncates it there. A block in the
+ * middle that fails its checksum is skipped without losing the blocks after it.
+ */
+@Component
+public class ConsumptionStore {
+    
+    public static final int DAILY_DAYS = 30;
+    public static final int WEEKLY_WEEKS = 52;
+    
+    private static final byte PRODUCT = 'P';
+    private static final byte DAY = 'D';
+    private static final byte WEEK = 'W';
+    private static final int HEADER_BYTES = 8;
+    private static final int FLUSH_THRESHOLD = 8192;
+    
+    @Value("${analytics.consumption.store.path:data/consumption.log}")
+    private String storePath;
+    
+    private Path path;
+    private FileChannel channel;
+    
+    // Events not yet written, guarded by bufferLock
+    private final ReentrantLock bufferLock = new ReentrantLock();
+    private String[] pendingCodes = new String[256];
+    private long[] pendingDays = new long[256];
+    private int[] pendingQuantities = new int[256];
+    private int pendingCount = 0;
+    
+    // Held while the file is written; the product ids below belong to the current file
+    private final ReentrantLock fileLock = new ReentrantLock();
+    private final Map<String, Integer> productIds = new HashMap<>();
+    // Above every id defined in the file, ids lost with a damaged block included
+    private int nextProductId = 0;
+    private long blocksInFile = 0;
+    // End of the last block known to be complete, the next block is written here
+    private long writeOffset = 0;
+    
+    // Weekly totals from the last rollup, product code -> week start day -> quantity
+    private volatile Map<String, TreeMap<Long, Long>> weeklyTotals = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void open() throws IOException {
+        path = Paths.get(storePath).toAbsolutePath();
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        writeOffset = channel.size();
+        channel.position(writeOffset);
+    }
+    
+    @PreDestroy
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+    
+    /**
+     * Per-product consumption read back from the store
+     */
+    public static class ProductConsumption {
+        private final TreeMap<Long, Long> dailyTotals = new TreeMap<>();
+        private final TreeMap<Long, Long> weeklyTotals = new TreeMap<>();
+        
+        public TreeMap<Long, Long> getDailyTotals() {
+            return dailyTotals;
+        }
+        
+        public TreeMap<Long, Long> getWeeklyTotals() {
+            return weeklyTotals;
+        }
+    }
+    
+    /**
+     * Read the whole store rolled up as of today (epoch day): daily totals for the
+     * last 30 days and weekly totals before that. A torn block at the end is cut off.
+     */
+    public Map<String, ProductConsumption> load(long today) throws IOException {
+        fileLock.lock();
+        try {
+            Map<String, ProductConsumption> series = readRolledUp(today);
+            publishWeeklyTotals(series);
+            return series;
+        } finally {
+            fileLock.unlock();
+        }
+    }
+    
+    /**
+     * Buffer one consumption event, it is written with the next batch
+     */
+    public void append(String productCode, long day, int quantity) {
+        boolean flushNow;
+        bufferLock.lock();
+        try {
+            if (pendingCount == pendingCodes.length) {
+                int capacity = pendingCount * 2;
+                pendingCodes = Arrays.copyOf(pendingCodes, capacity);
+                pendingDays = Arrays.copyOf(pendingDays, capacity);
+                pendingQuantities = Arrays.copyOf(pendingQuantities, capacity);
+            }
+            pendingCodes[pendingCount] = productCode;
+            pendingDays[pendingCount] = day;
+            pendingQuantities[pendingCount] = quantity;
+            pendingCount++;
+            flushNow = pendingCount >= FLUSH_THRESHOLD;
+        } finally {
+            bufferLock.unlock();
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+    
+    /**
+     * Weekly totals (week start epoch day -> quantity) from the last rollup, oldest first
+     */
+    public Map<Long, Long> getWeeklyTotals(String productCode) {
+        TreeMap<Long, Long> weeks = weeklyTotals.get(productCode);
+        return weeks != null ? Collections.unmodifiableMap(weeks) : Collections.emptyMap();
+    }
+    
+    /**
+     * Write the buffered events as one block and fsync
+     * On failure the events stay buffered and are retried with the next flush
+     */
+    @Scheduled(fixedDelayString = "${analytics.consumption.store.flush-interval-ms:1000}")
+    public void flush() {
+        fileLock.lock();
+        try {
+            writePending();
+        } catch (IOException e) {
+            System.err.println("Consumption store: write failed, retrying with the next flush - " + e.getMessage());
+        } finally {
+            fileLock.unlock();
+        }
+    }
+    
+    /**
+     * Rewrite the store as rollups (daily for 30 days, then weekly)
+     * On failure the current file is kept as it was
+     */
+    @Scheduled(fixedDelayString = "${analytics.consumption.store.compact-interval-ms:3600000}")
+    public void compact() {
+        fileLock.lock();
+        try {
+            writePending();
+            if (blocksInFile < 64) {
+                return;
+            }
+            long today = LocalDate.now().toEpochDay();
+            Map<String, ProductConsumption> series = readRolledUp(today);
+            
+            // The new file numbers products from 0, the current ids stay until it replaces the old one
+            Map<String, Integer> noIds = Collections.emptyMap();
+            BlockWriter block = new BlockWriter(today, 0);
+            for (Map.Entry<String, ProductConsumption> entry : series.entrySet()) {
+                int id = productId(noIds, block, entry.getKey());
+                for (Map.Entry<Long, Long> week : entry.getValue().getWeeklyTotals().entrySet()) {
+                    block.record(WEEK, id, week.getKey(), week.getValue());
+                }
+                for (Map.Entry<Long, Long> day : entry.getValue().getDailyTotals().entrySet()) {
+                    block.record(DAY, id, day.getKey(), day.getValue());
+                }
+            }
+            
+            Path tempPath = path.resolveSibling(path.getFileName() + ".compact");
+            try (FileChannel temp = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeFully(temp, block.toFrame());
+                temp.force(true);
+            }
+            channel.close();
+            boolean moved = false;
+            try {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                moved = true;
+            } finally {
+                // Reopen whichever file is now in place, the old one if the move failed
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                writeOffset = channel.size();
+                channel.position(writeOffset);
+            }
+            if (moved) {
+                productIds.clear();
+                productIds.putAll(block.definedProducts);
+                nextProductId = block.definedProducts.size();
+                blocksInFile = 1;
+                publishWeeklyTotals(series);
+            }
+        } catch (IOException e) {
+            System.err.println("Consumption store: compaction failed, keeping the current file - " + e.getMessage());
+        } finally {
+            fileLock.unlock();
+        }
+    }
+    
+    /**
+     * Encode and write the buffered events as one block (fileLock must be held)
+     * The events leave the buffer, and the ids the block defines become known, only once it is on disk
+     */
+    private void writePending() throws IOException {
+        String[] codes;
+        long[] days;
+        int[] quantities;
+        int count;
+        bufferLock.lock();
+        try {
+            if (pendingCount == 0) {
+                return;
+            }
+            // Appends only write past count (or into a grown copy), so these slots stay as they are
+            codes = pendingCodes;
+            days = pendingDays;
+            quantities = pendingQuantities;
+            count = pendingCount;
+        } finally {
+            bufferLock.unlock();
+        }
+        
+        BlockWriter block = new BlockWriter(days[0], nextProductId);
+        for (int i = 0; i < count; i++) {
+            block.record(DAY, productId(productIds, block, codes[i]), days[i], quantities[i]);
+        }
+        writeBlock(block.toFrame());
+        productIds.putAll(block.definedProducts);
+        nextProductId += block.definedProducts.size();
+        
+        bufferLock.lock();
+        try {
+            // Events appended during the write stay for the next batch
+            int remaining = pendingCount - count;
+            System.arraycopy(pendingCodes, count, pendingCodes, 0, remaining);
+            System.arraycopy(pendingDays, count, pendingDays, 0, remaining);
+            System.arraycopy(pendingQuantities, count, pendingQuantities, 0, remaining);
+            Arrays.fill(pendingCodes, remaining, pendingCount, null);
+            pendingCount = remaining;
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+    
+    /**
+     * Append a frame at the end of the last complete block and fsync (fileLock must be held)
+     * Bytes left by an earlier failed write are cut off first, so they never sit between two good blocks
+     */
+    private void writeBlock(byte[] frame) throws IOException {
+        if (channel.size() != writeOffset) {
+            channel.truncate(writeOffset);
+        }
+        channel.position(writeOffset);
+        writeFully(channel, frame);
+        channel.force(false);
+        writeOffset += frame.length;
+        blocksInFile++;
+    }
+    
+    /**
+     * Id of a product code, defining it in the block on first use
+     * New ids are kept in the block until it is written, the known ids are not changed here
+     */
+    private static int productId(Map<String, Integer> knownIds, BlockWriter block, String productCode) {
+        Integer id = knownIds.get(productCode);
+        if (id == null) {
+            id = block.definedProducts.get(productCode);
+        }
+        if (id == null) {
+            id = block.firstNewId + block.definedProducts.size();
+            block.defineProduct(id, productCode);
+        }
+        return id;
+    }
+    
+    /**
+     * Map the file and fold every record into daily / weekly totals (fileLock must be held)
+     * Also rebuilds the product ids of the current file, so appends can continue
+     */
+    private Map<String, ProductConsumption> readRolledUp(long today) throws IOException {
+        Map<String, ProductConsumption> series = new HashMap<>();
+        Map<Integer, String> codes = new HashMap<>();
+        long size = channel.size();
+        long validEnd = 0;
+        long blocks = 0;
+        int maxProductId = -1;
+        
+        if (size > 0) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    // A block cut short by a crash, only possible at the end of the file
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                validEnd = buffer.position();
+                blocks++;
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    System.out.println("Consumption store: skipping a damaged block of " + length + " bytes");
+                    continue;
+                }
+                maxProductId = Math.max(maxProductId, readBlock(payload, codes, series, today));
+            }
+        }
+        
+        if (validEnd < size) {
+            System.out.println("Consumption store: dropping " + (size - validEnd) + " bytes of incomplete records");
+            channel.truncate(validEnd);
+        }
+        writeOffset = validEnd;
+        channel.position(validEnd);
+        blocksInFile = blocks;
+        productIds.clear();
+        nextProductId = maxProductId + 1;
+        for (Map.Entry<Integer, String> entry : codes.entrySet()) {
+            productIds.put(entry.getValue(), entry.getKey());
+        }
+        return series;
+    }
+    
+    /**
+     * Fold one block into the series, returns the highest product id it uses
+     */
+    private static int readBlock(ByteBuffer payload, Map<Integer, String> codes,
+                                 Map<String, ProductConsumption> series, long today) {
+        long day = readZigZag(payload);
+        int maxProductId = -1;
+        while (payload.hasRemaining()) {
+            byte type = payload.get();
+            int id = (int) readVarint(payload);
+            maxProductId = Math.max(maxProductId, id);
+            if (type == PRODUCT) {
+                byte[] bytes = new byte[(int) readVarint(payload)];
+                payload.get(bytes);
+                codes.put(id, new String(bytes, StandardCharsets.UTF_8));
+                continue;
+            }
+            day += readZigZag(payload);
+            long quantity = readVarint(payload);
+            String productCode = codes.get(id);
+            if (productCode == null) {
+                // Defined in a damaged block that was skipped
+                continue;
+            }
+            ProductConsumption consumption = series.computeIfAbsent(productCode, k -> new ProductConsumption());
+            if (type == DAY && day > today - DAILY_DAYS) {
+                consumption.dailyTotals.merge(day, quantity, Long::sum);
+            } else {
+                long week = weekStart(day);
+                if (week > weekStart(today) - 7L * WEEKLY_WEEKS) {
+                    consumption.weeklyTotals.merge(week, quantity, Long::sum);
+                }
+            }
+        }
+        return maxProductId;
+    }
+    
+    private void publishWeeklyTotals(Map<String, ProductConsumption> series) {
+        Map<String, TreeMap<Long, Long>> weeks = new ConcurrentHashMap<>();
+        for (Map.Entry<String, ProductConsumption> entry : series.entrySet()) {
+            if (!entry.getValue().weeklyTotals.isEmpty()) {
+                weeks.put(entry.getKey(), entry.getValue().weeklyTotals);
+            }
+        }
+        weeklyTotals = weeks;
+    }
+    
+    /**
+     * Epoch day of the Monday starting the week that contains the day
+     */
+    static long weekStart(long day) {
+        return day - Math.floorMod(day + 3, 7L); // epoch day 0 was a Thursday
+    }
+    
+    private static void writeFully(FileChannel target, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+    
+    /**
+     * Builds one framed block of records
+     */
+    private static class BlockWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        private final Map<String, Integer> definedProducts = new HashMap<>();
+        private final int firstNewId;
+        private long previousDay;
+        
+        BlockWriter(long baseDay, int firstNewId) {
+            this.firstNewId = firstNewId;
+            previousDay = baseDay;
+            writeZigZag(bytes, baseDay);
+        }
+        
+        void defineProduct(int id, String productCode) {
+            definedProducts.put(productCode, id);
+            byte[] code = productCode.getBytes(StandardCharsets.UTF_8);
+            bytes.write(PRODUCT);
+            writeVarint(bytes, id);
+            writeVarint(bytes, code.length);
+            bytes.write(code, 0, code.length);
+        }
+        
+        void record(byte type, int id, long day, long quantity) {
+            bytes.write(type);
+            writeVarint(bytes, id);
+            writeZigZag(bytes, day - previousDay);
+            writeVarint(bytes, quantity);
+            previousDay = day;
+        }
+        
+        byte[] toFrame() {
+            byte[] payload = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+            frame.putInt(payload.length);
+            frame.putInt((int) crc.getValue());
+            frame.put(payload);
+            return frame.array();
+        }
+    }
+    
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+    
+    private static void writeZigZag(ByteArrayOutputStream out, long value) {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+    
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+    
+    private static long readZigZag(ByteBuffer in) {
+        long value = readVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -3,7 +3,6 @@ package lk.nibm.kd.hdse252.pdsa_cw.services;
 import lk.nibm.kd.hdse252.pdsa_cw.dto.CustomerDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.entities.Customer;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.CustomerRepository;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -19,16 +18,16 @@ public class CustomerService {
     private CustomerRepository customerRepository;
     
     @Autowired
-    private ModelMapper modelMapper;
+    private EntityMapper entityMapper;
     
     public CustomerDTO createCustomer(CustomerDTO customerDTO) {
         if (customerRepository.existsByCustomerCode(customerDTO.getCustomerCode())) {
             throw new RuntimeException("Customer code already exists");
         }
         
-        Customer customer = modelMapper.map(customerDTO, Customer.class);
+        Customer customer = entityMapper.toCustomer(customerDTO);
         Customer savedCustomer = customerRepository.save(customer);
-        return modelMapper.map(savedCustomer, CustomerDTO.class);
+        return entityMapper.toCustomerDTO(savedCustomer);
     }
     
     public CustomerDTO updateCustomer(Long id, CustomerDTO customerDTO) {
@@ -45,7 +44,7 @@ public class CustomerService {
         customer.setStatus(customerDTO.getStatus());
         
         Customer updatedCustomer = customerRepository.save(customer);
-        return modelMapper.map(updatedCustomer, CustomerDTO.class);
+        return entityMapper.toCustomerDTO(updatedCustomer);
     }
     
     public void deleteCustomer(Long id) {
@@ -55,18 +54,18 @@ public class CustomerService {
     public CustomerDTO getCustomerById(Long id) {
         Customer customer = customerRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Customer not found"));
-        return modelMapper.map(customer, CustomerDTO.class);
+        return entityMapper.toCustomerDTO(customer);
     }
     
     public List<CustomerDTO> getAllCustomers() {
         return customerRepository.findAll().stream()
-                .map(customer -> modelMapper.map(customer, CustomerDTO.class))
+                .map(entityMapper::toCustomerDTO)
                 .collect(Collectors.toList());
     }
     
     public List<CustomerDTO> getCustomersByStatus(String status) {
         return customerRepository.findByStatus(status).stream()
-                .map(customer -> modelMapper.map(customer, CustomerDTO.class))
+                .map(entityMapper::toCustomerDTO)
                 .collect(Collectors.toList());
     }
 }
@@ -1,71 +1,296 @@
 package lk.nibm.kd.hdse252.pdsa_cw.services;
 
+import jakarta.annotation.PostConstruct;
 import lk.nibm.kd.hdse252.pdsa_cw.entities.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Service class to manage custom data structures
+ *
+ * Safe for concurrent use by request threads. Each structure has its own
+ * write lock, so writers to different structures never block each other,
+ * and reads do not take a lock:
+ * - the array is read with an optimistic stamp and re-read only if a write raced it
+ * - the BST is persistent (writes copy the path they change), so readers walk an immutable snapshot
+ * - the linked list publishes its head through a volatile field
+ * Saves and removes reported by ProductIndexListener are applied one at a time,
+ * and a copy older than the stored one is ignored.
+ *
+ * Restock queue changes are written to the RestockJournal before the call
+ * returns, so pending requests survive a restart. A claimed request stays in
+ * the journal until it is completed, so one that was never applied survives too.
  */
 @Service
-public class DataStructureService {
+public class DataStructureService implements CatalogIndex {
+    
+    // Serializes productSaved/productRemoved so the version check and the three updates are one step
+    private final ReentrantLock catalogUpdateLock = new ReentrantLock();
     
     // Array to store all products
-    private final List<Product> productArray = new ArrayList<>();
+    private final StampedLock arrayLock = new StampedLock();
+    private Product[] productArray = new Product[16];
+    private int productCount = 0;
+    
+    // Hash index from product id to its slot in the array
+    private static final int NO_SLOT = -1;
+    private LongIntHashMap productSlots = new LongIntHashMap();
     
     // Binary Search Tree root for fast searching and sorting
-    private BSTNode bstRoot = null;
+    private final ReentrantLock bstLock = new ReentrantLock();
+    private volatile BSTNode bstRoot = null;
     
     // Linked List head for recently added items
-    private LinkedListNode recentItemsHead = null;
+    private final ReentrantLock recentItemsLock = new ReentrantLock();
+    private volatile LinkedListNode recentItemsHead = null;
     private int recentItemsCount = 0;
     private static final int MAX_RECENT_ITEMS = 10;
     
-    // Queue for restock requests
-    private QueueNode restockQueueFront = null;
-    private QueueNode restockQueueRear = null;
-    private int restockQueueSize = 0;
+    // Priority Queue (binary min-heap) for restock requests, with product code -> heap slot index
+    private final ReentrantLock restockQueueLock = new ReentrantLock();
+    private RestockRequest[] restockHeap = new RestockRequest[16];
+    private final Map<String, Integer> restockSlots = new HashMap<>();
+    private volatile int restockQueueSize = 0;
+    
+    // Requests taken out of the heap whose removal is not journaled yet, by product code
+    private final Map<String, RestockRequest> restockClaims = new HashMap<>();
+    
+    // Optional so the service can also be used on its own (tests)
+    @Autowired(required = false)
+    private RestockJournal restockJournal;
+    
+    // Most urgent first: priority, then lowest stock ratio, then oldest request
+    private static final Comparator<RestockRequest> RESTOCK_ORDER = Comparator
+            .comparingInt((RestockRequest r) -> priorityRank(r.getPriority()))
+            .thenComparing(RestockRequest::getStockRatio, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(RestockRequest::getRequestedAt, Comparator.nullsLast(Comparator.naturalOrder()));
+    
+    /**
+     * Reload the restock requests that were pending when the application stopped
+     */
+    @PostConstruct
+    public void restoreRestockQueue() throws IOException {
+        if (restockJournal == null) {
+            return;
+        }
+        List<RestockRequest> pending = restockJournal.replay();
+        restockQueueLock.lock();
+        try {
+            for (RestockRequest request : pending) {
+                pushRestockRequest(request);
+            }
+        } finally {
+            restockQueueLock.unlock();
+        }
+        if (!pending.isEmpty()) {
+            System.out.println("✓ Restored " + pending.size() + " pending restock requests");
+        }
+    }
     
     /**
      * Add product to array
      */
     public void addToArray(Product product) {
-        productArray.add(product);
+        long stamp = arrayLock.writeLock();
+        try {
+            if (productCount == productArray.length) {
+                productArray = Arrays.copyOf(productArray, productArray.length * 2);
+            }
+            int slot = productSlots.get(product.getId(), NO_SLOT);
+            if (slot != NO_SLOT) {
+                productArray[slot] = product;
+                return;
+            }
+            productSlots.put(product.getId(), productCount, NO_SLOT);
+            productArray[productCount++] = product;
+        } finally {
+            arrayLock.unlockWrite(stamp);
+        }
     }
     
     /**
      * Get all products from array
      */
     public List<Product> getAllFromArray() {
-        return new ArrayList<>(productArray);
+        long stamp = arrayLock.tryOptimisticRead();
+        Product[] items = productArray;
+        int count = productCount;
+        Product[] snapshot = Arrays.copyOf(items, Math.min(count, items.length));
+        
+        if (!arrayLock.validate(stamp)) {
+            // A writer raced the copy, take a consistent one under the read lock
+            stamp = arrayLock.readLock();
+            try {
+                snapshot = Arrays.copyOf(productArray, productCount);
+            } finally {
+                arrayLock.unlockRead(stamp);
+            }
+        }
+        return new ArrayList<>(Arrays.asList(snapshot));
     }
     
     /**
-     * Remove product from array
+     * Remove product from array (O(1): the last product is moved into the freed slot)
      */
     public void removeFromArray(Long productId) {
-        productArray.removeIf(p -> p.getId().equals(productId));
+        long stamp = arrayLock.writeLock();
+        try {
+            int slot = productSlots.remove(productId, NO_SLOT);
+            if (slot == NO_SLOT) {
+                return;
+            }
+            int last = --productCount;
+            if (slot != last) {
+                Product moved = productArray[last];
+                productArray[slot] = moved;
+                productSlots.put(moved.getId(), slot, NO_SLOT);
+            }
+            productArray[last] = null;
+        } finally {
+            arrayLock.unlockWrite(stamp);
+        }
     }
     
     /**
-     * Update product in array
+     * Update product in array (O(1) through the id index)
      */
     public void updateInArray(Product product) {
-        for (int i = 0; i < productArray.size(); i++) {
-            if (productArray.get(i).getId().equals(product.getId())) {
-                productArray.set(i, product);
-                break;
+        long stamp = arrayLock.writeLock();
+        try {
+            int slot = productSlots.get(product.getId(), NO_SLOT);
+            if (slot != NO_SLOT) {
+                productArray[slot] = product;
             }
+        } finally {
+            arrayLock.unlockWrite(stamp);
         }
     }
     
+    /**
+     * Find product in array by id (O(1) through the id index)
+     */
+    public Product findInArray(Long productId) {
+        long stamp = arrayLock.tryOptimisticRead();
+        Product[] items = productArray;
+        int optimisticSlot = productSlots.getOptimistic(productId, NO_SLOT);
+        Product found = optimisticSlot >= 0 && optimisticSlot < items.length ? items[optimisticSlot] : null;
+        if (arrayLock.validate(stamp)) {
+            return found;
+        }
+        
+        // A writer raced the lookup, repeat it under the read lock
+        stamp = arrayLock.readLock();
+        try {
+            int slot = productSlots.get(productId, NO_SLOT);
+            return slot == NO_SLOT ? null : productArray[slot];
+        } finally {
+            arrayLock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Load all products into the array, BST and recent items in one go
+     */
+    @Override
+    public void loadAll(List<Product> products) {
+        List<Product> sortedByCode = new ArrayList<>(products);
+        sortedByCode.sort((p1, p2) -> p1.getProductCode().compareToIgnoreCase(p2.getProductCode()));
+        
+        List<Product> newestFirst = new ArrayList<>(products);
+        newestFirst.sort(Comparator.comparing(Product::getCreatedAt,
+                Comparator.nullsLast(Comparator.reverseOrder())));
+        
+        long stamp = arrayLock.writeLock();
+        try {
+            productArray = products.toArray(new Product[Math.max(16, products.size())]);
+            productCount = products.size();
+            productSlots = new LongIntHashMap(productCount);
+            for (int i = 0; i < productCount; i++) {
+                productSlots.put(productArray[i].getId(), i, NO_SLOT);
+            }
+        } finally {
+            arrayLock.unlockWrite(stamp);
+        }
+        
+        bstLock.lock();
+        try {
+            bstRoot = buildBalancedBST(sortedByCode, 0, sortedByCode.size() - 1);
+        } finally {
+            bstLock.unlock();
+        }
+        
+        recentItemsLock.lock();
+        try {
+            publishRecentItems(newestFirst.subList(0, Math.min(MAX_RECENT_ITEMS, newestFirst.size())));
+        } finally {
+            recentItemsLock.unlock();
+        }
+    }
+    
+    /**
+     * Add a new product (also to the recent items) or replace the stored copy of an existing one
+     * Called after the save commits, so a rolled back insert never shows up
+     */
+    @Override
+    public void productSaved(Product product) {
+        catalogUpdateLock.lock();
+        try {
+            Product existing = findInArray(product.getId());
+            if (existing == null) {
+                addToArray(product);
+                insertIntoBST(product);
+                addToRecentItems(product);
+            } else if (!CatalogIndex.isOlder(product, existing)) {
+                updateInArray(product);
+                replaceInBST(existing.getProductCode(), product);
+                replaceInRecentItems(product.getId(), product);
+            }
+        } finally {
+            catalogUpdateLock.unlock();
+        }
+    }
+    
+    /**
+     * Remove a deleted product from the array, BST, recent items and restock queue
+     */
+    @Override
+    public void productRemoved(Product product) {
+        catalogUpdateLock.lock();
+        try {
+            removeFromArray(product.getId());
+            removeFromBST(product.getProductCode());
+            replaceInRecentItems(product.getId(), null);
+        } finally {
+            catalogUpdateLock.unlock();
+        }
+        removeRestockRequest(product.getProductCode());
+    }
+    
     /**
      * Insert product into Binary Search Tree (sorted by product code)
+     * The tree is an AVL tree, so it stays balanced even for sequential codes (P001, P002, ...)
      */
     public void insertIntoBST(Product product) {
-        bstRoot = insertBSTNode(bstRoot, product);
+        bstLock.lock();
+        try {
+            bstRoot = insertBSTNode(bstRoot, product);
+        } finally {
+            bstLock.unlock();
+        }
     }
     
     private BSTNode insertBSTNode(BSTNode root, Product product) {
@@ -73,59 +298,94 @@ public class DataStructureService {
             return new BSTNode(product);
         }
         
-        if (product.getProductCode().compareToIgnoreCase(root.getProduct().getProductCode()) < 0) {
-            root.setLeft(insertBSTNode(root.getLeft(), product));
-        } else if (product.getProductCode().compareToIgnoreCase(root.getProduct().getProductCode()) > 0) {
-            root.setRight(insertBSTNode(root.getRight(), product));
+        int comparison = product.getProductCode().compareToIgnoreCase(root.getProduct().getProductCode());
+        if (comparison == 0) {
+            return root;
         }
         
-        return root;
+        BSTNode copy = copyNode(root);
+        if (comparison < 0) {
+            copy.setLeft(insertBSTNode(root.getLeft(), product));
+        } else {
+            copy.setRight(insertBSTNode(root.getRight(), product));
+        }
+        
+        return rebalance(copy);
     }
     
     /**
-     * Search product in BST by product code
+     * Replace a product in the BST as one step, so readers never see it missing
      */
-    public Product searchInBST(String productCode) {
-        return searchBSTNode(bstRoot, productCode);
+    public void replaceInBST(String oldProductCode, Product product) {
+        bstLock.lock();
+        try {
+            BSTNode root = removeBSTNode(bstRoot, oldProductCode);
+            bstRoot = insertBSTNode(root, product);
+        } finally {
+            bstLock.unlock();
+        }
     }
     
-    private Product searchBSTNode(BSTNode root, String productCode) {
-        if (root == null) {
+    /**
+     * Build a balanced BST from products already sorted by code (O(n))
+     */
+    private BSTNode buildBalancedBST(List<Product> sorted, int low, int high) {
+        if (low > high) {
             return null;
         }
-        
-        int comparison = productCode.compareToIgnoreCase(root.getProduct().getProductCode());
-        if (comparison == 0) {
-            return root.getProduct();
-        } else if (comparison < 0) {
-            return searchBSTNode(root.getLeft(), productCode);
-        } else {
-            return searchBSTNode(root.getRight(), productCode);
+        int mid = (low + high) >>> 1;
+        BSTNode node = new BSTNode(sorted.get(mid));
+        node.setLeft(buildBalancedBST(sorted, low, mid - 1));
+        node.setRight(buildBalancedBST(sorted, mid + 1, high));
+        updateHeight(node);
+        return node;
+    }
+    
+    /**
+     * Search product in BST by product code (iterative, O(log n))
+     */
+    public Product searchInBST(String productCode) {
+        BSTNode current = bstRoot;
+        while (current != null) {
+            int comparison = productCode.compareToIgnoreCase(current.getProduct().getProductCode());
+            if (comparison == 0) {
+                return current.getProduct();
+            }
+            current = comparison < 0 ? current.getLeft() : current.getRight();
         }
+        return null;
     }
     
     /**
-     * Get sorted products from BST (in-order traversal)
+     * Get sorted products from BST (iterative in-order traversal)
      */
     public List<Product> getSortedFromBST() {
         List<Product> sortedList = new ArrayList<>();
-        inOrderTraversal(bstRoot, sortedList);
-        return sortedList;
-    }
-    
-    private void inOrderTraversal(BSTNode root, List<Product> result) {
-        if (root != null) {
-            inOrderTraversal(root.getLeft(), result);
-            result.add(root.getProduct());
-            inOrderTraversal(root.getRight(), result);
+        Deque<BSTNode> stack = new ArrayDeque<>();
+        BSTNode current = bstRoot;
+        
+        while (current != null || !stack.isEmpty()) {
+            while (current != null) {
+                stack.push(current);
+                current = current.getLeft();
+            }
+            current = stack.pop();
+            sortedList.add(current.getProduct());
+            current = current.getRight();
         }
+        return sortedList;
     }
     
     /**
      * Remove product from BST
      */
     public void removeFromBST(String productCode) {
-        bstRoot = removeBSTNode(bstRoot, productCode);
+        bstLock.lock();
+        try {
+            bstRoot = removeBSTNode(bstRoot, productCode);
+        } finally {
+            bstLock.unlock();
+        }
     }
     
     private BSTNode removeBSTNode(BSTNode root, String productCode) {
@@ -134,25 +394,28 @@ public class DataStructureService {
         }
         
         int comparison = productCode.compareToIgnoreCase(root.getProduct().getProductCode());
-        if (comparison < 0) {
-            root.setLeft(removeBSTNode(root.getLeft(), productCode));
-        } else if (comparison > 0) {
-            root.setRight(removeBSTNode(root.getRight(), productCode));
-        } else {
+        if (comparison == 0) {
             // Node to be deleted found
             if (root.getLeft() == null) {
                 return root.getRight();
             } else if (root.getRight() == null) {
                 return root.getLeft();
             }
-            
+        }
+        
+        BSTNode copy = copyNode(root);
+        if (comparison < 0) {
+            copy.setLeft(removeBSTNode(root.getLeft(), productCode));
+        } else if (comparison > 0) {
+            copy.setRight(removeBSTNode(root.getRight(), productCode));
+        } else {
             // Node with two children: Get the inorder successor
             BSTNode minNode = findMin(root.getRight());
-            root.setProduct(minNode.getProduct());
-            root.setRight(removeBSTNode(root.getRight(), minNode.getProduct().getProductCode()));
+            copy.setProduct(minNode.getProduct());
+            copy.setRight(removeBSTNode(root.getRight(), minNode.getProduct().getProductCode()));
         }
         
-        return root;
+        return rebalance(copy);
     }
     
     private BSTNode findMin(BSTNode root) {
@@ -162,24 +425,134 @@ public class DataStructureService {
         return root;
     }
     
+    /**
+     * Nodes reachable from bstRoot are never modified, writers change copies instead
+     */
+    private BSTNode copyNode(BSTNode node) {
+        return new BSTNode(node.getProduct(), node.getLeft(), node.getRight(), node.getHeight());
+    }
+    
+    private int height(BSTNode node) {
+        return node == null ? 0 : node.getHeight();
+    }
+    
+    private void updateHeight(BSTNode node) {
+        node.setHeight(1 + Math.max(height(node.getLeft()), height(node.getRight())));
+    }
+    
+    /**
+     * Restore the AVL property at this node (height difference of at most 1)
+     * The node passed in must already be a private copy
+     */
+    private BSTNode rebalance(BSTNode node) {
+        updateHeight(node);
+        int balance = height(node.getLeft()) - height(node.getRight());
+        
+        if (balance > 1) {
+            // Left-Right case
+            if (height(node.getLeft().getLeft()) < height(node.getLeft().getRight())) {
+                node.setLeft(rotateLeft(copyNode(node.getLeft())));
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            // Right-Left case
+            if (height(node.getRight().getRight()) < height(node.getRight().getLeft())) {
+                node.setRight(rotateRight(copyNode(node.getRight())));
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+    
+    private BSTNode rotateRight(BSTNode node) {
+        BSTNode newRoot = copyNode(node.getLeft());
+        node.setLeft(newRoot.getRight());
+        newRoot.setRight(node);
+        updateHeight(node);
+        updateHeight(newRoot);
+        return newRoot;
+    }
+    
+    private BSTNode rotateLeft(BSTNode node) {
+        BSTNode newRoot = copyNode(node.getRight());
+        node.setRight(newRoot.getLeft());
+        newRoot.setLeft(node);
+        updateHeight(node);
+        updateHeight(newRoot);
+        return newRoot;
+    }
+    
     /**
      * Add product to recently added items (Linked List)
+     * Published nodes are never relinked, a full list is rebuilt without its oldest item
      */
     public void addToRecentItems(Product product) {
-        LinkedListNode newNode = new LinkedListNode(product);
-        newNode.setNext(recentItemsHead);
-        recentItemsHead = newNode;
-        recentItemsCount++;
-        
-        // Keep only the most recent items
-        if (recentItemsCount > MAX_RECENT_ITEMS) {
+        recentItemsLock.lock();
+        try {
+            if (recentItemsCount < MAX_RECENT_ITEMS) {
+                LinkedListNode newNode = new LinkedListNode(product);
+                newNode.setNext(recentItemsHead);
+                recentItemsHead = newNode;
+                recentItemsCount++;
+                return;
+            }
+            
+            List<Product> items = new ArrayList<>(MAX_RECENT_ITEMS);
+            items.add(product);
             LinkedListNode current = recentItemsHead;
-            for (int i = 0; i < MAX_RECENT_ITEMS - 1; i++) {
+            while (items.size() < MAX_RECENT_ITEMS) {
+                items.add(current.getProduct());
                 current = current.getNext();
             }
-            current.setNext(null);
-            recentItemsCount = MAX_RECENT_ITEMS;
+            publishRecentItems(items);
+        } finally {
+            recentItemsLock.unlock();
+        }
+    }
+    
+    /**
+     * Replace a product in the recent items, or drop it when replacement is null
+     * The list holds at most MAX_RECENT_ITEMS, so it is rebuilt rather than relinked under readers
+     */
+    private void replaceInRecentItems(Long productId, Product replacement) {
+        recentItemsLock.lock();
+        try {
+            List<Product> items = new ArrayList<>(MAX_RECENT_ITEMS);
+            int index = -1;
+            for (LinkedListNode current = recentItemsHead; current != null; current = current.getNext()) {
+                if (productId.equals(current.getProduct().getId())) {
+                    index = items.size();
+                }
+                items.add(current.getProduct());
+            }
+            if (index < 0) {
+                return;
+            }
+            
+            if (replacement == null) {
+                items.remove(index);
+            } else {
+                items.set(index, replacement);
+            }
+            publishRecentItems(items);
+        } finally {
+            recentItemsLock.unlock();
+        }
+    }
+    
+    /**
+     * Link the products (newest first) into a new list and publish its head, caller holds recentItemsLock
+     */
+    private void publishRecentItems(List<Product> newestFirst) {
+        LinkedListNode head = null;
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            LinkedListNode node = new LinkedListNode(newestFirst.get(i));
+            node.setNext(head);
+            head = node;
         }
+        recentItemsHead = head;
+        recentItemsCount = newestFirst.size();
     }
     
     /**
@@ -196,91 +569,304 @@ public class DataStructureService {
     }
     
     /**
-     * Enqueue restock request (Queue)
+     * Enqueue restock request (Priority Queue)
+     * A product already waiting in the queue is updated in place instead of being added again,
+     * keeping its original request time
      */
     public void enqueueRestockRequest(RestockRequest request) {
-        QueueNode newNode = new QueueNode(request);
-        
-        if (restockQueueRear == null) {
-            restockQueueFront = restockQueueRear = newNode;
-        } else {
-            restockQueueRear.setNext(newNode);
-            restockQueueRear = newNode;
+        enqueueRestockRequests(List.of(request));
+    }
+    
+    /**
+     * Enqueue many restock requests, waiting for a single journal fsync at the end
+     * If the journal write fails the requests are taken out of the queue again and the error is rethrown
+     */
+    public void enqueueRestockRequests(List<RestockRequest> requests) {
+        if (requests.isEmpty()) {
+            return;
+        }
+        long ticket = 0;
+        restockQueueLock.lock();
+        try {
+            for (RestockRequest request : requests) {
+                pushRestockRequest(request);
+                // Appended under the lock so the journal sees changes in the same order as the heap
+                if (restockJournal != null) {
+                    ticket = restockJournal.appendUpsert(request);
+                }
+            }
+        } finally {
+            restockQueueLock.unlock();
+        }
+        if (restockJournal == null) {
+            return;
+        }
+        try {
+            // Wait for the fsync outside the lock, so concurrent callers share one
+            restockJournal.awaitDurable(ticket);
+        } catch (UncheckedIOException e) {
+            dropUnjournaled(requests);
+            throw e;
         }
-        restockQueueSize++;
     }
     
     /**
-     * Dequeue restock request (Queue)
+     * Take requests whose journal write failed back out of the heap
+     * Their upserts stay buffered for the retry, so a REMOVE is appended after them to keep the journal in step
      */
-    public RestockRequest dequeueRestockRequest() {
-        if (restockQueueFront == null) {
-            return null;
+    private void dropUnjournaled(List<RestockRequest> requests) {
+        restockQueueLock.lock();
+        try {
+            for (RestockRequest request : requests) {
+                String productCode = request.getProductCode();
+                Integer slot = restockSlots.get(productCode);
+                // Skipped if a newer request for the product replaced it meanwhile
+                if (slot != null && restockHeap[slot] == request) {
+                    removeRestockAt(slot);
+                    if (!restockClaims.containsKey(productCode)) {
+                        restockJournal.appendRemove(productCode);
+                    }
+                }
+            }
+        } finally {
+            restockQueueLock.unlock();
+        }
+    }
+    
+    private void pushRestockRequest(RestockRequest request) {
+        Integer slot = restockSlots.get(request.getProductCode());
+        if (slot != null) {
+            RestockRequest existing = restockHeap[slot];
+            request.setRequestedAt(existing.getRequestedAt());
+            restockHeap[slot] = request;
+            if (!siftUp(slot)) {
+                siftDown(slot);
+            }
+            return;
         }
         
-        RestockRequest request = restockQueueFront.getRequest();
-        restockQueueFront = restockQueueFront.getNext();
-        
-        if (restockQueueFront == null) {
-            restockQueueRear = null;
+        if (restockQueueSize == restockHeap.length) {
+            restockHeap = Arrays.copyOf(restockHeap, restockHeap.length * 2);
         }
-        restockQueueSize--;
+        int last = restockQueueSize;
+        restockHeap[last] = request;
+        restockSlots.put(request.getProductCode(), last);
+        restockQueueSize = last + 1;
+        siftUp(last);
+    }
+    
+    /**
+     * Take the most urgent restock request out of the queue, leaving it in the journal
+     * Finish with completeRestockRequest once it is applied or returnRestockRequest if it is not,
+     * so a request whose stock update never commits is not lost (a crash in between replays it)
+     */
+    public RestockRequest claimRestockRequest() {
+        restockQueueLock.lock();
+        try {
+            RestockRequest request = popRestockRequest();
+            if (request != null) {
+                restockClaims.put(request.getProductCode(), request);
+            }
+            return request;
+        } finally {
+            restockQueueLock.unlock();
+        }
+    }
+    
+    /**
+     * Journal the removal of a claimed request that has been applied
+     * Skipped if the product was queued again meanwhile, its newer record supersedes this one
+     */
+    public void completeRestockRequest(RestockRequest request) {
+        long ticket = 0;
+        restockQueueLock.lock();
+        try {
+            String productCode = request.getProductCode();
+            restockClaims.remove(productCode, request);
+            if (restockJournal != null && !restockSlots.containsKey(productCode)
+                    && !restockClaims.containsKey(productCode)) {
+                ticket = restockJournal.appendRemove(productCode);
+            }
+        } finally {
+            restockQueueLock.unlock();
+        }
+        if (restockJournal != null) {
+            restockJournal.awaitDurable(ticket);
+        }
+    }
+    
+    /**
+     * Put a claimed request back in the queue because it was not applied
+     * Its journal record was never removed, so only the heap changes; a newer request for the product wins
+     */
+    public void returnRestockRequest(RestockRequest request) {
+        restockQueueLock.lock();
+        try {
+            restockClaims.remove(request.getProductCode(), request);
+            if (!restockSlots.containsKey(request.getProductCode())) {
+                pushRestockRequest(request);
+            }
+        } finally {
+            restockQueueLock.unlock();
+        }
+    }
+    
+    /**
+     * Drop a product's pending request, e.g. because the product was deleted
+     * A claimed request is left to its claimer, which completes it once it finds the product gone
+     */
+    public void removeRestockRequest(String productCode) {
+        long ticket = 0;
+        restockQueueLock.lock();
+        try {
+            Integer slot = restockSlots.get(productCode);
+            if (slot == null) {
+                return;
+            }
+            removeRestockAt(slot);
+            if (restockJournal != null && !restockClaims.containsKey(productCode)) {
+                ticket = restockJournal.appendRemove(productCode);
+            }
+        } finally {
+            restockQueueLock.unlock();
+        }
+        if (restockJournal != null) {
+            restockJournal.awaitDurable(ticket);
+        }
+    }
+    
+    private RestockRequest popRestockRequest() {
+        return restockQueueSize == 0 ? null : removeRestockAt(0);
+    }
+    
+    /**
+     * Take the entry at this slot out of the heap, the last entry fills the gap (O(log n))
+     */
+    private RestockRequest removeRestockAt(int slot) {
+        RestockRequest request = restockHeap[slot];
+        restockSlots.remove(request.getProductCode());
         
+        int last = restockQueueSize - 1;
+        RestockRequest moved = restockHeap[last];
+        restockHeap[last] = null;
+        restockQueueSize = last;
+        if (slot != last) {
+            placeInHeap(moved, slot);
+            if (!siftUp(slot)) {
+                siftDown(slot);
+            }
+        }
         return request;
     }
     
     /**
-     * Peek at front of restock queue
+     * Rewrite the restock journal once it is mostly superseded records
      */
-    public RestockRequest peekRestockRequest() {
-        if (restockQueueFront == null) {
-            return null;
+    @Scheduled(fixedDelayString = "${restock.journal.compact-interval-ms:60000}")
+    public void compactRestockJournal() {
+        if (restockJournal == null) {
+            return;
+        }
+        restockQueueLock.lock();
+        try {
+            // Claimed requests are still live until their removal is journaled
+            List<RestockRequest> live = new ArrayList<>(Arrays.asList(Arrays.copyOf(restockHeap, restockQueueSize)));
+            for (RestockRequest claimed : restockClaims.values()) {
+                if (!restockSlots.containsKey(claimed.getProductCode())) {
+                    live.add(claimed);
+                }
+            }
+            if (restockJournal.needsCompaction(live.size())) {
+                restockJournal.compact(live);
+            }
+        } finally {
+            restockQueueLock.unlock();
         }
-        return restockQueueFront.getRequest();
     }
     
     /**
-     * Get all restock requests from queue
+     * Peek at the most urgent restock request
      */
-    public List<RestockRequest> getAllRestockRequests() {
-        List<RestockRequest> requests = new ArrayList<>();
-        QueueNode current = restockQueueFront;
-        while (current != null) {
-            requests.add(current.getRequest());
-            current = current.getNext();
+    public RestockRequest peekRestockRequest() {
+        restockQueueLock.lock();
+        try {
+            return restockQueueSize == 0 ? null : restockHeap[0];
+        } finally {
+            restockQueueLock.unlock();
         }
-        return requests;
     }
     
     /**
-     * Get queue size
+     * Get all restock requests from queue, most urgent first
      */
-    public int getRestockQueueSize() {
-        return restockQueueSize;
+    public List<RestockRequest> getAllRestockRequests() {
+        RestockRequest[] snapshot;
+        restockQueueLock.lock();
+        try {
+            snapshot = Arrays.copyOf(restockHeap, restockQueueSize);
+        } finally {
+            restockQueueLock.unlock();
+        }
+        Arrays.sort(snapshot, RESTOCK_ORDER);
+        return new ArrayList<>(Arrays.asList(snapshot));
     }
     
     /**
-     * Clear all data structures
+     * Move the entry at this slot towards the root, returns true if it moved
      */
-    public void clearAll() {
-        productArray.clear();
-        bstRoot = null;
-        recentItemsHead = null;
-        recentItemsCount = 0;
-        restockQueueFront = null;
-        restockQueueRear = null;
-        restockQueueSize = 0;
+    private boolean siftUp(int slot) {
+        RestockRequest request = restockHeap[slot];
+        int start = slot;
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (RESTOCK_ORDER.compare(request, restockHeap[parent]) >= 0) {
+                break;
+            }
+            placeInHeap(restockHeap[parent], slot);
+            slot = parent;
+        }
+        placeInHeap(request, slot);
+        return slot != start;
+    }
+    
+    private void siftDown(int slot) {
+        RestockRequest request = restockHeap[slot];
+        int half = restockQueueSize >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if (right < restockQueueSize && RESTOCK_ORDER.compare(restockHeap[right], restockHeap[child]) < 0) {
+                child = right;
+            }
+            if (RESTOCK_ORDER.compare(request, restockHeap[child]) <= 0) {
+                break;
+            }
+            placeInHeap(restockHeap[child], slot);
+            slot = child;
+        }
+        placeInHeap(request, slot);
+    }
+    
+    private void placeInHeap(RestockRequest request, int slot) {
+        restockHeap[slot] = request;
+        restockSlots.put(request.getProductCode(), slot);
+    }
+    
+    private static int priorityRank(String priority) {
+        if ("HIGH".equals(priority)) {
+            return 0;
+        } else if ("MEDIUM".equals(priority)) {
+            return 1;
+        } else if ("LOW".equals(priority)) {
+            return 2;
+        }
+        return 3;
     }
     
     /**
-     * Rebuild BST from array
+     * Get queue size
      */
-    public void rebuildBST() {
-        bstRoot = null;
-        for (Product product : productArray) {
-            insertIntoBST(product);
-        }
+    public int getRestockQueueSize() {
+        return restockQueueSize;
     }
 }
-
-
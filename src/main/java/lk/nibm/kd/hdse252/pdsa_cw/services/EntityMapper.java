@@ -0,0 +1,234 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.dto.CustomerDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.PurchaseOrderDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.PurchaseOrderItemDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.SalesOrderDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.SalesOrderItemDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.SupplierDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.UserDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Customer;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.PurchaseOrder;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.PurchaseOrderItem;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.SalesOrder;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.SalesOrderItem;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Supplier;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.User;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Plain getter/setter mapping between entities and DTOs
+ *
+ * Replaces the reflective ModelMapper: every pair is copied field by field, so
+ * mapping a row costs the DTO allocation and nothing else. Nested orders are
+ * mapped the same way the owning service maps them.
+ */
+@Component
+public class EntityMapper {
+    
+    public ProductDTO toProductDTO(Product product) {
+        ProductDTO dto = new ProductDTO();
+        dto.setId(product.getId());
+        dto.setProductCode(product.getProductCode());
+        dto.setName(product.getName());
+        dto.setDescription(product.getDescription());
+        dto.setCategory(product.getCategory());
+        dto.setItemType(product.getItemType());
+        dto.setWoodType(product.getWoodType());
+        dto.setFinishedType(product.getFinishedType());
+        dto.setIsCarved(product.getIsCarved());
+        dto.setCost(product.getCost());
+        dto.setSellingPrice(product.getSellingPrice());
+        dto.setPrice(product.getSellingPrice()); // For backward compatibility
+        dto.setStock(product.getStock());
+        dto.setStockQuantity(product.getStock()); // For backward compatibility
+        dto.setMinStockLevel(product.getMinStockLevel());
+        dto.setDimensions(product.getDimensions());
+        dto.setWeight(product.getWeight());
+        dto.setCreatedAt(product.getCreatedAt());
+        dto.setUpdatedAt(product.getUpdatedAt());
+        return dto;
+    }
+    
+    public CustomerDTO toCustomerDTO(Customer customer) {
+        CustomerDTO dto = new CustomerDTO();
+        dto.setId(customer.getId());
+        dto.setCustomerCode(customer.getCustomerCode());
+        dto.setName(customer.getName());
+        dto.setEmail(customer.getEmail());
+        dto.setPhone(customer.getPhone());
+        dto.setAddress(customer.getAddress());
+        dto.setCity(customer.getCity());
+        dto.setCountry(customer.getCountry());
+        dto.setCustomerType(customer.getCustomerType());
+        dto.setStatus(customer.getStatus());
+        dto.setCreatedAt(customer.getCreatedAt());
+        dto.setUpdatedAt(customer.getUpdatedAt());
+        return dto;
+    }
+    
+    public Customer toCustomer(CustomerDTO dto) {
+        Customer customer = new Customer();
+        customer.setId(dto.getId());
+        customer.setCustomerCode(dto.getCustomerCode());
+        customer.setName(dto.getName());
+        customer.setEmail(dto.getEmail());
+        customer.setPhone(dto.getPhone());
+        customer.setAddress(dto.getAddress());
+        customer.setCity(dto.getCity());
+        customer.setCountry(dto.getCountry());
+        customer.setCustomerType(dto.getCustomerType());
+        customer.setStatus(dto.getStatus());
+        customer.setCreatedAt(dto.getCreatedAt());
+        customer.setUpdatedAt(dto.getUpdatedAt());
+        return customer;
+    }
+    
+    public SupplierDTO toSupplierDTO(Supplier supplier) {
+        SupplierDTO dto = new SupplierDTO();
+        dto.setId(supplier.getId());
+        dto.setSupplierCode(supplier.getSupplierCode());
+        dto.setName(supplier.getName());
+        dto.setContactPerson(supplier.getContactPerson());
+        dto.setEmail(supplier.getEmail());
+        dto.setPhone(supplier.getPhone());
+        dto.setAddress(supplier.getAddress());
+        dto.setCity(supplier.getCity());
+        dto.setCountry(supplier.getCountry());
+        dto.setStatus(supplier.getStatus());
+        dto.setCreatedAt(supplier.getCreatedAt());
+        dto.setUpdatedAt(supplier.getUpdatedAt());
+        return dto;
+    }
+    
+    public Supplier toSupplier(SupplierDTO dto) {
+        Supplier supplier = new Supplier();
+        supplier.setId(dto.getId());
+        supplier.setSupplierCode(dto.getSupplierCode());
+        supplier.setName(dto.getName());
+        supplier.setContactPerson(dto.getContactPerson());
+        supplier.setEmail(dto.getEmail());
+        supplier.setPhone(dto.getPhone());
+        supplier.setAddress(dto.getAddress());
+        supplier.setCity(dto.getCity());
+        supplier.setCountry(dto.getCountry());
+        supplier.setStatus(dto.getStatus());
+        supplier.setCreatedAt(dto.getCreatedAt());
+        supplier.setUpdatedAt(dto.getUpdatedAt());
+        return supplier;
+    }
+    
+    public UserDTO toUserDTO(User user) {
+        UserDTO dto = new UserDTO();
+        dto.setId(user.getId());
+        dto.setUsername(user.getUsername());
+        dto.setPassword(user.getPassword());
+        dto.setEmail(user.getEmail());
+        dto.setFullName(user.getFullName());
+        dto.setRole(user.getRole());
+        dto.setPermissions(user.getPermissions());
+        dto.setIsActive(user.getIsActive());
+        dto.setCreatedAt(user.getCreatedAt());
+        dto.setUpdatedAt(user.getUpdatedAt());
+        return dto;
+    }
+    
+    public User toUser(UserDTO dto) {
+        User user = new User();
+        user.setId(dto.getId());
+        user.setUsername(dto.getUsername());
+        user.setPassword(dto.getPassword());
+        user.setEmail(dto.getEmail());
+        user.setFullName(dto.getFullName());
+        user.setRole(dto.getRole());
+        user.setPermissions(dto.getPermissions());
+        user.setIsActive(dto.getIsActive());
+        user.setCreatedAt(dto.getCreatedAt());
+        user.setUpdatedAt(dto.getUpdatedAt());
+        return user;
+    }
+    
+    public SalesOrderDTO toSalesOrderDTO(SalesOrder salesOrder) {
+        SalesOrderDTO dto = new SalesOrderDTO();
+        dto.setId(salesOrder.getId());
+        dto.setOrderNumber(salesOrder.getOrderNumber());
+        dto.setCustomerId(salesOrder.getCustomer().getId());
+        dto.setCustomer(toCustomerDTO(salesOrder.getCustomer()));
+        dto.setOrderDate(salesOrder.getOrderDate());
+        dto.setExpectedDeliveryDate(salesOrder.getExpectedDeliveryDate());
+        dto.setStatus(salesOrder.getStatus());
+        dto.setSubtotal(salesOrder.getSubtotal());
+        dto.setTax(salesOrder.getTax());
+        dto.setDiscount(salesOrder.getDiscount());
+        dto.setTotalAmount(salesOrder.getTotalAmount());
+        dto.setNotes(salesOrder.getNotes());
+        dto.setCreatedAt(salesOrder.getCreatedAt());
+        dto.setUpdatedAt(salesOrder.getUpdatedAt());
+        
+        if (salesOrder.getItems() != null) {
+            dto.setItems(mapList(salesOrder.getItems(), this::toSalesOrderItemDTO));
+        }
+        return dto;
+    }
+    
+    public SalesOrderItemDTO toSalesOrderItemDTO(SalesOrderItem item) {
+        SalesOrderItemDTO dto = new SalesOrderItemDTO();
+        dto.setId(item.getId());
+        dto.setSalesOrderId(item.getSalesOrder().getId());
+        dto.setProductId(item.getProduct().getId());
+        dto.setQuantity(item.getQuantity());
+        dto.setUnitPrice(item.getUnitPrice());
+        dto.setTotalPrice(item.getTotalPrice());
+        return dto;
+    }
+    
+    public PurchaseOrderDTO toPurchaseOrderDTO(PurchaseOrder purchaseOrder) {
+        PurchaseOrderDTO dto = new PurchaseOrderDTO();
+        dto.setId(purchaseOrder.getId());
+        dto.setOrderNumber(purchaseOrder.getOrderNumber());
+        dto.setSupplierId(purchaseOrder.getSupplier().getId());
+        dto.setSupplier(toSupplierDTO(purchaseOrder.getSupplier()));
+        dto.setOrderDate(purchaseOrder.getOrderDate());
+        dto.setExpectedDeliveryDate(purchaseOrder.getExpectedDeliveryDate());
+        dto.setStatus(purchaseOrder.getStatus());
+        dto.setTotalAmount(purchaseOrder.getTotalAmount());
+        dto.setNotes(purchaseOrder.getNotes());
+        dto.setCreatedAt(purchaseOrder.getCreatedAt());
+        dto.setUpdatedAt(purchaseOrder.getUpdatedAt());
+        
+        if (purchaseOrder.getItems() != null) {
+            dto.setItems(mapList(purchaseOrder.getItems(), this::toPurchaseOrderItemDTO));
+        }
+        return dto;
+    }
+    
+    public PurchaseOrderItemDTO toPurchaseOrderItemDTO(PurchaseOrderItem item) {
+        PurchaseOrderItemDTO dto = new PurchaseOrderItemDTO();
+        dto.setId(item.getId());
+        dto.setPurchaseOrderId(item.getPurchaseOrder().getId());
+        dto.setProductId(item.getProduct().getId());
+        // include product details so frontend can display names
+        dto.setProduct(toProductDTO(item.getProduct()));
+        dto.setQuantity(item.getQuantity());
+        dto.setUnitPrice(item.getUnitPrice());
+        dto.setTotalPrice(item.getTotalPrice());
+        return dto;
+    }
+    
+    /**
+     * Map a list into an ArrayList sized up front
+     */
+    public <S, T> List<T> mapList(List<S> sources, Function<S, T> mapper) {
+        List<T> result = new ArrayList<>(sources.size());
+        for (S source : sources) {
+            result.add(mapper.apply(source));
+        }
+        return result;
+    }
+}
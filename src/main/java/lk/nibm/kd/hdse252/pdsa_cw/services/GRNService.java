@@ -9,14 +9,15 @@ import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.GRNRepository;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.PurchaseOrderRepository;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.ProductRepository;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -33,7 +34,10 @@ public class GRNService {
     private ProductRepository productRepository;
     
     @Autowired
-    private ModelMapper modelMapper;
+    private EntityMapper entityMapper;
+    
+    @Autowired
+    private StockAdjustmentService stockAdjustmentService;
     
     private String generateGRNNumber() {
         String prefix = "GRN";
@@ -94,12 +98,12 @@ public class GRNService {
             throw new RuntimeException("GRN is already completed");
         }
         
-        // Update product stock for each item
+        // Add the received quantities to stock in one batch
+        Map<Long, Integer> receipts = new HashMap<>();
         for (GRNItem item : grn.getItems()) {
-            Product product = item.getProduct();
-            product.setStock(product.getStock() + item.getReceivedQuantity());
-            productRepository.save(product);
+            receipts.merge(item.getProduct().getId(), item.getReceivedQuantity(), Integer::sum);
         }
+        stockAdjustmentService.adjustStock(receipts);
         
         grn.setStatus("COMPLETED");
         GRN completedGRN = grnRepository.save(grn);
@@ -139,7 +143,7 @@ public class GRNService {
         dto.setId(grn.getId());
         dto.setGrnNumber(grn.getGrnNumber());
         dto.setPurchaseOrderId(grn.getPurchaseOrder().getId());
-        dto.setPurchaseOrder(modelMapper.map(grn.getPurchaseOrder(), lk.nibm.kd.hdse252.pdsa_cw.dto.PurchaseOrderDTO.class));
+        dto.setPurchaseOrder(entityMapper.toPurchaseOrderDTO(grn.getPurchaseOrder()));
         dto.setReceivedDate(grn.getReceivedDate());
         dto.setStatus(grn.getStatus());
         dto.setNotes(grn.getNotes());
@@ -11,7 +11,6 @@ import lk.nibm.kd.hdse252.pdsa_cw.repositories.InvoiceRepository;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.SalesOrderRepository;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.CustomerRepository;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.ProductRepository;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -38,7 +37,7 @@ public class InvoiceService {
     private ProductRepository productRepository;
     
     @Autowired
-    private ModelMapper modelMapper;
+    private EntityMapper entityMapper;
     
     private String generateInvoiceNumber() {
         String prefix = "INV";
@@ -228,9 +227,9 @@ public class InvoiceService {
         dto.setId(invoice.getId());
         dto.setInvoiceNumber(invoice.getInvoiceNumber());
         dto.setSalesOrderId(invoice.getSalesOrder().getId());
-        dto.setSalesOrder(modelMapper.map(invoice.getSalesOrder(), lk.nibm.kd.hdse252.pdsa_cw.dto.SalesOrderDTO.class));
+        dto.setSalesOrder(entityMapper.toSalesOrderDTO(invoice.getSalesOrder()));
         dto.setCustomerId(invoice.getCustomer().getId());
-        dto.setCustomer(modelMapper.map(invoice.getCustomer(), lk.nibm.kd.hdse252.pdsa_cw.dto.CustomerDTO.class));
+        dto.setCustomer(entityMapper.toCustomerDTO(invoice.getCustomer()));
         dto.setInvoiceDate(invoice.getInvoiceDate());
         dto.setDueDate(invoice.getDueDate());
         dto.setStatus(invoice.getStatus());
@@ -1,18 +1,27 @@
 package lk.nibm.kd.hdse252.pdsa_cw.services;
 
+import jakarta.annotation.PostConstruct;
 import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.StockPredictionDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.ConcurrentConsumptionHistory;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.ConsumptionRingBuffer;
 import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.SmoothingForecast;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.ProductRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service for advanced analytics and algorithms
- * Enhanced Functionality 1: Stock Prediction using Moving Average Algorithm
+ * Enhanced Functionality 1: Stock Prediction using Moving Average (or Holt / Holt-Winters smoothing)
  * Enhanced Functionality 2: Product Recommendation using Similarity Algorithm
  */
 @Service
@@ -21,29 +30,89 @@ public class ProductAnalyticsService {
     @Autowired
     private ProductRepository productRepository;
     
-    // Store historical stock data for prediction
-    private final Map<String, List<StockHistory>> stockHistoryMap = new HashMap<>();
+    @Autowired
+    private SimilarityIndexService similarityIndexService;
+    
+    @Autowired
+    private CoPurchaseIndexService coPurchaseIndexService;
+    
+    @Autowired
+    private ConsumptionStore consumptionStore;
+    
+    @Autowired
+    private DataStructureService dataStructureService;
+    
+    // Catalog size from which batch predictions are computed in parallel
+    private static final int PARALLEL_PREDICTION_THRESHOLD = 10_000;
+    
+    // Daily consumption of the last 30 days per product code, for prediction
+    // Safe for concurrent recording, see ConcurrentConsumptionHistory
+    private final Map<String, ConcurrentConsumptionHistory> stockHistoryMap = new ConcurrentHashMap<>();
+    
+    /**
+     * Load the last 30 days of consumption from the consumption store
+     */
+    @PostConstruct
+    public void restoreStockHistory() throws IOException {
+        long started = System.nanoTime();
+        long today = LocalDate.now().toEpochDay();
+        Map<String, ConsumptionStore.ProductConsumption> stored = consumptionStore.load(today);
+        for (Map.Entry<String, ConsumptionStore.ProductConsumption> entry : stored.entrySet()) {
+            Map<Long, Long> dailyTotals = entry.getValue().getDailyTotals();
+            if (dailyTotals.isEmpty()) {
+                continue;
+            }
+            // Replayed oldest day first, so every day also updates the smoothing state
+            ConcurrentConsumptionHistory history = new ConcurrentConsumptionHistory(dailyTotals.keySet().iterator().next());
+            for (Map.Entry<Long, Long> day : dailyTotals.entrySet()) {
+                history.record(day.getKey(), day.getValue().intValue());
+            }
+            history.snapshot(today);
+            stockHistoryMap.put(entry.getKey(), history);
+        }
+        System.out.println("✓ Consumption history loaded (" + stockHistoryMap.size() + " products, "
+                + (System.nanoTime() - started) / 1_000_000 + " ms)");
+    }
     
     /**
      * Enhanced Functionality 1: Stock Prediction using Moving Average Algorithm
      * Predicts future stock requirements based on historical consumption patterns
+     * algorithm: moving-average (default), holt (level + trend) or holt-winters (plus weekly seasonality)
      */
-    public Map<String, Object> predictStockRequirements(String productCode, int days) {
+    public Map<String, Object> predictStockRequirements(String productCode, int days, String algorithm) {
+        boolean smoothing = "holt".equalsIgnoreCase(algorithm) || "holt-winters".equalsIgnoreCase(algorithm);
+        if (!smoothing && !"moving-average".equalsIgnoreCase(algorithm)) {
+            throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        }
+        
         Product product = productRepository.findByProductCode(productCode)
                 .orElseThrow(() -> new RuntimeException("Product not found"));
         
-        List<StockHistory> history = stockHistoryMap.getOrDefault(productCode, new ArrayList<>());
+        ConcurrentConsumptionHistory recorded = stockHistoryMap.get(productCode);
+        long today = LocalDate.now().toEpochDay();
+        ConsumptionRingBuffer history = recorded != null ? recorded.snapshot(today) : null;
         
         // If no history, use current stock and min level for prediction
-        if (history.isEmpty()) {
+        if (history == null || history.isEmpty(today)) {
             return createBasicPrediction(product, days);
         }
         
-        // Calculate moving average of stock consumption
-        double movingAverage = calculateMovingAverage(history, Math.min(7, history.size()));
+        // Moving average of daily consumption (last 7 days)
+        double movingAverage = history.movingAverage(today);
+        double predictedConsumption = movingAverage * days;
+        String algorithmName = "Moving Average";
+        SmoothingForecast forecast = null;
+        
+        if (smoothing) {
+            boolean seasonal = "holt-winters".equalsIgnoreCase(algorithm);
+            forecast = recorded.forecastState(today, seasonal);
+            if (forecast.hasObservations()) {
+                predictedConsumption = forecast.forecastTotal(today, days);
+                algorithmName = seasonal ? "Holt-Winters (weekly seasonality)" : "Holt (level + trend)";
+            }
+        }
         
         // Predict future stock requirements
-        double predictedConsumption = movingAverage * days;
         int currentStock = product.getStock();
         int predictedStock = (int) (currentStock - predictedConsumption);
         int recommendedOrder = predictedStock < product.getMinStockLevel() 
@@ -59,27 +128,24 @@ public class ProductAnalyticsService {
         prediction.put("recommendedOrderQuantity", recommendedOrder);
         prediction.put("daysPredicted", days);
         prediction.put("predictionDate", LocalDateTime.now());
-        prediction.put("algorithm", "Moving Average");
-        
-        return prediction;
-    }
-    
-    /**
-     * Calculate moving average from stock history
-     */
-    private double calculateMovingAverage(List<StockHistory> history, int period) {
-        if (history.isEmpty()) {
-            return 0.0;
+        prediction.put("algorithm", algorithmName);
+        if (forecast != null && forecast.hasObservations()) {
+            prediction.put("level", String.format("%.2f", forecast.getLevel()));
+            prediction.put("trend", String.format("%.2f", forecast.getTrend()));
+            prediction.put("observedDays", forecast.getObservedDays());
+        } else if (forecast != null) {
+            prediction.put("note", "No completed day of history yet. Using moving average.");
         }
         
-        int size = Math.min(period, history.size());
-        double sum = 0.0;
-        
-        for (int i = history.size() - size; i < history.size(); i++) {
-            sum += history.get(i).getConsumption();
+        // Older history, rolled up by week (week starting Monday -> quantity)
+        Map<Long, Long> weeklyTotals = consumptionStore.getWeeklyTotals(productCode);
+        if (!weeklyTotals.isEmpty()) {
+            Map<String, Long> weeklyConsumption = new LinkedHashMap<>();
+            weeklyTotals.forEach((week, quantity) -> weeklyConsumption.put(LocalDate.ofEpochDay(week).toString(), quantity));
+            prediction.put("weeklyConsumption", weeklyConsumption);
         }
         
-        return sum / size;
+        return prediction;
     }
     
     /**
@@ -107,72 +173,85 @@ public class ProductAnalyticsService {
      * Record stock consumption for prediction algorithm
      */
     public void recordStockConsumption(String productCode, int quantityConsumed) {
-        StockHistory history = new StockHistory(LocalDateTime.now(), quantityConsumed);
-        stockHistoryMap.computeIfAbsent(productCode, k -> new ArrayList<>()).add(history);
-        
-        // Keep only last 30 days of history
-        List<StockHistory> historyList = stockHistoryMap.get(productCode);
-        LocalDateTime cutoffDate = LocalDateTime.now().minusDays(30);
-        historyList.removeIf(h -> h.getDate().isBefore(cutoffDate));
+        // Only the last 30 days are kept in memory, the store keeps older weeks
+        long today = LocalDate.now().toEpochDay();
+        stockHistoryMap.computeIfAbsent(productCode, k -> new ConcurrentConsumptionHistory(today))
+                .record(today, quantityConsumed);
+        consumptionStore.append(productCode, today, quantityConsumed);
     }
     
     /**
      * Enhanced Functionality 2: Product Recommendation using Similarity Algorithm
      * Recommends similar products based on category, wood type, and price range
+     * Read from the precomputed top-K neighbor index (SimilarityIndexService)
      */
     public List<ProductDTO> recommendSimilarProducts(String productCode, int maxRecommendations) {
-        Product targetProduct = productRepository.findByProductCode(productCode)
-                .orElseThrow(() -> new RuntimeException("Product not found"));
-        
-        List<Product> allProducts = productRepository.findAll();
-        
-        // Calculate similarity score for each product
-        List<ProductSimilarity> similarities = new ArrayList<>();
-        
-        for (Product product : allProducts) {
-            if (product.getId().equals(targetProduct.getId())) {
-                continue; // Skip the product itself
-            }
-            
-            double similarityScore = calculateSimilarity(targetProduct, product);
-            similarities.add(new ProductSimilarity(product, similarityScore));
-        }
-        
-        // Sort by similarity score (descending) using Quick Sort algorithm
-        quickSort(similarities, 0, similarities.size() - 1);
-        
-        // Return top recommendations
-        return similarities.stream()
-                .limit(maxRecommendations)
-                .map(ps -> {
-                    ProductDTO dto = new ProductDTO();
-                    dto.setId(ps.getProduct().getId());
-                    dto.setProductCode(ps.getProduct().getProductCode());
-                    dto.setName(ps.getProduct().getName());
-                    dto.setDescription(ps.getProduct().getDescription());
-                    dto.setCategory(ps.getProduct().getCategory());
-                    dto.setSellingPrice(ps.getProduct().getSellingPrice());
-                    dto.setPrice(ps.getProduct().getSellingPrice());
-                    dto.setStock(ps.getProduct().getStock());
-                    dto.setStockQuantity(ps.getProduct().getStock());
-                    dto.setItemType(ps.getProduct().getItemType());
-                    dto.setFinishedType(ps.getProduct().getFinishedType());
-                    dto.setIsCarved(ps.getProduct().getIsCarved());
-                    dto.setCost(ps.getProduct().getCost());
-                    dto.setWoodType(ps.getProduct().getWoodType());
-                    dto.setDimensions(ps.getProduct().getDimensions());
-                    dto.setWeight(ps.getProduct().getWeight());
-                    dto.setSimilarityScore(ps.getSimilarityScore());
-                    return dto;
-                })
+        return similarityIndexService.findSimilar(productCode, maxRecommendations).stream()
+                .map(this::toRecommendationDTO)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * Products most often bought together with this one (confirmed sales orders)
+     * similarityScore is the share of this product's orders that also contained the other product
+     */
+    public List<ProductDTO> recommendCoPurchasedProducts(String productCode, int maxRecommendations) {
+        return coPurchaseIndexService.findCoPurchased(productCode, maxRecommendations).stream()
+                .map(this::toRecommendationDTO)
                 .collect(Collectors.toList());
     }
     
+    private ProductDTO toRecommendationDTO(ProductSimilarity ps) {
+        ProductDTO dto = new ProductDTO();
+        dto.setId(ps.getProduct().getId());
+        dto.setProductCode(ps.getProduct().getProductCode());
+        dto.setName(ps.getProduct().getName());
+        dto.setDescription(ps.getProduct().getDescription());
+        dto.setCategory(ps.getProduct().getCategory());
+        dto.setSellingPrice(ps.getProduct().getSellingPrice());
+        dto.setPrice(ps.getProduct().getSellingPrice());
+        dto.setStock(ps.getProduct().getStock());
+        dto.setStockQuantity(ps.getProduct().getStock());
+        dto.setItemType(ps.getProduct().getItemType());
+        dto.setFinishedType(ps.getProduct().getFinishedType());
+        dto.setIsCarved(ps.getProduct().getIsCarved());
+        dto.setCost(ps.getProduct().getCost());
+        dto.setWoodType(ps.getProduct().getWoodType());
+        dto.setDimensions(ps.getProduct().getDimensions());
+        dto.setWeight(ps.getProduct().getWeight());
+        dto.setSimilarityScore(ps.getSimilarityScore());
+        return dto;
+    }
+    
+    /**
+     * Rebuild the similarity index in the background
+     */
+    public Map<String, Object> rebuildSimilarityIndex() {
+        boolean started = similarityIndexService.rebuildInBackground();
+        Map<String, Object> status = new HashMap<>();
+        status.put("started", started);
+        status.put("status", started ? "Rebuild started" : "Rebuild already running");
+        status.put("products", similarityIndexService.size());
+        return status;
+    }
+    
+    /**
+     * Rebuild the co-purchase index from the order history in the background
+     */
+    public Map<String, Object> rebuildCoPurchaseIndex() {
+        boolean started = coPurchaseIndexService.rebuildInBackground();
+        Map<String, Object> status = new HashMap<>();
+        status.put("started", started);
+        status.put("status", started ? "Rebuild started" : "Rebuild already running");
+        status.put("products", coPurchaseIndexService.size());
+        return status;
+    }
+    
     /**
      * Calculate similarity score between two products
      * Uses weighted scoring: category (40%), wood type (30%), price range (30%)
      */
-    private double calculateSimilarity(Product product1, Product product2) {
+    static double calculateSimilarity(Product product1, Product product2) {
         double score = 0.0;
         
         // Category match (40% weight)
@@ -197,66 +276,64 @@ public class ProductAnalyticsService {
     }
     
     /**
-     * Quick Sort algorithm for sorting products by similarity
+     * Get stock prediction for all products (batch)
+     * Reads the in-memory catalog instead of querying per product, and snapshots and
+     * forecasts each product in the same step (in parallel for large catalogs).
+     * Same formulas as predictStockRequirements.
      */
-    private void quickSort(List<ProductSimilarity> list, int low, int high) {
-        if (low < high) {
-            int pi = partition(list, low, high);
-            quickSort(list, low, pi - 1);
-            quickSort(list, pi + 1, high);
-        }
-    }
-    
-    private int partition(List<ProductSimilarity> list, int low, int high) {
-        double pivot = list.get(high).getSimilarityScore();
-        int i = low - 1;
+    public List<StockPredictionDTO> predictAllProductsStock(int days) {
+        List<Product> products = dataStructureService.getAllFromArray();
+        long today = LocalDate.now().toEpochDay();
+        LocalDateTime predictionDate = LocalDateTime.now();
         
-        for (int j = low; j < high; j++) {
-            if (list.get(j).getSimilarityScore() >= pivot) {
-                i++;
-                Collections.swap(list, i, j);
-            }
-        }
-        
-        Collections.swap(list, i + 1, high);
-        return i + 1;
-    }
-    
-    /**
-     * Get stock prediction for all products
-     */
-    public List<Map<String, Object>> predictAllProductsStock(int days) {
-        List<Product> products = productRepository.findAll();
-        return products.stream()
-                .map(product -> predictStockRequirements(product.getProductCode(), days))
+        Stream<Product> stream = products.size() >= PARALLEL_PREDICTION_THRESHOLD
+                ? products.parallelStream()
+                : products.stream();
+        return stream
+                .map(product -> predictProductStock(product, days, today, predictionDate))
                 .collect(Collectors.toList());
     }
     
-    /**
-     * Inner class for stock history
-     */
-    private static class StockHistory {
-        private LocalDateTime date;
-        private int consumption;
-        
-        public StockHistory(LocalDateTime date, int consumption) {
-            this.date = date;
-            this.consumption = consumption;
-        }
+    private StockPredictionDTO predictProductStock(Product product, int days, long today, LocalDateTime predictionDate) {
+        int stock = product.getStock() != null ? product.getStock() : 0;
+        int minLevel = product.getMinStockLevel() != null ? product.getMinStockLevel() : 0;
+        ConcurrentConsumptionHistory recorded = stockHistoryMap.get(product.getProductCode());
+        ConsumptionRingBuffer history = recorded != null ? recorded.snapshot(today) : null;
         
-        public LocalDateTime getDate() {
-            return date;
+        double consumption;
+        int predictedStock;
+        int orderQuantity;
+        String algorithm;
+        if (history == null || history.isEmpty(today)) {
+            // Basic estimation, as in createBasicPrediction
+            consumption = (double) minLevel / 30 * days;
+            predictedStock = Math.max(0, stock - (minLevel / 30 * days));
+            orderQuantity = stock <= minLevel ? minLevel * 2 : 0;
+            algorithm = "Basic Estimation (No History)";
+        } else {
+            consumption = history.movingAverage(today) * days;
+            predictedStock = (int) (stock - consumption);
+            orderQuantity = predictedStock < minLevel ? (int) (consumption + minLevel - predictedStock) : 0;
+            predictedStock = Math.max(0, predictedStock);
+            algorithm = "Moving Average";
         }
         
-        public int getConsumption() {
-            return consumption;
-        }
+        return new StockPredictionDTO(
+                product.getProductCode(),
+                product.getName(),
+                stock,
+                predictedStock,
+                Math.round(consumption * 100) / 100.0,
+                orderQuantity,
+                days,
+                predictionDate,
+                algorithm);
     }
     
     /**
      * Inner class for product similarity
      */
-    private static class ProductSimilarity {
+    static class ProductSimilarity {
         private Product product;
         private double similarityScore;
         
@@ -0,0 +1,285 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.RadixTrieNode;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Prefix index (Radix Tree) for product code and name autocomplete
+ * Keys are the lower-cased product code and every word of the product name
+ * Every node knows the length of the shortest key below it, so a lookup only
+ * opens the branches that hold the next results instead of the whole subtree
+ */
+@Service
+public class ProductAutocompleteService implements CatalogIndex {
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private RadixTrieNode root = new RadixTrieNode();
+    
+    // Keys each product was indexed under, so updates and deletes can unlink them
+    private final Map<Long, List<String>> keysByProduct = new HashMap<>();
+    
+    // Indexed copy of each product, so an older copy arriving late is ignored
+    private final Map<Long, Product> productsById = new HashMap<>();
+    
+    // Shortest reachable key first, then alphabetical
+    private static final Comparator<KeyPath> KEY_ORDER = Comparator
+            .comparingInt((KeyPath path) -> path.keyLength)
+            .thenComparing(path -> path.key);
+    
+    @Override
+    public void loadAll(List<Product> products) {
+        lock.writeLock().lock();
+        try {
+            root = new RadixTrieNode();
+            keysByProduct.clear();
+            productsById.clear();
+            for (Product product : products) {
+                addProduct(product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void productSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            if (CatalogIndex.isOlder(product, productsById.get(product.getId()))) {
+                return;
+            }
+            removeProduct(product.getId());
+            addProduct(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void productRemoved(Product product) {
+        lock.writeLock().lock();
+        try {
+            removeProduct(product.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Get ids of up to limit products with a key starting with the prefix
+     * Shorter keys come first, then keys in alphabetical order
+     */
+    public List<Long> findByPrefix(String prefix, int limit) {
+        String key = prefix.trim().toLowerCase(Locale.ROOT);
+        Set<Long> result = new LinkedHashSet<>();
+        if (key.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        
+        lock.readLock().lock();
+        try {
+            KeyPath start = findPrefixNode(key);
+            if (start == null) {
+                return new ArrayList<>();
+            }
+            
+            // Best-first walk: a subtree is ranked by the shortest key in it, which no key below it
+            // beats (keys below are at least that long and start with the subtree's key), so keys
+            // come out by length then alphabetically and the walk stops once limit is reached
+            PriorityQueue<KeyPath> frontier = new PriorityQueue<>(KEY_ORDER);
+            frontier.add(start);
+            while (!frontier.isEmpty() && result.size() < limit) {
+                KeyPath current = frontier.poll();
+                if (current.idsOnly) {
+                    for (Long productId : current.node.getProductIds()) {
+                        result.add(productId);
+                        if (result.size() == limit) {
+                            break;
+                        }
+                    }
+                    continue;
+                }
+                if (!current.node.getProductIds().isEmpty()) {
+                    frontier.add(new KeyPath(current.node, current.key, current.key.length(), true));
+                }
+                for (RadixTrieNode child : current.node.getChildren().values()) {
+                    frontier.add(new KeyPath(child, current.key + child.getLabel()));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new ArrayList<>(result);
+    }
+    
+    /**
+     * Find the node whose path starts with the prefix (the prefix may end inside an edge)
+     * Returned with its full key, which is longer than the prefix when it ends inside an edge
+     */
+    private KeyPath findPrefixNode(String prefix) {
+        RadixTrieNode node = root;
+        int position = 0;
+        while (position < prefix.length()) {
+            RadixTrieNode child = node.getChildren().get(prefix.charAt(position));
+            if (child == null) {
+                return null;
+            }
+            String label = child.getLabel();
+            int common = commonPrefixLength(label, prefix, position);
+            if (position + common == prefix.length()) {
+                return new KeyPath(child, prefix.substring(0, position) + label);
+            }
+            if (common < label.length()) {
+                return null;
+            }
+            position += common;
+            node = child;
+        }
+        return new KeyPath(node, prefix);
+    }
+    
+    private void addProduct(Product product) {
+        List<String> keys = keysFor(product);
+        for (String key : keys) {
+            insert(key, product.getId());
+        }
+        keysByProduct.put(product.getId(), keys);
+        productsById.put(product.getId(), product);
+    }
+    
+    private void removeProduct(Long productId) {
+        List<String> keys = keysByProduct.remove(productId);
+        productsById.remove(productId);
+        if (keys != null) {
+            for (String key : keys) {
+                remove(root, key, 0, productId);
+            }
+        }
+    }
+    
+    private List<String> keysFor(Product product) {
+        Set<String> keys = new LinkedHashSet<>();
+        if (product.getProductCode() != null) {
+            keys.add(product.getProductCode().toLowerCase(Locale.ROOT));
+        }
+        if (product.getName() != null) {
+            for (String word : product.getName().toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) {
+                    keys.add(word);
+                }
+            }
+        }
+        return new ArrayList<>(keys);
+    }
+    
+    private void insert(String key, Long productId) {
+        RadixTrieNode node = root;
+        int position = 0;
+        while (position < key.length()) {
+            node.setShortestKeyLength(Math.min(node.getShortestKeyLength(), key.length()));
+            char next = key.charAt(position);
+            RadixTrieNode child = node.getChildren().get(next);
+            if (child == null) {
+                RadixTrieNode leaf = new RadixTrieNode(key.substring(position));
+                leaf.getProductIds().add(productId);
+                leaf.setShortestKeyLength(key.length());
+                node.getChildren().put(next, leaf);
+                return;
+            }
+            
+            String label = child.getLabel();
+            int common = commonPrefixLength(label, key, position);
+            if (common < label.length()) {
+                // Split the edge at the point where the key and the label differ
+                RadixTrieNode middle = new RadixTrieNode(label.substring(0, common));
+                middle.setShortestKeyLength(child.getShortestKeyLength());
+                child.setLabel(label.substring(common));
+                middle.getChildren().put(child.getLabel().charAt(0), child);
+                node.getChildren().put(next, middle);
+                child = middle;
+            }
+            position += common;
+            node = child;
+        }
+        node.getProductIds().add(productId);
+        node.setShortestKeyLength(Math.min(node.getShortestKeyLength(), key.length()));
+    }
+    
+    /**
+     * Remove the product from the key, pruning empty nodes and merging single-child nodes
+     * Returns true if the child node should be unlinked from its parent
+     */
+    private boolean remove(RadixTrieNode node, String key, int position, Long productId) {
+        if (position == key.length()) {
+            node.getProductIds().remove(productId);
+        } else {
+            RadixTrieNode child = node.getChildren().get(key.charAt(position));
+            if (child == null || !key.startsWith(child.getLabel(), position)) {
+                return false;
+            }
+            if (remove(child, key, position + child.getLabel().length(), productId)) {
+                node.getChildren().remove(key.charAt(position));
+            } else if (child.getProductIds().isEmpty() && child.getChildren().size() == 1) {
+                RadixTrieNode grandChild = child.getChildren().firstEntry().getValue();
+                grandChild.setLabel(child.getLabel() + grandChild.getLabel());
+                node.getChildren().put(key.charAt(position), grandChild);
+            }
+        }
+        updateShortestKeyLength(node, position);
+        return node != root && node.getProductIds().isEmpty() && node.getChildren().isEmpty();
+    }
+    
+    /**
+     * Recompute a node's shortest key from its own key (if products end there) and its children
+     */
+    private static void updateShortestKeyLength(RadixTrieNode node, int keyLength) {
+        int shortest = node.getProductIds().isEmpty() ? Integer.MAX_VALUE : keyLength;
+        for (RadixTrieNode child : node.getChildren().values()) {
+            shortest = Math.min(shortest, child.getShortestKeyLength());
+        }
+        node.setShortestKeyLength(shortest);
+    }
+    
+    /**
+     * A trie node together with the key spelled by the labels on the way to it
+     * Ranked by the shortest key in its subtree, or by its own key when only its products are left to emit
+     */
+    private static class KeyPath {
+        private final RadixTrieNode node;
+        private final String key;
+        private final int keyLength;
+        private final boolean idsOnly;
+        
+        KeyPath(RadixTrieNode node, String key) {
+            this(node, key, node.getShortestKeyLength(), false);
+        }
+        
+        KeyPath(RadixTrieNode node, String key, int keyLength, boolean idsOnly) {
+            this.node = node;
+            this.key = key;
+            this.keyLength = keyLength;
+            this.idsOnly = idsOnly;
+        }
+    }
+    
+    private int commonPrefixLength(String label, String key, int keyOffset) {
+        int max = Math.min(label.length(), key.length() - keyOffset);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(keyOffset + i)) {
+            i++;
+        }
+        return i;
+    }
+}
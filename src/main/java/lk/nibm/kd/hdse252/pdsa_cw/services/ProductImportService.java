@@ -0,0 +1,398 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lk.nibm.kd.hdse252.pdsa_cw.config.CatalogIndexLoader;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductImportResultDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductImportResultDTO.ImportChunkDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductImportResultDTO.ImportRowErrorDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.RestockRequest;
+import lk.nibm.kd.hdse252.pdsa_cw.repositories.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming bulk import of products from CSV or NDJSON
+ *
+ * The body is read row by row and handled in chunks of CHUNK_SIZE rows, so only
+ * one chunk is held in memory. Each chunk checks its codes against the database
+ * with one IN query, inserts the valid rows with one JDBC batch in its own
+ * transaction and reports the rows it rejected. The in-memory indexes are
+ * reloaded once at the end instead of once per product.
+ *
+ * CSV needs a header row of ProductDTO field names (productCode, name, ...),
+ * NDJSON is one ProductDTO JSON object per line.
+ */
+@Service
+public class ProductImportService {
+    
+    static final int CHUNK_SIZE = 1000;
+    
+    // ProductDTO field names by lower case name, so CSV headers can use any case
+    private static final Map<String, String> FIELD_NAMES = new HashMap<>();
+    
+    static {
+        for (Field field : ProductDTO.class.getDeclaredFields()) {
+            FIELD_NAMES.put(field.getName().toLowerCase(), field.getName());
+        }
+    }
+    
+    @Autowired
+    private ProductRepository productRepository;
+    
+    @Autowired
+    private DataStructureService dataStructureService;
+    
+    @Autowired
+    private CatalogIndexLoader catalogIndexLoader;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    /**
+     * Import every row of the stream, format is "csv" or "ndjson"
+     */
+    public ProductImportResultDTO importProducts(InputStream input, String format) throws IOException {
+        long start = System.nanoTime();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        RowReader rows;
+        if ("csv".equals(format)) {
+            rows = new CsvRowReader(reader);
+        } else if ("ndjson".equals(format)) {
+            rows = new NdjsonRowReader(reader);
+        } else {
+            throw new IllegalArgumentException("Unknown import format: " + format + " (expected csv or ndjson)");
+        }
+        
+        ProductImportResultDTO result = new ProductImportResultDTO();
+        Set<String> importedCodes = new HashSet<>();
+        List<ImportRow> chunk = new ArrayList<>(CHUNK_SIZE);
+        int totalRows = 0;
+        int imported = 0;
+        
+        ImportRow row;
+        while ((row = rows.next()) != null) {
+            chunk.add(row);
+            totalRows++;
+            if (chunk.size() == CHUNK_SIZE) {
+                imported += importChunk(chunk, result, importedCodes);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            imported += importChunk(chunk, result, importedCodes);
+        }
+        
+        // Inserts bypassed ProductIndexListener, so the indexes are reloaded in one go
+        if (imported > 0) {
+            catalogIndexLoader.reloadCatalogIndexes();
+        }
+        
+        result.setTotalRows(totalRows);
+        result.setImported(imported);
+        result.setFailed(totalRows - imported);
+        result.setDurationMs((System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+    
+    /**
+     * Validate, de-duplicate and insert one chunk, returns the number of rows inserted
+     */
+    private int importChunk(List<ImportRow> rows, ProductImportResultDTO result, Set<String> importedCodes) {
+        ImportChunkDTO chunkResult = new ImportChunkDTO();
+        chunkResult.setChunk(result.getChunks().size() + 1);
+        chunkResult.setFirstRow(rows.get(0).rowNumber);
+        chunkResult.setRows(rows.size());
+        result.getChunks().add(chunkResult);
+        List<ImportRowErrorDTO> errors = chunkResult.getErrors();
+        
+        // Rows that parsed and have every required field, by product code
+        Map<String, ImportRow> candidates = new LinkedHashMap<>();
+        Map<String, Product> products = new HashMap<>();
+        for (ImportRow row : rows) {
+            if (row.error != null) {
+                errors.add(new ImportRowErrorDTO(row.rowNumber, row.productCode, row.error));
+                continue;
+            }
+            Product product = ProductService.toNewProduct(row.product);
+            String missing = firstMissingField(product);
+            if (missing != null) {
+                errors.add(new ImportRowErrorDTO(row.rowNumber, row.productCode, "Missing required field: " + missing));
+            } else if (importedCodes.contains(row.productCode) || candidates.containsKey(row.productCode)) {
+                errors.add(new ImportRowErrorDTO(row.rowNumber, row.productCode, "Duplicate product code in file"));
+            } else {
+                candidates.put(row.productCode, row);
+                products.put(row.productCode, product);
+            }
+        }
+        
+        // One set-based existence check for the whole chunk
+        if (!candidates.isEmpty()) {
+            for (String existingCode : productRepository.findExistingProductCodes(candidates.keySet())) {
+                ImportRow row = candidates.remove(existingCode);
+                products.remove(existingCode);
+                errors.add(new ImportRowErrorDTO(row.rowNumber, existingCode,
+                        "Product with code " + existingCode + " already exists"));
+            }
+        }
+        
+        List<Product> toInsert = new ArrayList<>(candidates.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (String code : candidates.keySet()) {
+            Product product = products.get(code);
+            product.setCreatedAt(now);
+            product.setUpdatedAt(now);
+            toInsert.add(product);
+        }
+        
+        if (!toInsert.isEmpty()) {
+            try {
+                new TransactionTemplate(transactionManager)
+                        .executeWithoutResult(status -> productRepository.insertAll(toInsert));
+            } catch (DataAccessException e) {
+                // The batch is one transaction, so none of the chunk's rows were kept
+                for (ImportRow row : candidates.values()) {
+                    errors.add(new ImportRowErrorDTO(row.rowNumber, row.productCode,
+                            "Chunk insert failed: " + e.getMostSpecificCause().getMessage()));
+                }
+                candidates.clear();
+                toInsert.clear();
+            }
+        }
+        errors.sort(Comparator.comparing(ImportRowErrorDTO::getRow));
+        importedCodes.addAll(candidates.keySet());
+        
+        List<RestockRequest> restockRequests = new ArrayList<>();
+        for (Product product : toInsert) {
+            if (product.getStock() <= product.getMinStockLevel()) {
+                restockRequests.add(ProductService.buildRestockRequest(product));
+            }
+        }
+        dataStructureService.enqueueRestockRequests(restockRequests);
+        
+        chunkResult.setImported(toInsert.size());
+        return toInsert.size();
+    }
+    
+    /**
+     * Name of the first NOT NULL column the product has no value for, or null
+     */
+    private static String firstMissingField(Product product) {
+        Map<String, Object> required = new LinkedHashMap<>();
+        required.put("productCode", product.getProductCode());
+        required.put("name", product.getName());
+        required.put("category", product.getCategory());
+        required.put("itemType", product.getItemType());
+        required.put("woodType", product.getWoodType());
+        required.put("finishedType", product.getFinishedType());
+        required.put("isCarved", product.getIsCarved());
+        required.put("cost", product.getCost());
+        required.put("sellingPrice", product.getSellingPrice());
+        required.put("stock", product.getStock());
+        required.put("minStockLevel", product.getMinStockLevel());
+        required.put("dimensions", product.getDimensions());
+        required.put("weight", product.getWeight());
+        for (Map.Entry<String, Object> field : required.entrySet()) {
+            Object value = field.getValue();
+            if (value == null || (value instanceof String && ((String) value).trim().isEmpty())) {
+                return field.getKey();
+            }
+        }
+        return null;
+    }
+    
+    private static String fieldNameFor(String header) {
+        return FIELD_NAMES.get(header.toLowerCase());
+    }
+    
+    /**
+     * One data row: the parsed product, or the reason it could not be parsed
+     */
+    private static class ImportRow {
+        private final int rowNumber;
+        private final ProductDTO product;
+        private final String productCode;
+        private final String error;
+        
+        ImportRow(int rowNumber, ProductDTO product, String productCode, String error) {
+            this.rowNumber = rowNumber;
+            this.product = product;
+            this.productCode = productCode;
+            this.error = error;
+        }
+    }
+    
+    private interface RowReader {
+        /**
+         * Next data row, or null at the end of the input
+         */
+        ImportRow next() throws IOException;
+    }
+    
+    /**
+     * One ProductDTO JSON object per line, blank lines are skipped
+     */
+    private class NdjsonRowReader implements RowReader {
+        private final BufferedReader reader;
+        private int rowNumber = 0;
+        
+        NdjsonRowReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+        
+        @Override
+        public ImportRow next() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+            } while (line.trim().isEmpty());
+            
+            rowNumber++;
+            try {
+                ProductDTO product = objectMapper.readValue(line, ProductDTO.class);
+                return new ImportRow(rowNumber, product, product.getProductCode(), null);
+            } catch (JsonProcessingException e) {
+                return new ImportRow(rowNumber, null, null, "Invalid JSON: " + e.getOriginalMessage());
+            }
+        }
+    }
+    
+    /**
+     * RFC 4180 CSV: quoted fields may hold commas, doubled quotes and line breaks
+     * The first record is the header, its names are matched to ProductDTO fields ignoring case
+     */
+    private class CsvRowReader implements RowReader {
+        private final BufferedReader reader;
+        private List<String> columns;
+        private int rowNumber = 0;
+        
+        CsvRowReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+        
+        @Override
+        public ImportRow next() throws IOException {
+            if (columns == null) {
+                List<String> header = readRecord();
+                if (header == null) {
+                    return null;
+                }
+                columns = new ArrayList<>();
+                for (String name : header) {
+                    columns.add(fieldNameFor(name.replace("\uFEFF", "").trim()));
+                }
+            }
+            
+            List<String> record = readRecord();
+            if (record == null) {
+                return null;
+            }
+            rowNumber++;
+            
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < columns.size() && i < record.size(); i++) {
+                String value = record.get(i).trim();
+                if (columns.get(i) != null && !value.isEmpty()) {
+                    values.put(columns.get(i), value);
+                }
+            }
+            String productCode = values.get("productCode");
+            try {
+                ProductDTO product = objectMapper.convertValue(values, ProductDTO.class);
+                return new ImportRow(rowNumber, product, productCode, null);
+            } catch (IllegalArgumentException e) {
+                return new ImportRow(rowNumber, null, productCode, "Invalid value: " + rootMessage(e));
+            }
+        }
+        
+        /**
+         * Read one record, skipping blank lines, or null at the end of the input
+         */
+        private List<String> readRecord() throws IOException {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            boolean any = false;
+            
+            int c;
+            while ((c = reader.read()) != -1) {
+                any = true;
+                if (quoted) {
+                    if (c == '"') {
+                        reader.mark(1);
+                        if (reader.read() == '"') {
+                            field.append('"');
+                        } else {
+                            reader.reset();
+                            quoted = false;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c == '\r') {
+                    if (c == '\r') {
+                        reader.mark(1);
+                        if (reader.read() != '\n') {
+                            reader.reset();
+                        }
+                    }
+                    if (fields.isEmpty() && field.length() == 0) {
+                        any = false;
+                        continue;
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+            }
+            if (!any) {
+                return null;
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+    
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof JsonProcessingException
+                ? ((JsonProcessingException) cause).getOriginalMessage()
+                : cause.getMessage();
+    }
+}
@@ -0,0 +1,58 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * JPA entity listener that keeps every CatalogIndex in sync with product writes
+ * Changes are applied after the transaction commits, so rolled back writes never reach the indexes
+ */
+@Component
+public class ProductIndexListener {
+    
+    // Resolved lazily, indexes may depend on repositories that are still being created
+    @Autowired
+    private ObjectProvider<CatalogIndex> catalogIndexes;
+    
+    @PostPersist
+    @PostUpdate
+    public void onProductSaved(Product product) {
+        afterCommit(index -> index.productSaved(product));
+    }
+    
+    @PostRemove
+    public void onProductRemoved(Product product) {
+        afterCommit(index -> index.productRemoved(product));
+    }
+    
+    /**
+     * For products changed by bulk SQL, which never reaches the entity callbacks
+     */
+    public void onProductsSaved(Collection<Product> products) {
+        afterCommit(index -> products.forEach(index::productSaved));
+    }
+    
+    private void afterCommit(Consumer<CatalogIndex> change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            catalogIndexes.orderedStream().forEach(change);
+            return;
+        }
+        
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                catalogIndexes.orderedStream().forEach(change);
+            }
+        });
+    }
+}
@@ -0,0 +1,832 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.dto.FacetResultDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductSearchDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.LongIntHashMap;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.PostingList;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory search index over the product catalog
+ *
+ * Inverted index: term -> compressed posting list of (document, term frequency),
+ * ranked with BM25. Every product is a document with a dense int id. An update
+ * deletes the old document and adds a new one, deleted documents are skipped at
+ * query time and dropped when the index is rebuilt. A query word matches the
+ * words it is a prefix of, and (from three letters) words it appears inside,
+ * found through a trigram index over the term dictionary.
+ *
+ * Filters use bitmap indexes: one BitSet of documents per distinct category,
+ * wood type, item type and finished type, and price / stock arrays sorted by
+ * value so a range becomes a binary search. A multi-criteria search is a few
+ * BitSet ANDs. Facet counts for a search are gathered in the same pass that
+ * collects its results, from the per-document value ordinals.
+ */
+@Service
+public class ProductSearchIndexService implements CatalogIndex {
+    
+    // BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    
+    // Name words count this many times, so a match in the name outranks one in the description
+    private static final int NAME_BOOST = 2;
+    
+    // A query word also matches longer words starting with or containing it, up to this many
+    private static final int MAX_TERM_EXPANSIONS = 64;
+    
+    // Length of the grams in the vocabulary index, also the shortest query word matched inside words
+    private static final int GRAM_LENGTH = 3;
+    
+    // Upper limits of the price facet buckets, the last bucket is open-ended
+    private static final double[] PRICE_BUCKET_LIMITS = {5000, 10000, 25000, 50000};
+    private static final String[] PRICE_BUCKET_LABELS = {
+            "0 - 5,000", "5,000 - 10,000", "10,000 - 25,000", "25,000 - 50,000", "50,000+"
+    };
+    
+    private static final int NO_DOCUMENT = -1;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    // Documents, indexed by document id
+    private Product[] documents = new Product[64];
+    private int[] documentLengths = new int[64];
+    private String[][] documentTerms = new String[64][];
+    private int documentCount = 0;
+    private final BitSet liveDocuments = new BitSet();
+    private int liveDocumentCount = 0;
+    private long totalLiveLength = 0;
+    private LongIntHashMap documentsByProduct = new LongIntHashMap();
+    
+    // Term dictionary, sorted so prefixes can be expanded
+    private TreeMap<String, PostingList> postings = new TreeMap<>();
+    
+    // Trigram -> dictionary terms containing it, so infixes can be expanded
+    private Map<String, List<String>> termsByGram = new HashMap<>();
+    
+    // Bitmap indexes for exact-match filters (case-insensitive)
+    private final FieldBitmaps categories = new FieldBitmaps();
+    private final FieldBitmaps woodTypes = new FieldBitmaps();
+    private final FieldBitmaps itemTypes = new FieldBitmaps();
+    private final FieldBitmaps finishedTypes = new FieldBitmaps();
+    
+    // Sorted columns for range filters
+    private final SortedColumn prices = new SortedColumn();
+    private final SortedColumn stocks = new SortedColumn();
+    
+    @Override
+    public void loadAll(List<Product> products) {
+        lock.writeLock().lock();
+        try {
+            rebuild(products);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void productSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            int documentId = documentsByProduct.get(product.getId(), NO_DOCUMENT);
+            if (documentId != NO_DOCUMENT && CatalogIndex.isOlder(product, documents[documentId])) {
+                return;
+            }
+            deleteDocument(product.getId());
+            addDocument(product, false);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void productRemoved(Product product) {
+        lock.writeLock().lock();
+        try {
+            deleteDocument(product.getId());
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Search with the search term and every filter in the criteria
+     * With a search term results are best match first, otherwise in catalog order
+     */
+    public List<Product> search(ProductSearchDTO criteria) {
+        return search(criteria, null);
+    }
+    
+    /**
+     * Search like search(criteria) and fill the facet counts and total of the given result
+     * The products themselves are returned, the caller converts them
+     */
+    public List<Product> search(ProductSearchDTO criteria, FacetResultDTO facets) {
+        List<Product> results = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            BitSet filter = filterDocuments(criteria);
+            FacetCounter counter = facets != null ? new FacetCounter() : null;
+            
+            if (hasText(criteria.getSearchTerm())) {
+                boolean matchAll = !"OR".equalsIgnoreCase(criteria.getSearchMode());
+                for (int documentId : matchQuery(criteria.getSearchTerm(), matchAll).rankedDocumentIds()) {
+                    if (filter.get(documentId)) {
+                        results.add(documents[documentId]);
+                        if (counter != null) {
+                            counter.count(documentId);
+                        }
+                    }
+                }
+            } else {
+                for (int documentId = filter.nextSetBit(0); documentId >= 0;
+                     documentId = filter.nextSetBit(documentId + 1)) {
+                    results.add(documents[documentId]);
+                    if (counter != null) {
+                        counter.count(documentId);
+                    }
+                }
+            }
+            
+            if (counter != null) {
+                counter.fill(facets);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+    
+    /**
+     * Live documents that pass every filter in the criteria (search term not included)
+     */
+    private BitSet filterDocuments(ProductSearchDTO criteria) {
+        BitSet filter = (BitSet) liveDocuments.clone();
+        if (hasText(criteria.getCategory())) {
+            filter.and(categories.documentsWith(criteria.getCategory()));
+        }
+        if (hasText(criteria.getWoodType())) {
+            filter.and(woodTypes.documentsWith(criteria.getWoodType()));
+        }
+        if (hasText(criteria.getItemType())) {
+            filter.and(itemTypes.documentsWith(criteria.getItemType()));
+        }
+        if (hasText(criteria.getFinishedType())) {
+            filter.and(finishedTypes.documentsWith(criteria.getFinishedType()));
+        }
+        if (criteria.getMinPrice() != null || criteria.getMaxPrice() != null) {
+            filter.and(prices.documentsInRange(criteria.getMinPrice(), criteria.getMaxPrice()));
+        }
+        if (criteria.getMinStock() != null || criteria.getMaxStock() != null) {
+            filter.and(stocks.documentsInRange(
+                    criteria.getMinStock() != null ? criteria.getMinStock().doubleValue() : null,
+                    criteria.getMaxStock() != null ? criteria.getMaxStock().doubleValue() : null));
+        }
+        return filter;
+    }
+    
+    /**
+     * Documents matching the query words, with summed BM25 scores
+     * matchAll = true requires every query word to match (AND), otherwise any word (OR)
+     */
+    private ScoredDocuments matchQuery(String query, boolean matchAll) {
+        ScoredDocuments combined = new ScoredDocuments(0);
+        boolean first = true;
+        for (String term : new LinkedHashSet<>(tokenize(query))) {
+            ScoredDocuments matches = matchTerm(term);
+            if (first) {
+                combined = matches;
+                first = false;
+            } else if (matchAll) {
+                combined = ScoredDocuments.intersect(combined, matches);
+            } else {
+                combined = ScoredDocuments.union(combined, matches);
+            }
+            if (matchAll && combined.size == 0) {
+                break;
+            }
+        }
+        return combined;
+    }
+    
+    /**
+     * A blank filter value or search term is treated as not given
+     */
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+    
+    /**
+     * Split text into lower-case words of letters and digits
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+    
+    /**
+     * Documents matching a query word, any word it is a prefix of or any word containing it, with BM25 scores
+     * Prefix expansions are taken first, so they are kept when a short word hits the expansion limit
+     */
+    private ScoredDocuments matchTerm(String term) {
+        ScoredDocuments matches = new ScoredDocuments(0);
+        NavigableMap<String, PostingList> expansions = postings.subMap(term, true, term + Character.MAX_VALUE, true);
+        
+        int expanded = 0;
+        for (PostingList postingList : expansions.values()) {
+            if (postingList.getLiveDocumentCount() == 0) {
+                continue;
+            }
+            matches = ScoredDocuments.union(matches, scorePostings(postingList));
+            if (++expanded == MAX_TERM_EXPANSIONS) {
+                return matches;
+            }
+        }
+        
+        for (String word : infixCandidates(term)) {
+            // Words starting with the term were expanded above
+            if (word.startsWith(term) || !word.contains(term)) {
+                continue;
+            }
+            PostingList postingList = postings.get(word);
+            if (postingList.getLiveDocumentCount() == 0) {
+                continue;
+            }
+            matches = ScoredDocuments.union(matches, scorePostings(postingList));
+            if (++expanded == MAX_TERM_EXPANSIONS) {
+                break;
+            }
+        }
+        return matches;
+    }
+    
+    /**
+     * Dictionary terms that may contain the term: the ones under its rarest gram, none if it is too short
+     */
+    private List<String> infixCandidates(String term) {
+        if (term.length() < GRAM_LENGTH) {
+            return List.of();
+        }
+        List<String> rarest = null;
+        for (int i = 0; i + GRAM_LENGTH <= term.length(); i++) {
+            List<String> words = termsByGram.get(term.substring(i, i + GRAM_LENGTH));
+            if (words == null) {
+                return List.of();
+            }
+            if (rarest == null || words.size() < rarest.size()) {
+                rarest = words;
+            }
+        }
+        return rarest;
+    }
+    
+    /**
+     * List a new dictionary term under each of its grams (once, even if a gram repeats)
+     */
+    private void indexTermGrams(String term) {
+        for (int i = 0; i + GRAM_LENGTH <= term.length(); i++) {
+            List<String> words = termsByGram.computeIfAbsent(term.substring(i, i + GRAM_LENGTH), k -> new ArrayList<>());
+            if (words.isEmpty() || !words.get(words.size() - 1).equals(term)) {
+                words.add(term);
+            }
+        }
+    }
+    
+    private ScoredDocuments scorePostings(PostingList postingList) {
+        double documentFrequency = postingList.getLiveDocumentCount();
+        double idf = Math.log(1 + (liveDocumentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        double averageLength = liveDocumentCount == 0 ? 1 : (double) totalLiveLength / liveDocumentCount;
+        
+        ScoredDocuments scored = new ScoredDocuments(postingList.getLiveDocumentCount());
+        PostingList.Cursor cursor = postingList.cursor();
+        while (cursor.next()) {
+            int documentId = cursor.documentId();
+            if (!liveDocuments.get(documentId)) {
+                continue;
+            }
+            double tf = cursor.termFrequency();
+            double lengthNorm = 1 - B + B * documentLengths[documentId] / averageLength;
+            scored.add(documentId, (float) (idf * tf * (K1 + 1) / (tf + K1 * lengthNorm)));
+        }
+        return scored;
+    }
+    
+    /**
+     * Add a product as a new document
+     * In bulk mode the sorted columns are only appended to, and the caller sorts them afterwards
+     */
+    private void addDocument(Product product, boolean bulk) {
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        for (String token : tokenize(product.getName())) {
+            termFrequencies.merge(token, NAME_BOOST, Integer::sum);
+        }
+        for (String token : tokenize(product.getDescription())) {
+            termFrequencies.merge(token, 1, Integer::sum);
+        }
+        for (String token : tokenize(product.getProductCode())) {
+            termFrequencies.merge(token, NAME_BOOST, Integer::sum);
+        }
+        
+        int documentId = documentCount++;
+        ensureDocumentCapacity(documentCount);
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : termFrequencies.entrySet()) {
+            PostingList postingList = postings.get(entry.getKey());
+            if (postingList == null) {
+                postingList = new PostingList();
+                postings.put(entry.getKey(), postingList);
+                indexTermGrams(entry.getKey());
+            }
+            postingList.add(documentId, entry.getValue());
+            length += entry.getValue();
+        }
+        
+        documents[documentId] = product;
+        documentLengths[documentId] = length;
+        documentTerms[documentId] = termFrequencies.keySet().toArray(new String[0]);
+        documentsByProduct.put(product.getId(), documentId, NO_DOCUMENT);
+        liveDocuments.set(documentId);
+        liveDocumentCount++;
+        totalLiveLength += length;
+        
+        categories.add(documentId, product.getCategory());
+        woodTypes.add(documentId, product.getWoodType());
+        itemTypes.add(documentId, product.getItemType());
+        finishedTypes.add(documentId, product.getFinishedType());
+        double price = product.getSellingPrice() != null ? product.getSellingPrice() : 0;
+        double stock = product.getStock() != null ? product.getStock() : 0;
+        if (bulk) {
+            prices.append(price, documentId);
+            stocks.append(stock, documentId);
+        } else {
+            prices.insert(price, documentId);
+            stocks.insert(stock, documentId);
+        }
+    }
+    
+    private void deleteDocument(Long productId) {
+        int documentId = documentsByProduct.remove(productId, NO_DOCUMENT);
+        if (documentId == NO_DOCUMENT) {
+            return;
+        }
+        for (String term : documentTerms[documentId]) {
+            postings.get(term).documentDeleted();
+        }
+        liveDocuments.clear(documentId);
+        liveDocumentCount--;
+        totalLiveLength -= documentLengths[documentId];
+        categories.remove(documentId);
+        woodTypes.remove(documentId);
+        itemTypes.remove(documentId);
+        finishedTypes.remove(documentId);
+        prices.remove(documentId);
+        stocks.remove(documentId);
+        documents[documentId] = null;
+        documentTerms[documentId] = null;
+    }
+    
+    /**
+     * Rebuild once deleted documents outnumber live ones, so posting lists do not fill up with dead entries
+     */
+    private void compactIfNeeded() {
+        int deleted = documentCount - liveDocumentCount;
+        if (deleted > 1000 && deleted > liveDocumentCount) {
+            List<Product> live = new ArrayList<>(liveDocumentCount);
+            for (int documentId = liveDocuments.nextSetBit(0); documentId >= 0;
+                 documentId = liveDocuments.nextSetBit(documentId + 1)) {
+                live.add(documents[documentId]);
+            }
+            rebuild(live);
+        }
+    }
+    
+    private void rebuild(List<Product> products) {
+        documents = new Product[Math.max(64, products.size())];
+        documentLengths = new int[documents.length];
+        documentTerms = new String[documents.length][];
+        documentCount = 0;
+        liveDocuments.clear();
+        liveDocumentCount = 0;
+        totalLiveLength = 0;
+        documentsByProduct = new LongIntHashMap(products.size());
+        postings = new TreeMap<>();
+        termsByGram = new HashMap<>();
+        categories.clear();
+        woodTypes.clear();
+        itemTypes.clear();
+        finishedTypes.clear();
+        prices.clear();
+        stocks.clear();
+        for (Product product : products) {
+            addDocument(product, true);
+        }
+        prices.sort();
+        stocks.sort();
+    }
+    
+    private void ensureDocumentCapacity(int capacity) {
+        if (capacity > documents.length) {
+            int newLength = Math.max(capacity, documents.length * 2);
+            documents = Arrays.copyOf(documents, newLength);
+            documentLengths = Arrays.copyOf(documentLengths, newLength);
+            documentTerms = Arrays.copyOf(documentTerms, newLength);
+        }
+    }
+    
+    /**
+     * Facet counts for one search, indexed by value ordinal (called with the read lock held)
+     */
+    private class FacetCounter {
+        private final int[] categoryCounts = new int[categories.size()];
+        private final int[] woodTypeCounts = new int[woodTypes.size()];
+        private final int[] finishedTypeCounts = new int[finishedTypes.size()];
+        private final int[] priceCounts = new int[PRICE_BUCKET_LABELS.length];
+        private int total = 0;
+        
+        void count(int documentId) {
+            categoryCounts[categories.ordinalOf(documentId)]++;
+            woodTypeCounts[woodTypes.ordinalOf(documentId)]++;
+            finishedTypeCounts[finishedTypes.ordinalOf(documentId)]++;
+            double price = prices.valueOf(documentId);
+            int bucket = 0;
+            while (bucket < PRICE_BUCKET_LIMITS.length && price >= PRICE_BUCKET_LIMITS[bucket]) {
+                bucket++;
+            }
+            priceCounts[bucket]++;
+            total++;
+        }
+        
+        void fill(FacetResultDTO facets) {
+            facets.setTotal(total);
+            facets.setCategories(categories.toCountMap(categoryCounts));
+            facets.setWoodTypes(woodTypes.toCountMap(woodTypeCounts));
+            facets.setFinishedTypes(finishedTypes.toCountMap(finishedTypeCounts));
+            Map<String, Integer> priceRanges = new LinkedHashMap<>();
+            for (int i = 0; i < priceCounts.length; i++) {
+                priceRanges.put(PRICE_BUCKET_LABELS[i], priceCounts[i]);
+            }
+            facets.setPriceRanges(priceRanges);
+        }
+    }
+    
+    /**
+     * Bitmap index for one field: a BitSet of documents per distinct (lower-cased) value
+     */
+    private static class FieldBitmaps {
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private final List<String> labels = new ArrayList<>();
+        private final List<BitSet> bitmaps = new ArrayList<>();
+        private int[] documentOrdinals = new int[64];
+        
+        void add(int documentId, String value) {
+            String label = value != null ? value.trim() : "";
+            String key = label.toLowerCase(Locale.ROOT);
+            Integer ordinal = ordinals.get(key);
+            if (ordinal == null) {
+                ordinal = bitmaps.size();
+                ordinals.put(key, ordinal);
+                labels.add(label);
+                bitmaps.add(new BitSet());
+            }
+            bitmaps.get(ordinal).set(documentId);
+            if (documentId >= documentOrdinals.length) {
+                documentOrdinals = Arrays.copyOf(documentOrdinals, Math.max(documentId + 1, documentOrdinals.length * 2));
+            }
+            documentOrdinals[documentId] = ordinal;
+        }
+        
+        void remove(int documentId) {
+            bitmaps.get(documentOrdinals[documentId]).clear(documentId);
+        }
+        
+        BitSet documentsWith(String value) {
+            Integer ordinal = ordinals.get(value.trim().toLowerCase(Locale.ROOT));
+            return ordinal != null ? bitmaps.get(ordinal) : new BitSet();
+        }
+        
+        int ordinalOf(int documentId) {
+            return documentOrdinals[documentId];
+        }
+        
+        int size() {
+            return bitmaps.size();
+        }
+        
+        /**
+         * Value label -> count for the non-zero counts, most common first
+         */
+        Map<String, Integer> toCountMap(int[] counts) {
+            List<Integer> present = new ArrayList<>();
+            for (int ordinal = 0; ordinal < counts.length; ordinal++) {
+                if (counts[ordinal] > 0 && !labels.get(ordinal).isEmpty()) {
+                    present.add(ordinal);
+                }
+            }
+            present.sort((a, b) -> counts[b] != counts[a]
+                    ? Integer.compare(counts[b], counts[a])
+                    : labels.get(a).compareTo(labels.get(b)));
+            
+            Map<String, Integer> countMap = new LinkedHashMap<>();
+            for (int ordinal : present) {
+                countMap.put(labels.get(ordinal), counts[ordinal]);
+            }
+            return countMap;
+        }
+        
+        void clear() {
+            ordinals.clear();
+            labels.clear();
+            bitmaps.clear();
+        }
+    }
+    
+    /**
+     * (value, document) pairs sorted by value then document, so a range is found with two
+     * binary searches and a single pair with one, however many documents share its value
+     */
+    private static class SortedColumn {
+        private double[] values = new double[64];
+        private int[] documentIds = new int[64];
+        private double[] valueByDocument = new double[64];
+        private int size = 0;
+        
+        void append(double value, int documentId) {
+            ensureCapacity(size + 1, documentId);
+            values[size] = value;
+            documentIds[size] = documentId;
+            valueByDocument[documentId] = value;
+            size++;
+        }
+        
+        void insert(double value, int documentId) {
+            ensureCapacity(size + 1, documentId);
+            int position = firstPositionAtOrAfter(value, documentId);
+            System.arraycopy(values, position, values, position + 1, size - position);
+            System.arraycopy(documentIds, position, documentIds, position + 1, size - position);
+            values[position] = value;
+            documentIds[position] = documentId;
+            valueByDocument[documentId] = value;
+            size++;
+        }
+        
+        void remove(int documentId) {
+            double value = valueByDocument[documentId];
+            int position = firstPositionAtOrAfter(value, documentId);
+            if (position == size || compareAt(position, value, documentId) != 0) {
+                return;
+            }
+            System.arraycopy(values, position + 1, values, position, size - position - 1);
+            System.arraycopy(documentIds, position + 1, documentIds, position, size - position - 1);
+            size--;
+        }
+        
+        double valueOf(int documentId) {
+            return valueByDocument[documentId];
+        }
+        
+        /**
+         * Documents with min <= value <= max (a null bound is open)
+         */
+        BitSet documentsInRange(Double min, Double max) {
+            int from = min != null ? lowerBound(min) : 0;
+            int to = max != null ? upperBound(max) : size;
+            BitSet mask = new BitSet();
+            for (int i = from; i < to; i++) {
+                mask.set(documentIds[i]);
+            }
+            return mask;
+        }
+        
+        /**
+         * Sort after a bulk append
+         */
+        void sort() {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            mergeSort(order, new int[size], 0, size);
+            double[] sortedValues = new double[values.length];
+            int[] sortedDocuments = new int[documentIds.length];
+            for (int i = 0; i < size; i++) {
+                sortedValues[i] = values[order[i]];
+                sortedDocuments[i] = documentIds[order[i]];
+            }
+            values = sortedValues;
+            documentIds = sortedDocuments;
+        }
+        
+        void clear() {
+            size = 0;
+        }
+        
+        /**
+         * Merge sort of positions by (value, document), on int arrays so nothing is boxed
+         */
+        private void mergeSort(int[] order, int[] buffer, int from, int to) {
+            if (to - from < 2) {
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            mergeSort(order, buffer, from, mid);
+            mergeSort(order, buffer, mid, to);
+            if (comparePositions(order[mid - 1], order[mid]) <= 0) {
+                // Halves already in order, as after appending documents by ascending id with equal values
+                return;
+            }
+            System.arraycopy(order, from, buffer, from, to - from);
+            int i = from;
+            int j = mid;
+            int k = from;
+            while (i < mid && j < to) {
+                order[k++] = comparePositions(buffer[j], buffer[i]) < 0 ? buffer[j++] : buffer[i++];
+            }
+            while (i < mid) {
+                order[k++] = buffer[i++];
+            }
+            while (j < to) {
+                order[k++] = buffer[j++];
+            }
+        }
+        
+        private int comparePositions(int a, int b) {
+            return compareAt(a, values[b], documentIds[b]);
+        }
+        
+        private int compareAt(int position, double value, int documentId) {
+            int byValue = Double.compare(values[position], value);
+            return byValue != 0 ? byValue : Integer.compare(documentIds[position], documentId);
+        }
+        
+        // First position whose (value, document) pair is not before (value, documentId)
+        private int firstPositionAtOrAfter(double value, int documentId) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareAt(mid, value, documentId) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        // First position with values[position] >= value
+        private int lowerBound(double value) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        // First position with values[position] > value
+        private int upperBound(double value) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        private void ensureCapacity(int capacity, int documentId) {
+            if (capacity > values.length) {
+                int newLength = Math.max(capacity, values.length * 2);
+                values = Arrays.copyOf(values, newLength);
+                documentIds = Arrays.copyOf(documentIds, newLength);
+            }
+            if (documentId >= valueByDocument.length) {
+                valueByDocument = Arrays.copyOf(valueByDocument, Math.max(documentId + 1, valueByDocument.length * 2));
+            }
+        }
+    }
+    
+    /**
+     * Document ids sorted ascending with a score each, kept in primitive arrays
+     */
+    private static class ScoredDocuments {
+        private int[] documentIds;
+        private float[] scores;
+        private int size = 0;
+        
+        ScoredDocuments(int capacity) {
+            documentIds = new int[Math.max(4, capacity)];
+            scores = new float[documentIds.length];
+        }
+        
+        void add(int documentId, float score) {
+            if (size == documentIds.length) {
+                documentIds = Arrays.copyOf(documentIds, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            documentIds[size] = documentId;
+            scores[size] = score;
+            size++;
+        }
+        
+        /**
+         * Documents in either list, scores added together
+         */
+        static ScoredDocuments union(ScoredDocuments a, ScoredDocuments b) {
+            if (a.size == 0) {
+                return b;
+            }
+            if (b.size == 0) {
+                return a;
+            }
+            ScoredDocuments result = new ScoredDocuments(a.size + b.size);
+            int i = 0;
+            int j = 0;
+            while (i < a.size && j < b.size) {
+                if (a.documentIds[i] == b.documentIds[j]) {
+                    result.add(a.documentIds[i], a.scores[i++] + b.scores[j++]);
+                } else if (a.documentIds[i] < b.documentIds[j]) {
+                    result.add(a.documentIds[i], a.scores[i++]);
+                } else {
+                    result.add(b.documentIds[j], b.scores[j++]);
+                }
+            }
+            while (i < a.size) {
+                result.add(a.documentIds[i], a.scores[i++]);
+            }
+            while (j < b.size) {
+                result.add(b.documentIds[j], b.scores[j++]);
+            }
+            return result;
+        }
+        
+        /**
+         * Documents in both lists, scores added together
+         */
+        static ScoredDocuments intersect(ScoredDocuments a, ScoredDocuments b) {
+            ScoredDocuments result = new ScoredDocuments(Math.min(a.size, b.size));
+            int i = 0;
+            int j = 0;
+            while (i < a.size && j < b.size) {
+                if (a.documentIds[i] == b.documentIds[j]) {
+                    result.add(a.documentIds[i], a.scores[i++] + b.scores[j++]);
+                } else if (a.documentIds[i] < b.documentIds[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return result;
+        }
+        
+        /**
+         * Document ids by descending score (ties by document id)
+         */
+        int[] rankedDocumentIds() {
+            // Positive floats sort like their bit patterns, so pack (inverted score, id) into one long
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((long) ~Float.floatToIntBits(scores[i]) << 32) | documentIds[i];
+            }
+            Arrays.sort(keys);
+            int[] ranked = new int[size];
+            for (int i = 0; i < size; i++) {
+                ranked[i] = (int) keys[i];
+            }
+            return ranked;
+        }
+    }
+}
@@ -1,23 +1,34 @@
 package lk.nibm.kd.hdse252.pdsa_cw.services;
 
+import lk.nibm.kd.hdse252.pdsa_cw.dto.FacetResultDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductListItem;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductPageDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductSearchDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.dto.RestockRequestDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
 import lk.nibm.kd.hdse252.pdsa_cw.entities.RestockRequest;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.ProductRepository;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class ProductService {
     
+    private static final int MAX_PAGE_SIZE = 500;
+    
     @Autowired
     private ProductRepository productRepository;
     
@@ -25,7 +36,16 @@ public class ProductService {
     private DataStructureService dataStructureService;
     
     @Autowired
-    private ModelMapper modelMapper;
+    private ProductAutocompleteService autocompleteService;
+    
+    @Autowired
+    private ProductSearchIndexService searchIndexService;
+    
+    @Autowired
+    private EntityMapper entityMapper;
+    
+    @Autowired
+    private StockAdjustmentService stockAdjustmentService;
     
     /**
      * Add a new product
@@ -36,6 +56,22 @@ public class ProductService {
             throw new RuntimeException("Product with code " + productDTO.getProductCode() + " already exists");
         }
         
+        Product product = toNewProduct(productDTO);
+        // Array, BST and recent items are updated by ProductIndexListener once the insert commits
+        Product savedProduct = productRepository.save(product);
+        
+        // Check if restock is needed
+        if (savedProduct.getStock() <= savedProduct.getMinStockLevel()) {
+            createRestockRequest(savedProduct);
+        }
+        
+        return convertToDTO(savedProduct);
+    }
+    
+    /**
+     * Build a new (unsaved) product from a DTO
+     */
+    static Product toNewProduct(ProductDTO productDTO) {
         Product product = new Product();
         product.setProductCode(productDTO.getProductCode());
         product.setName(productDTO.getName());
@@ -66,47 +102,14 @@ public class ProductService {
         product.setMinStockLevel(productDTO.getMinStockLevel());
         product.setDimensions(productDTO.getDimensions());
         product.setWeight(productDTO.getWeight());
-        
-        Product savedProduct = productRepository.save(product);
-        
-        // Add to data structures
-        dataStructureService.addToArray(savedProduct);
-        dataStructureService.insertIntoBST(savedProduct);
-        dataStructureService.addToRecentItems(savedProduct);
-        
-        // Check if restock is needed
-        if (savedProduct.getStock() <= savedProduct.getMinStockLevel()) {
-            createRestockRequest(savedProduct);
-        }
-        
-        return convertToDTO(savedProduct);
+        return product;
     }
     
     /**
      * Convert Product entity to ProductDTO
      */
     private ProductDTO convertToDTO(Product product) {
-        ProductDTO dto = new ProductDTO();
-        dto.setId(product.getId());
-        dto.setProductCode(product.getProductCode());
-        dto.setName(product.getName());
-        dto.setDescription(product.getDescription());
-        dto.setCategory(product.getCategory());
-        dto.setItemType(product.getItemType());
-        dto.setWoodType(product.getWoodType());
-        dto.setFinishedType(product.getFinishedType());
-        dto.setIsCarved(product.getIsCarved());
-        dto.setCost(product.getCost());
-        dto.setSellingPrice(product.getSellingPrice());
-        dto.setPrice(product.getSellingPrice()); // For backward compatibility
-        dto.setStock(product.getStock());
-        dto.setStockQuantity(product.getStock()); // For backward compatibility
-        dto.setMinStockLevel(product.getMinStockLevel());
-        dto.setDimensions(product.getDimensions());
-        dto.setWeight(product.getWeight());
-        dto.setCreatedAt(product.getCreatedAt());
-        dto.setUpdatedAt(product.getUpdatedAt());
-        return dto;
+        return entityMapper.toProductDTO(product);
     }
     
     /**
@@ -148,11 +151,6 @@ public class ProductService {
         
         Product updatedProduct = productRepository.save(existingProduct);
         
-        // Update in data structures
-        dataStructureService.updateInArray(updatedProduct);
-        dataStructureService.removeFromBST(existingProduct.getProductCode());
-        dataStructureService.insertIntoBST(updatedProduct);
-        
         // Check if restock is needed
         if (updatedProduct.getStock() <= updatedProduct.getMinStockLevel()) {
             createRestockRequest(updatedProduct);
@@ -168,11 +166,7 @@ public class ProductService {
         Product product = productRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Product not found with id: " + id));
         
-        productRepository.deleteById(id);
-        
-        // Remove from data structures
-        dataStructureService.removeFromArray(id);
-        dataStructureService.removeFromBST(product.getProductCode());
+        productRepository.delete(product);
     }
     
     /**
@@ -186,22 +180,73 @@ public class ProductService {
     
     /**
      * Get all products
+     * Read from the in-memory array, which is kept in sync by ProductIndexListener
      */
     public List<ProductDTO> getAllProducts() {
-        List<Product> products = productRepository.findAll();
-        
-        // Sync with data structures
-        dataStructureService.clearAll();
-        for (Product product : products) {
-            dataStructureService.addToArray(product);
-            dataStructureService.insertIntoBST(product);
-        }
+        List<Product> products = dataStructureService.getAllFromArray();
         
         return products.stream()
                 .map(this::convertToDTO)
                 .collect(Collectors.toList());
     }
     
+    /**
+     * One page of the product grid, ordered by product code or id
+     * Seeks past the cursor (keyset) instead of skipping rows, so every page costs the same
+     * and only the page itself is held in memory
+     */
+    @Transactional(readOnly = true)
+    public ProductPageDTO getProductPage(String sort, String cursor, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        
+        // One extra row tells whether there is a next page
+        Limit limit = Limit.of(size + 1);
+        String afterKey = cursor != null ? decodeCursor(sort, cursor) : null;
+        List<ProductListItem> items;
+        if ("productCode".equals(sort)) {
+            items = productRepository.findListItemsAfterCode(afterKey != null ? afterKey : "", limit);
+        } else if ("id".equals(sort)) {
+            try {
+                items = productRepository.findListItemsAfterId(afterKey != null ? Long.parseLong(afterKey) : 0L, limit);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown sort: " + sort + " (expected productCode or id)");
+        }
+        
+        String nextCursor = null;
+        if (items.size() > size) {
+            items = new ArrayList<>(items.subList(0, size));
+            ProductListItem last = items.get(size - 1);
+            nextCursor = encodeCursor(sort, "id".equals(sort) ? last.getId().toString() : last.getProductCode());
+        }
+        return new ProductPageDTO(items, sort, size, nextCursor);
+    }
+    
+    /**
+     * Cursor = URL-safe Base64 of "sort:lastKey", so a cursor cannot be replayed against the other sort
+     */
+    private static String encodeCursor(String sort, String lastKey) {
+        String raw = sort + ":" + lastKey;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String decodeCursor(String sort, String cursor) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (!raw.startsWith(sort + ":")) {
+            throw new IllegalArgumentException("Cursor does not belong to sort " + sort);
+        }
+        return raw.substring(sort.length() + 1);
+    }
+    
     /**
      * Search products using BST (fast search by product code)
      */
@@ -214,55 +259,53 @@ public class ProductService {
         return convertToDTO(product);
     }
     
+    /**
+     * Autocomplete products by code or name prefix using the Radix Tree (no database query)
+     */
+    public List<ProductDTO> autocomplete(String prefix, int limit) {
+        List<ProductDTO> matches = new ArrayList<>();
+        for (Long productId : autocompleteService.findByPrefix(prefix, limit)) {
+            Product product = dataStructureService.findInArray(productId);
+            if (product != null) {
+                matches.add(convertToDTO(product));
+            }
+        }
+        return matches;
+    }
+    
     /**
      * Advanced search with multiple criteria
+     * Answered from the in-memory search index: inverted index for the search term
+     * (best match first) and bitmap indexes for the filters
      */
     public List<ProductDTO> searchProducts(ProductSearchDTO searchDTO) {
-        List<Product> products;
-        
-        if (searchDTO.getSearchTerm() != null && !searchDTO.getSearchTerm().isEmpty()) {
-            products = productRepository.searchProducts(searchDTO.getSearchTerm());
-        } else {
-            products = productRepository.findAll();
-        }
-        
-        // Apply filters
-        if (searchDTO.getCategory() != null && !searchDTO.getCategory().isEmpty()) {
-            products = products.stream()
-                    .filter(p -> p.getCategory().equalsIgnoreCase(searchDTO.getCategory()))
-                    .collect(Collectors.toList());
-        }
-        
-        if (searchDTO.getWoodType() != null && !searchDTO.getWoodType().isEmpty()) {
-            products = products.stream()
-                    .filter(p -> p.getWoodType().equalsIgnoreCase(searchDTO.getWoodType()))
-                    .collect(Collectors.toList());
-        }
-        
-        if (searchDTO.getMinPrice() != null && searchDTO.getMaxPrice() != null) {
-            products = products.stream()
-                    .filter(p -> p.getSellingPrice() >= searchDTO.getMinPrice() && p.getSellingPrice() <= searchDTO.getMaxPrice())
-                    .collect(Collectors.toList());
-        }
-        
-        if (searchDTO.getMinStock() != null) {
-            products = products.stream()
-                    .filter(p -> p.getStock() >= searchDTO.getMinStock())
-                    .collect(Collectors.toList());
-        }
+        List<Product> products = searchIndexService.search(searchDTO);
         
         return products.stream()
                 .map(this::convertToDTO)
                 .collect(Collectors.toList());
     }
     
+    /**
+     * Search with facet counts (category, wood type, finish, price range) for the matches
+     * Results and counts come from one pass over the search index
+     */
+    public FacetResultDTO searchWithFacets(ProductSearchDTO searchDTO) {
+        FacetResultDTO facets = new FacetResultDTO();
+        List<Product> products = searchIndexService.search(searchDTO, facets);
+        facets.setProducts(products.stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList()));
+        return facets;
+    }
+    
     /**
      * Sort products using BST (sorted by product code)
      */
     public List<ProductDTO> getSortedProducts() {
         List<Product> sortedProducts = dataStructureService.getSortedFromBST();
         return sortedProducts.stream()
-                .map(product -> modelMapper.map(product, ProductDTO.class))
+                .map(entityMapper::toProductDTO)
                 .collect(Collectors.toList());
     }
     
@@ -287,9 +330,24 @@ public class ProductService {
     }
     
     /**
-     * Create restock request and add to queue
+     * Create restock request and add it to the queue once the save commits
+     * A rolled back save therefore never leaves a journaled request behind
      */
     private void createRestockRequest(Product product) {
+        RestockRequest request = buildRestockRequest(product);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // Replaces the product's pending request if it already has one
+                dataStructureService.enqueueRestockRequest(request);
+            }
+        });
+    }
+    
+    /**
+     * Restock request for a product at or below its minimum stock level
+     */
+    static RestockRequest buildRestockRequest(Product product) {
         String priority = determinePriority(product);
         int requestedQuantity = calculateRestockQuantity(product);
         
@@ -300,14 +358,14 @@ public class ProductService {
                 product.getStock(),
                 priority
         );
-        
-        dataStructureService.enqueueRestockRequest(request);
+        request.setStockRatio((double) product.getStock() / product.getMinStockLevel());
+        return request;
     }
     
     /**
      * Determine priority based on stock level
      */
-    private String determinePriority(Product product) {
+    private static String determinePriority(Product product) {
         double stockPercentage = (double) product.getStock() / product.getMinStockLevel();
         if (stockPercentage <= 0.5) {
             return "HIGH";
@@ -321,12 +379,12 @@ public class ProductService {
     /**
      * Calculate restock quantity (2x min stock level)
      */
-    private int calculateRestockQuantity(Product product) {
+    private static int calculateRestockQuantity(Product product) {
         return product.getMinStockLevel() * 2;
     }
     
     /**
-     * Get all restock requests from queue
+     * Get all restock requests from queue, most urgent first
      */
     public List<RestockRequestDTO> getAllRestockRequests() {
         List<RestockRequest> requests = dataStructureService.getAllRestockRequests();
@@ -337,6 +395,7 @@ public class ProductService {
                     dto.setProductName(request.getProductName());
                     dto.setRequestedQuantity(request.getRequestedQuantity());
                     dto.setCurrentStock(request.getCurrentStock());
+                    dto.setStockRatio(request.getStockRatio());
                     dto.setPriority(request.getPriority());
                     dto.setRequestedAt(request.getRequestedAt());
                     dto.setStatus(request.getStatus());
@@ -346,30 +405,56 @@ public class ProductService {
     }
     
     /**
-     * Process next restock request from queue
+     * Process the most urgent restock request from queue
+     * The request leaves the journal once the stock update commits, and goes back in the queue if it rolls back
+     * Requests whose product was deleted meanwhile are dropped and the next one is taken
      */
     public RestockRequestDTO processNextRestockRequest() {
-        RestockRequest request = dataStructureService.dequeueRestockRequest();
-        if (request == null) {
-            throw new RuntimeException("No restock requests in queue");
+        RestockRequest request;
+        Product product;
+        while (true) {
+            request = dataStructureService.claimRestockRequest();
+            if (request == null) {
+                throw new RuntimeException("No restock requests in queue");
+            }
+            try {
+                product = productRepository.findByProductCode(request.getProductCode()).orElse(null);
+            } catch (RuntimeException e) {
+                dataStructureService.returnRestockRequest(request);
+                throw e;
+            }
+            if (product != null) {
+                break;
+            }
+            // The product was deleted after it was queued, so the request can never be applied
+            System.out.println("Dropping restock request for missing product " + request.getProductCode());
+            dataStructureService.completeRestockRequest(request);
         }
         
-        request.setStatus("PROCESSED");
+        RestockRequest claimed = request;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    dataStructureService.completeRestockRequest(claimed);
+                } else {
+                    dataStructureService.returnRestockRequest(claimed);
+                }
+            }
+        });
         
         // Update product stock
-        Product product = productRepository.findByProductCode(request.getProductCode())
-                .orElseThrow(() -> new RuntimeException("Product not found"));
-        product.setStock(product.getStock() + request.getRequestedQuantity());
-        productRepository.save(product);
+        stockAdjustmentService.adjustStock(Map.of(product.getId(), request.getRequestedQuantity()));
         
         RestockRequestDTO dto = new RestockRequestDTO();
         dto.setProductCode(request.getProductCode());
         dto.setProductName(request.getProductName());
         dto.setRequestedQuantity(request.getRequestedQuantity());
         dto.setCurrentStock(request.getCurrentStock());
+        dto.setStockRatio(request.getStockRatio());
         dto.setPriority(request.getPriority());
         dto.setRequestedAt(request.getRequestedAt());
-        dto.setStatus(request.getStatus());
+        dto.setStatus("PROCESSED");
         
         return dto;
     }
@@ -380,7 +465,7 @@ public class ProductService {
     public List<ProductDTO> getLowStockProducts() {
         List<Product> lowStockProducts = productRepository.findLowStockProducts();
         return lowStockProducts.stream()
-                .map(product -> modelMapper.map(product, ProductDTO.class))
+                .map(entityMapper::toProductDTO)
                 .collect(Collectors.toList());
     }
 }
@@ -2,7 +2,6 @@ package lk.nibm.kd.hdse252.pdsa_cw.services;
 
 import lk.nibm.kd.hdse252.pdsa_cw.dto.PurchaseOrderDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.dto.PurchaseOrderItemDTO;
-import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.entities.PurchaseOrder;
 import lk.nibm.kd.hdse252.pdsa_cw.entities.PurchaseOrderItem;
 import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
@@ -10,7 +9,6 @@ import lk.nibm.kd.hdse252.pdsa_cw.entities.Supplier;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.PurchaseOrderRepository;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.ProductRepository;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.SupplierRepository;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -34,7 +32,7 @@ public class PurchaseOrderService {
     private ProductRepository productRepository;
     
     @Autowired
-    private ModelMapper modelMapper;
+    private EntityMapper entityMapper;
     
     private String generateOrderNumber() {
         String prefix = "PO";
@@ -108,37 +106,7 @@ public class PurchaseOrderService {
     }
     
     private PurchaseOrderDTO convertToDTO(PurchaseOrder purchaseOrder) {
-        PurchaseOrderDTO dto = new PurchaseOrderDTO();
-        dto.setId(purchaseOrder.getId());
-        dto.setOrderNumber(purchaseOrder.getOrderNumber());
-        dto.setSupplierId(purchaseOrder.getSupplier().getId());
-        dto.setSupplier(modelMapper.map(purchaseOrder.getSupplier(), lk.nibm.kd.hdse252.pdsa_cw.dto.SupplierDTO.class));
-        dto.setOrderDate(purchaseOrder.getOrderDate());
-        dto.setExpectedDeliveryDate(purchaseOrder.getExpectedDeliveryDate());
-        dto.setStatus(purchaseOrder.getStatus());
-        dto.setTotalAmount(purchaseOrder.getTotalAmount());
-        dto.setNotes(purchaseOrder.getNotes());
-        dto.setCreatedAt(purchaseOrder.getCreatedAt());
-        dto.setUpdatedAt(purchaseOrder.getUpdatedAt());
-        
-        if (purchaseOrder.getItems() != null) {
-            dto.setItems(purchaseOrder.getItems().stream()
-                    .map(item -> {
-                        PurchaseOrderItemDTO itemDTO = new PurchaseOrderItemDTO();
-                        itemDTO.setId(item.getId());
-                        itemDTO.setPurchaseOrderId(item.getPurchaseOrder().getId());
-                        itemDTO.setProductId(item.getProduct().getId());
-                        // include product details so frontend can display names
-                        itemDTO.setProduct(modelMapper.map(item.getProduct(), ProductDTO.class));
-                        itemDTO.setQuantity(item.getQuantity());
-                        itemDTO.setUnitPrice(item.getUnitPrice());
-                        itemDTO.setTotalPrice(item.getTotalPrice());
-                        return itemDTO;
-                    })
-                    .collect(Collectors.toList()));
-        }
-        
-        return dto;
+        return entityMapper.toPurchaseOrderDTO(purchaseOrder);
     }
 }
 
@@ -0,0 +1,409 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.RestockRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal that makes the restock queue survive restarts
+ *
+ * Every change to the queue is appended as a record (upsert or remove) and
+ * callers wait until it has been fsynced. A single flusher thread writes
+ * whatever has piled up while the previous fsync ran, so concurrent callers
+ * share one fsync (group commit). On startup the journal is replayed, and
+ * it is periodically rewritten to hold only the requests still pending.
+ *
+ * Record layout: [int length][int crc32][payload]. A torn record at the end
+ * of the file (crash during a write) is dropped on replay.
+ *
+ * Records stay buffered until the fsync covering them succeeds. A failed
+ * write is cut off the file and retried after a delay; callers waiting on it
+ * get an exception, but the journal keeps working once the disk recovers.
+ */
+@Component
+public class RestockJournal {
+    
+    private static final byte UPSERT = 'U';
+    private static final byte REMOVE = 'R';
+    private static final int HEADER_BYTES = 8;
+    
+    @Value("${restock.journal.path:data/restock-queue.journal}")
+    private String journalPath;
+    
+    @Value("${restock.journal.retry-delay-ms:1000}")
+    private long retryDelayMs;
+    
+    private Path path;
+    private FileChannel channel;
+    
+    // Records waiting for the flusher, guarded by bufferLock
+    private final ReentrantLock bufferLock = new ReentrantLock();
+    private final Condition hasPending = bufferLock.newCondition();
+    private final Condition flushed = bufferLock.newCondition();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedSequence = 0;
+    private long durableSequence = 0;
+    // Last ticket covered by a failed write, and its cause
+    private long failedSequence = 0;
+    private IOException failure;
+    private boolean running;
+    
+    // Held while the file is written, so compaction and the flusher never interleave
+    private final ReentrantLock fileLock = new ReentrantLock();
+    private volatile long recordsInFile = 0;
+    // End of the last record known to be on disk, the next batch is written here
+    private long writeOffset = 0;
+    
+    private Thread flusher;
+    
+    @PostConstruct
+    public void open() throws IOException {
+        path = Paths.get(journalPath).toAbsolutePath();
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        writeOffset = channel.size();
+        channel.position(writeOffset);
+        
+        running = true;
+        flusher = new Thread(this::flushLoop, "restock-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        bufferLock.lock();
+        try {
+            running = false;
+            hasPending.signalAll();
+        } finally {
+            bufferLock.unlock();
+        }
+        flusher.join();
+        channel.close();
+    }
+    
+    /**
+     * Read the journal and return the requests that were still pending, in queue order
+     * A torn record at the end of the file is cut off
+     */
+    public List<RestockRequest> replay() throws IOException {
+        fileLock.lock();
+        try {
+            Map<String, RestockRequest> pendingRequests = new LinkedHashMap<>();
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            channel.read(buffer, 0);
+            buffer.flip();
+            
+            long validEnd = 0;
+            long records = 0;
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                applyRecord(payload, pendingRequests);
+                validEnd = buffer.position();
+                records++;
+            }
+            
+            if (validEnd < channel.size()) {
+                System.out.println("Restock journal: dropping " + (channel.size() - validEnd)
+                        + " bytes of incomplete records");
+                channel.truncate(validEnd);
+            }
+            writeOffset = validEnd;
+            channel.position(validEnd);
+            recordsInFile = records;
+            return new ArrayList<>(pendingRequests.values());
+        } finally {
+            fileLock.unlock();
+        }
+    }
+    
+    /**
+     * Append an added or updated request, returns a ticket for awaitDurable
+     */
+    public long appendUpsert(RestockRequest request) {
+        return append(encodeUpsert(request));
+    }
+    
+    /**
+     * Append the removal of a product's request, returns a ticket for awaitDurable
+     */
+    public long appendRemove(String productCode) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(REMOVE);
+            out.writeUTF(productCode);
+            return append(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Block until the record with this ticket has been fsynced
+     * Throws if the write covering it failed; the record stays buffered and is retried
+     */
+    public void awaitDurable(long ticket) {
+        bufferLock.lock();
+        try {
+            while (durableSequence < ticket) {
+                if (failedSequence >= ticket) {
+                    throw new UncheckedIOException("Restock journal write failed", failure);
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+    
+    /**
+     * True when the file holds many more records than there are pending requests
+     */
+    public boolean needsCompaction(int liveRequests) {
+        return recordsInFile > 1000 && recordsInFile > 4L * liveRequests;
+    }
+    
+    /**
+     * Rewrite the journal so it only holds the given pending requests
+     * The caller must stop new appends (hold the queue lock) while this runs
+     * On failure the current file is kept as it was
+     */
+    public void compact(Collection<RestockRequest> liveRequests) {
+        fileLock.lock();
+        try {
+            // Write out anything still buffered, so the tickets handed out are honoured
+            if (!writePending()) {
+                return;
+            }
+            
+            Path tempPath = path.resolveSibling(path.getFileName() + ".compact");
+            try (FileChannel temp = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+                for (RestockRequest request : liveRequests) {
+                    writeFrame(snapshot, encodeUpsert(request));
+                }
+                temp.write(ByteBuffer.wrap(snapshot.toByteArray()));
+                temp.force(true);
+            }
+            
+            channel.close();
+            boolean moved = false;
+            try {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                moved = true;
+            } finally {
+                // Reopen whichever file is now in place, the old one if the move failed
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                writeOffset = channel.size();
+                channel.position(writeOffset);
+            }
+            if (moved) {
+                recordsInFile = liveRequests.size();
+            }
+        } catch (IOException e) {
+            System.err.println("Restock journal: compaction failed, keeping the current file - " + e.getMessage());
+        } finally {
+            fileLock.unlock();
+        }
+    }
+    
+    private long append(byte[] payload) {
+        bufferLock.lock();
+        try {
+            writeFrame(pending, payload);
+            hasPending.signal();
+            return ++appendedSequence;
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+    
+    private void flushLoop() {
+        while (true) {
+            bufferLock.lock();
+            try {
+                while (running && pending.size() == 0) {
+                    hasPending.awaitUninterruptibly();
+                }
+                if (!running && pending.size() == 0) {
+                    return;
+                }
+            } finally {
+                bufferLock.unlock();
+            }
+            
+            boolean written;
+            fileLock.lock();
+            try {
+                written = writePending();
+            } finally {
+                fileLock.unlock();
+            }
+            if (!written) {
+                if (!running) {
+                    System.err.println("Restock journal: giving up on unwritten records at shutdown");
+                    return;
+                }
+                try {
+                    Thread.sleep(retryDelayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Write and fsync the buffered records, then wake their callers (fileLock must be held)
+     * The records leave the buffer only once they are on disk, returns false if the write failed
+     */
+    private boolean writePending() {
+        byte[] batch;
+        long batchSequence;
+        long batchRecords;
+        bufferLock.lock();
+        try {
+            if (pending.size() == 0) {
+                return true;
+            }
+            batch = pending.toByteArray();
+            batchSequence = appendedSequence;
+            batchRecords = appendedSequence - durableSequence;
+        } finally {
+            bufferLock.unlock();
+        }
+        
+        IOException error = null;
+        try {
+            // Bytes left by an earlier failed write are cut off first, so they never sit between two good records
+            if (channel.size() != writeOffset) {
+                channel.truncate(writeOffset);
+            }
+            channel.position(writeOffset);
+            ByteBuffer buffer = ByteBuffer.wrap(batch);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            writeOffset += batch.length;
+            recordsInFile += batchRecords;
+        } catch (IOException e) {
+            error = e;
+            System.err.println("Restock journal: write failed, retrying - " + e.getMessage());
+        }
+        
+        bufferLock.lock();
+        try {
+            if (error != null) {
+                failedSequence = batchSequence;
+                failure = error;
+            } else {
+                // Records appended during the write stay for the next batch
+                byte[] buffered = pending.toByteArray();
+                pending = new ByteArrayOutputStream(Math.max(256, buffered.length - batch.length));
+                pending.write(buffered, batch.length, buffered.length - batch.length);
+                durableSequence = batchSequence;
+            }
+            flushed.signalAll();
+        } finally {
+            bufferLock.unlock();
+        }
+        return error == null;
+    }
+    
+    private static void writeFrame(ByteArrayOutputStream target, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(payload.length);
+        header.putInt((int) crc.getValue());
+        target.write(header.array(), 0, HEADER_BYTES);
+        target.write(payload, 0, payload.length);
+    }
+    
+    private static byte[] encodeUpsert(RestockRequest request) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(UPSERT);
+            out.writeUTF(request.getProductCode());
+            out.writeUTF(request.getProductName() != null ? request.getProductName() : "");
+            out.writeInt(request.getRequestedQuantity() != null ? request.getRequestedQuantity() : 0);
+            out.writeInt(request.getCurrentStock() != null ? request.getCurrentStock() : 0);
+            out.writeDouble(request.getStockRatio() != null ? request.getStockRatio() : Double.NaN);
+            out.writeUTF(request.getPriority() != null ? request.getPriority() : "");
+            out.writeUTF(request.getRequestedAt() != null ? request.getRequestedAt().toString() : "");
+            out.writeUTF(request.getStatus() != null ? request.getStatus() : "PENDING");
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static void applyRecord(byte[] payload, Map<String, RestockRequest> requests) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        String productCode = in.readUTF();
+        if (type == REMOVE) {
+            requests.remove(productCode);
+            return;
+        }
+        
+        RestockRequest request = new RestockRequest();
+        request.setProductCode(productCode);
+        request.setProductName(in.readUTF());
+        request.setRequestedQuantity(in.readInt());
+        request.setCurrentStock(in.readInt());
+        double stockRatio = in.readDouble();
+        request.setStockRatio(Double.isNaN(stockRatio) ? null : stockRatio);
+        request.setPriority(in.readUTF());
+        String requestedAt = in.readUTF();
+        request.setRequestedAt(requestedAt.isEmpty() ? null : LocalDateTime.parse(requestedAt));
+        request.setStatus(in.readUTF());
+        requests.put(productCode, request);
+    }
+}
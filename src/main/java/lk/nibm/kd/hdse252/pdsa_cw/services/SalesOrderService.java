@@ -9,14 +9,15 @@ import lk.nibm.kd.hdse252.pdsa_cw.entities.Customer;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.SalesOrderRepository;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.ProductRepository;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.CustomerRepository;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -33,7 +34,19 @@ public class SalesOrderService {
     private ProductRepository productRepository;
     
     @Autowired
-    private ModelMapper modelMapper;
+    private EntityMapper entityMapper;
+    
+    @Autowired
+    private StockAdjustmentService stockAdjustmentService;
+    
+    @Autowired
+    private StockReservationService stockReservationService;
+    
+    @Autowired
+    private ConsumptionPipeline consumptionPipeline;
+    
+    @Autowired
+    private CoPurchaseIndexService coPurchaseIndexService;
     
     private String generateOrderNumber() {
         String prefix = "SO";
@@ -63,12 +76,6 @@ public class SalesOrderService {
                 Product product = productRepository.findById(itemDTO.getProductId())
                         .orElseThrow(() -> new RuntimeException("Product not found: " + itemDTO.getProductId()));
                 
-                // Check stock availability
-                if (product.getStock() < itemDTO.getQuantity()) {
-                    throw new RuntimeException("Insufficient stock for product: " + product.getName() + 
-                            ". Available: " + product.getStock() + ", Requested: " + itemDTO.getQuantity());
-                }
-                
                 SalesOrderItem item = new SalesOrderItem();
                 item.setSalesOrder(salesOrder);
                 item.setProduct(product);
@@ -87,6 +94,8 @@ public class SalesOrderService {
         salesOrder.setTotalAmount(totalAmount);
         
         SalesOrder savedOrder = salesOrderRepository.save(salesOrder);
+        // Check stock availability and hold the units until the order is confirmed or closed
+        stockReservationService.reserve(savedOrder);
         return convertToDTO(savedOrder);
     }
     
@@ -113,6 +122,9 @@ public class SalesOrderService {
         salesOrder.setTotalAmount(subtotal + salesOrder.getTax() - salesOrder.getDiscount());
         
         SalesOrder updatedOrder = salesOrderRepository.save(salesOrder);
+        if (!"PENDING".equals(updatedOrder.getStatus())) {
+            stockReservationService.orderClosed(updatedOrder.getId());
+        }
         return convertToDTO(updatedOrder);
     }
     
@@ -124,24 +136,34 @@ public class SalesOrderService {
             throw new RuntimeException("Sales order is already confirmed or shipped");
         }
         
-        // Deduct stock for each item
+        // An order whose reservation expired must not take units other pending orders hold
+        stockReservationService.holdForConfirmation(salesOrder);
+        
+        // Deduct stock for every line in one conditional batch, lines of the same product are summed
+        Map<Long, Integer> deductions = new HashMap<>();
         for (SalesOrderItem item : salesOrder.getItems()) {
-            Product product = item.getProduct();
-            if (product.getStock() < item.getQuantity()) {
-                throw new RuntimeException("Insufficient stock for product: " + product.getName());
-            }
-            product.setStock(product.getStock() - item.getQuantity());
-            productRepository.save(product);
+            deductions.merge(item.getProduct().getId(), -item.getQuantity(), Integer::sum);
+        }
+        stockAdjustmentService.adjustStock(deductions);
+        stockReservationService.orderConfirmed(salesOrder.getId());
+        
+        for (SalesOrderItem item : salesOrder.getItems()) {
+            // Reaches the prediction engine after commit, off the request thread
+            consumptionPipeline.publish(item.getProduct().getProductCode(), item.getQuantity());
         }
         
         salesOrder.setStatus("CONFIRMED");
         SalesOrder confirmedOrder = salesOrderRepository.save(salesOrder);
+        coPurchaseIndexService.orderConfirmed(confirmedOrder.getId(), confirmedOrder.getItems().stream()
+                .map(item -> item.getProduct().getId())
+                .collect(Collectors.toList()));
         
         return convertToDTO(confirmedOrder);
     }
     
     public void deleteSalesOrder(Long id) {
         salesOrderRepository.deleteById(id);
+        stockReservationService.orderClosed(id);
     }
     
     public SalesOrderDTO getSalesOrderById(Long id) {
@@ -163,38 +185,7 @@ public class SalesOrderService {
     }
     
     private SalesOrderDTO convertToDTO(SalesOrder salesOrder) {
-        SalesOrderDTO dto = new SalesOrderDTO();
-        dto.setId(salesOrder.getId());
-        dto.setOrderNumber(salesOrder.getOrderNumber());
-        dto.setCustomerId(salesOrder.getCustomer().getId());
-        dto.setCustomer(modelMapper.map(salesOrder.getCustomer(), lk.nibm.kd.hdse252.pdsa_cw.dto.CustomerDTO.class));
-        dto.setOrderDate(salesOrder.getOrderDate());
-        dto.setExpectedDeliveryDate(salesOrder.getExpectedDeliveryDate());
-        dto.setStatus(salesOrder.getStatus());
-        dto.setSubtotal(salesOrder.getSubtotal());
-        dto.setTax(salesOrder.getTax());
-        dto.setDiscount(salesOrder.getDiscount());
-        dto.setTotalAmount(salesOrder.getTotalAmount());
-        dto.setNotes(salesOrder.getNotes());
-        dto.setCreatedAt(salesOrder.getCreatedAt());
-        dto.setUpdatedAt(salesOrder.getUpdatedAt());
-        
-        if (salesOrder.getItems() != null) {
-            dto.setItems(salesOrder.getItems().stream()
-                    .map(item -> {
-                        SalesOrderItemDTO itemDTO = new SalesOrderItemDTO();
-                        itemDTO.setId(item.getId());
-                        itemDTO.setSalesOrderId(item.getSalesOrder().getId());
-                        itemDTO.setProductId(item.getProduct().getId());
-                        itemDTO.setQuantity(item.getQuantity());
-                        itemDTO.setUnitPrice(item.getUnitPrice());
-                        itemDTO.setTotalPrice(item.getTotalPrice());
-                        return itemDTO;
-                    })
-                    .collect(Collectors.toList()));
-        }
-        
-        return dto;
+        return entityMapper.toSalesOrderDTO(salesOrder);
     }
 }
 
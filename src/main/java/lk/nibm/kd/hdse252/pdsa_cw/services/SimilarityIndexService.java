@@ -0,0 +1,680 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.entities.NeighborList;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.TopKHeap;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Precomputed top-K similar products for every product (neighbor index)
+ *
+ * Each product keeps its NEIGHBORS most similar products, and a reverse map
+ * records which lists a product appears in. When a product is saved, every
+ * other list is offered the new score in O(K), and only the lists that held
+ * the product and lost it (its score dropped) are recomputed. A delete
+ * recomputes just the lists that held the deleted product. A save that
+ * changes none of category, wood type and price (e.g. a stock update) only
+ * swaps the stored copy. Recommendations are then read straight from the
+ * stored list.
+ *
+ * Candidates come from buckets instead of the whole catalog. A product can
+ * only score above 0 against products sharing its category or wood type or
+ * priced within about 20% of it. Each bucket is split into the part inside
+ * the price window and the rest, and every part has a score upper bound
+ * (e.g. category + wood inside the window 1.0, same category outside it 0.4).
+ * Parts are scanned best bound first and the scan stops once K neighbors
+ * beat the next bound, which gives exactly the same top K as scoring every
+ * product.
+ * Stored lists only hold scores above 0, products scoring 0 are appended in
+ * id order when a recommendation is read.
+ */
+@Service
+public class SimilarityIndexService implements CatalogIndex {
+    
+    // Neighbors stored per product, larger requests are computed on demand
+    static final int NEIGHBORS = 10;
+    
+    // Weights used by calculateSimilarity, the score bounds of the buckets are built from them
+    private static final double CATEGORY_WEIGHT = 0.4;
+    private static final double WOOD_WEIGHT = 0.3;
+    private static final double PRICE_WEIGHT = 0.3;
+    private static final double BOUND_SLACK = 1e-9;
+    
+    // Catalog size from which a full rebuild is split across cores, and the slice per task
+    private static final int PARALLEL_THRESHOLD = 2048;
+    private static final int PARALLEL_SLICE = 256;
+    
+    // Price similarity is 0 outside [price * 9/11, price * 11/9] (a 20% band around the average),
+    // widened slightly so rounding never drops a product on the edge
+    private static final double PRICE_WINDOW_LOW = 9.0 / 11.0 * (1 - 1e-9);
+    private static final double PRICE_WINDOW_HIGH = 11.0 / 9.0 * (1 + 1e-9);
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private CandidateIndex catalog = new CandidateIndex();
+    private final Map<String, Long> idsByCode = new HashMap<>();
+    private Map<Long, NeighborList> neighbors = new HashMap<>();
+    
+    // Product id -> ids of the products whose neighbor list contains it
+    private Map<Long, Set<Long>> listedBy = new HashMap<>();
+    
+    // Background rebuild state, changes made while it runs are re-applied afterwards
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private final Set<Long> changedDuringRebuild = new HashSet<>();
+    private final AtomicBoolean rebuildAgain = new AtomicBoolean(false);
+    
+    @Override
+    public void loadAll(List<Product> products) {
+        lock.writeLock().lock();
+        try {
+            catalog = new CandidateIndex();
+            idsByCode.clear();
+            for (Product product : products) {
+                catalog.add(product);
+                idsByCode.put(product.getProductCode(), product.getId());
+            }
+            installNeighbors(computeAllNeighbors(catalog));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Swap in the new catalog right away and recompute the neighbor lists in the background
+     * Until the rebuild finishes, products without a list are scored from the candidate buckets
+     */
+    @Override
+    public void reloadAll(List<Product> products) {
+        lock.writeLock().lock();
+        try {
+            catalog = new CandidateIndex();
+            idsByCode.clear();
+            for (Product product : products) {
+                catalog.add(product);
+                idsByCode.put(product.getProductCode(), product.getId());
+            }
+            // Keep the lists of products that are still there until the rebuild replaces them
+            installNeighbors(neighbors);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!rebuildInBackground()) {
+            // The running rebuild works from an older catalog, so another one follows it
+            rebuildAgain.set(true);
+            rebuildInBackground();
+        }
+    }
+    
+    @Override
+    public void productSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            Product previous = catalog.get(product.getId());
+            if (CatalogIndex.isOlder(product, previous)) {
+                return;
+            }
+            if (previous != null) {
+                idsByCode.remove(previous.getProductCode());
+            }
+            idsByCode.put(product.getProductCode(), product.getId());
+            // Stock-only saves (order confirmations, GRNs, restocks) leave every score as it was
+            if (catalog.replaceIfScoresUnchanged(product)) {
+                return;
+            }
+            
+            catalog.remove(product.getId());
+            catalog.add(product);
+            if (rebuilding.get()) {
+                changedDuringRebuild.add(product.getId());
+            }
+            refreshNeighborhoods(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void productRemoved(Product product) {
+        lock.writeLock().lock();
+        try {
+            Product removed = catalog.remove(product.getId());
+            if (removed != null) {
+                idsByCode.remove(removed.getProductCode());
+            }
+            if (rebuilding.get()) {
+                changedDuringRebuild.add(product.getId());
+            }
+            dropFromNeighborhoods(product.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Most similar products to the product with this code, best first
+     * Up to NEIGHBORS results are an O(K) lookup, more are computed from the candidate buckets
+     */
+    public List<ProductAnalyticsService.ProductSimilarity> findSimilar(String productCode, int limit) {
+        List<ProductAnalyticsService.ProductSimilarity> result = new ArrayList<>();
+        if (limit <= 0) {
+            return result;
+        }
+        
+        lock.readLock().lock();
+        try {
+            Long productId = idsByCode.get(productCode);
+            if (productId == null) {
+                throw new RuntimeException("Product not found");
+            }
+            
+            Product target = catalog.get(productId);
+            NeighborList list = limit <= NEIGHBORS ? neighbors.get(productId) : null;
+            if (list == null) {
+                list = catalog.topNeighbors(target, limit);
+            }
+            for (int i = 0; i < list.size() && result.size() < limit; i++) {
+                // A list kept across reloadAll may still name a product that has gone
+                Product neighbor = catalog.get(list.productIdAt(i));
+                if (neighbor != null) {
+                    result.add(new ProductAnalyticsService.ProductSimilarity(neighbor, list.scoreAt(i)));
+                }
+            }
+            
+            // Pad with products scoring 0, lowest id first
+            for (Entry other : catalog.entriesInIdOrder()) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                if (other.id != productId
+                        && ProductAnalyticsService.calculateSimilarity(target, other.product) == 0.0) {
+                    result.add(new ProductAnalyticsService.ProductSimilarity(other.product, 0.0));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+    
+    /**
+     * Recompute every neighbor list on a background thread
+     * Returns false if a rebuild is already running
+     */
+    public boolean rebuildInBackground() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        
+        CandidateIndex snapshot = new CandidateIndex();
+        lock.readLock().lock();
+        try {
+            for (Entry entry : catalog.entriesInIdOrder()) {
+                snapshot.add(entry.product);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        Thread worker = new Thread(() -> {
+            try {
+                Map<Long, NeighborList> rebuilt = computeAllNeighbors(snapshot);
+                lock.writeLock().lock();
+                try {
+                    installNeighbors(rebuilt);
+                    // Writes that raced with the rebuild are applied again on top of it
+                    for (Long productId : changedDuringRebuild) {
+                        Product product = catalog.get(productId);
+                        if (product != null) {
+                            refreshNeighborhoods(product);
+                        } else {
+                            dropFromNeighborhoods(productId);
+                        }
+                    }
+                    changedDuringRebuild.clear();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                System.out.println("✓ Similarity index rebuilt (" + snapshot.size() + " products)");
+            } finally {
+                rebuilding.set(false);
+                if (rebuildAgain.getAndSet(false)) {
+                    rebuildInBackground();
+                }
+            }
+        }, "similarity-index-rebuild");
+        worker.setDaemon(true);
+        worker.start();
+        return true;
+    }
+    
+    public boolean isRebuilding() {
+        return rebuilding.get();
+    }
+    
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return catalog.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Bring the index up to date after a product was inserted or changed
+     */
+    private void refreshNeighborhoods(Product product) {
+        long productId = product.getId();
+        Set<Long> holders = listedBy.getOrDefault(productId, Collections.emptySet());
+        List<Long> stale = new ArrayList<>();
+        
+        // Lists that held the product: a score that did not drop can simply be re-ranked,
+        // otherwise a product outside the list may now beat it
+        for (Long holderId : new ArrayList<>(holders)) {
+            NeighborList list = neighbors.get(holderId);
+            double score = ProductAnalyticsService.calculateSimilarity(catalog.get(holderId), product);
+            if (score >= list.scoreAt(positionOf(list, productId))) {
+                list.remove(productId);
+                list.offer(productId, score);
+            } else {
+                stale.add(holderId);
+            }
+        }
+        
+        // Any other list can only gain the product if it is one of the product's candidates
+        for (Entry candidate : catalog.candidates(product)) {
+            if (holders.contains(candidate.id)) {
+                continue;
+            }
+            double score = ProductAnalyticsService.calculateSimilarity(candidate.product, product);
+            NeighborList list = neighbors.get(candidate.id);
+            if (score > 0 && list != null) {
+                offerNeighbor(candidate.id, list, productId, score);
+            }
+        }
+        
+        for (Long otherId : stale) {
+            setNeighbors(otherId, catalog.topNeighbors(catalog.get(otherId), NEIGHBORS));
+        }
+        setNeighbors(productId, catalog.topNeighbors(product, NEIGHBORS));
+    }
+    
+    /**
+     * Remove a deleted product's list and recompute the lists that held it
+     */
+    private void dropFromNeighborhoods(long productId) {
+        setNeighbors(productId, null);
+        Set<Long> holders = listedBy.remove(productId);
+        if (holders == null) {
+            return;
+        }
+        for (Long holderId : new ArrayList<>(holders)) {
+            Product holder = catalog.get(holderId);
+            if (holder != null) {
+                setNeighbors(holderId, catalog.topNeighbors(holder, NEIGHBORS));
+            }
+        }
+    }
+    
+    private void offerNeighbor(long ownerId, NeighborList list, long productId, double score) {
+        long evicted = list.offer(productId, score);
+        if (evicted == productId) {
+            return;
+        }
+        listedBy.computeIfAbsent(productId, k -> new HashSet<>()).add(ownerId);
+        if (evicted != -1) {
+            unlink(evicted, ownerId);
+        }
+    }
+    
+    /**
+     * Replace a product's neighbor list (null removes it) and keep the reverse map in step
+     */
+    private void setNeighbors(long ownerId, NeighborList list) {
+        NeighborList previous = list != null ? neighbors.put(ownerId, list) : neighbors.remove(ownerId);
+        if (previous != null) {
+            for (int i = 0; i < previous.size(); i++) {
+                unlink(previous.productIdAt(i), ownerId);
+            }
+        }
+        if (list != null) {
+            for (int i = 0; i < list.size(); i++) {
+                listedBy.computeIfAbsent(list.productIdAt(i), k -> new HashSet<>()).add(ownerId);
+            }
+        }
+    }
+    
+    private void installNeighbors(Map<Long, NeighborList> lists) {
+        neighbors = new HashMap<>();
+        listedBy = new HashMap<>();
+        for (Map.Entry<Long, NeighborList> entry : lists.entrySet()) {
+            if (catalog.get(entry.getKey()) != null) {
+                setNeighbors(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
+    private void unlink(long productId, long ownerId) {
+        Set<Long> holders = listedBy.get(productId);
+        if (holders != null) {
+            holders.remove(ownerId);
+            if (holders.isEmpty()) {
+                listedBy.remove(productId);
+            }
+        }
+    }
+    
+    private static int positionOf(NeighborList list, long productId) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.productIdAt(i) == productId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Neighbor lists for every product, scored in parallel with fork-join for large catalogs
+     * The candidate index is only read here, so the workers need no locking
+     */
+    private static Map<Long, NeighborList> computeAllNeighbors(CandidateIndex products) {
+        Entry[] entries = products.entriesInIdOrder().toArray(new Entry[0]);
+        NeighborList[] results = new NeighborList[entries.length];
+        if (entries.length >= PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new NeighborTask(products, entries, results, 0, entries.length));
+        } else {
+            new NeighborTask(products, entries, results, 0, entries.length).computeDirectly();
+        }
+        
+        Map<Long, NeighborList> lists = new HashMap<>(entries.length * 2);
+        for (int i = 0; i < entries.length; i++) {
+            lists.put(entries[i].id, results[i]);
+        }
+        return lists;
+    }
+    
+    /**
+     * Fork-join task computing the neighbor lists of a slice of the catalog
+     */
+    private static class NeighborTask extends RecursiveAction {
+        private final CandidateIndex products;
+        private final Entry[] entries;
+        private final NeighborList[] results;
+        private final int from;
+        private final int to;
+        
+        NeighborTask(CandidateIndex products, Entry[] entries, NeighborList[] results, int from, int to) {
+            this.products = products;
+            this.entries = entries;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_SLICE) {
+                computeDirectly();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new NeighborTask(products, entries, results, from, middle),
+                    new NeighborTask(products, entries, results, middle, to));
+        }
+        
+        void computeDirectly() {
+            for (int i = from; i < to; i++) {
+                results[i] = products.topNeighbors(entries[i].product, NEIGHBORS);
+            }
+        }
+    }
+    
+    private static String bucketKey(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : "";
+    }
+    
+    /**
+     * Products grouped into the buckets candidates are drawn from: category + wood type,
+     * category, wood type, and the whole catalog. Each bucket is sorted by price so the
+     * part inside a product's price window can be scanned separately from the rest.
+     */
+    private static class CandidateIndex {
+        private final TreeMap<Long, Entry> entries = new TreeMap<>();
+        private final Map<String, PriceBucket> byCategoryAndWood = new HashMap<>();
+        private final Map<String, PriceBucket> byCategory = new HashMap<>();
+        private final Map<String, PriceBucket> byWood = new HashMap<>();
+        private final PriceBucket byPrice = new PriceBucket();
+        
+        void add(Product product) {
+            Entry entry = new Entry(product);
+            entries.put(product.getId(), entry);
+            byCategoryAndWood.computeIfAbsent(entry.pairKey(), k -> new PriceBucket()).add(entry);
+            byCategory.computeIfAbsent(entry.category, k -> new PriceBucket()).add(entry);
+            byWood.computeIfAbsent(entry.wood, k -> new PriceBucket()).add(entry);
+            byPrice.add(entry);
+        }
+        
+        Product remove(long productId) {
+            Entry entry = entries.remove(productId);
+            if (entry == null) {
+                return null;
+            }
+            removeFrom(byCategoryAndWood, entry.pairKey(), entry);
+            removeFrom(byCategory, entry.category, entry);
+            removeFrom(byWood, entry.wood, entry);
+            byPrice.remove(entry);
+            return entry.product;
+        }
+        
+        Product get(long productId) {
+            Entry entry = entries.get(productId);
+            return entry != null ? entry.product : null;
+        }
+        
+        /**
+         * Swap in the new copy of a product whose category, wood type and price did not change
+         * The entry keeps the values it was bucketed under, so an entity changed in place is still detected
+         */
+        boolean replaceIfScoresUnchanged(Product product) {
+            Entry entry = entries.get(product.getId());
+            if (entry == null) {
+                return false;
+            }
+            Entry updated = new Entry(product);
+            if (!updated.category.equals(entry.category) || !updated.wood.equals(entry.wood)
+                    || updated.price != entry.price) {
+                return false;
+            }
+            entry.product = product;
+            return true;
+        }
+        
+        Collection<Entry> entriesInIdOrder() {
+            return entries.values();
+        }
+        
+        int size() {
+            return entries.size();
+        }
+        
+        /**
+         * Top products scoring above 0 against the target
+         * Bucket parts are scanned from the highest score bound down, and a part is skipped
+         * once the list is full of neighbors scoring above its bound
+         */
+        NeighborList topNeighbors(Product product, int limit) {
+            TopKHeap best = new TopKHeap(limit);
+            Entry target = new Entry(product);
+            PriceBucket pair = byCategoryAndWood.get(target.pairKey());
+            PriceBucket category = byCategory.get(target.category);
+            PriceBucket wood = byWood.get(target.wood);
+            
+            scan(best, target, pair, true, false, false);
+            if (canStillImprove(best, CATEGORY_WEIGHT + PRICE_WEIGHT)) {
+                scan(best, target, category, true, false, true);
+            }
+            if (canStillImprove(best, CATEGORY_WEIGHT + WOOD_WEIGHT)) {
+                scan(best, target, pair, false, false, false);
+            }
+            if (canStillImprove(best, WOOD_WEIGHT + PRICE_WEIGHT)) {
+                scan(best, target, wood, true, true, false);
+            }
+            if (canStillImprove(best, CATEGORY_WEIGHT)) {
+                scan(best, target, category, false, false, true);
+            }
+            if (canStillImprove(best, PRICE_WEIGHT)) {
+                scan(best, target, byPrice, true, true, true);
+            }
+            if (canStillImprove(best, WOOD_WEIGHT)) {
+                scan(best, target, wood, false, true, false);
+            }
+            return best.drainToNeighborList(limit);
+        }
+        
+        /**
+         * Every product that can score above 0 against the given one
+         * (same category, same wood type, or inside its price window), each listed once
+         */
+        List<Entry> candidates(Product product) {
+            Entry target = new Entry(product);
+            List<Entry> candidates = new ArrayList<>();
+            collect(candidates, target, byCategory.get(target.category), false, false, false);
+            collect(candidates, target, byWood.get(target.wood), false, true, false);
+            collect(candidates, target, byPrice, true, true, true);
+            return candidates;
+        }
+        
+        /**
+         * Offer the products of one bucket part (inside or outside the target's price window),
+         * skipping those that share the target's category / wood type when asked to,
+         * because another part already covers them
+         */
+        private void scan(TopKHeap best, Entry target, PriceBucket bucket, boolean insideWindow,
+                          boolean skipSameCategory, boolean skipSameWood) {
+            if (bucket == null) {
+                return;
+            }
+            for (NavigableMap<Double, List<Entry>> part : bucket.parts(target.price, insideWindow)) {
+                for (List<Entry> samePrice : part.values()) {
+                    for (Entry other : samePrice) {
+                        if (other.id == target.id || (skipSameCategory && other.category.equals(target.category))
+                                || (skipSameWood && other.wood.equals(target.wood))) {
+                            continue;
+                        }
+                        double score = ProductAnalyticsService.calculateSimilarity(target.product, other.product);
+                        if (score > 0) {
+                            best.offer(other.id, score);
+                        }
+                    }
+                }
+            }
+        }
+        
+        private void collect(List<Entry> candidates, Entry target, PriceBucket bucket, boolean windowOnly,
+                             boolean skipSameCategory, boolean skipSameWood) {
+            if (bucket == null) {
+                return;
+            }
+            List<NavigableMap<Double, List<Entry>>> parts = windowOnly
+                    ? bucket.parts(target.price, true)
+                    : List.of(bucket.prices);
+            for (NavigableMap<Double, List<Entry>> part : parts) {
+                for (List<Entry> samePrice : part.values()) {
+                    for (Entry other : samePrice) {
+                        if (other.id != target.id
+                                && !(skipSameCategory && other.category.equals(target.category))
+                                && !(skipSameWood && other.wood.equals(target.wood))) {
+                            candidates.add(other);
+                        }
+                    }
+                }
+            }
+        }
+        
+        // A full heap only loses to a part whose bound reaches its weakest score (ties go to the lower id)
+        private static boolean canStillImprove(TopKHeap best, double bound) {
+            return !best.isFull() || best.weakestScore() <= bound + BOUND_SLACK;
+        }
+        
+        private static void removeFrom(Map<String, PriceBucket> buckets, String key, Entry entry) {
+            PriceBucket bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(entry);
+                if (bucket.prices.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+    
+    /**
+     * A product with its normalized bucket keys
+     */
+    private static class Entry {
+        final long id;
+        Product product;
+        final String category;
+        final String wood;
+        final double price;
+        
+        Entry(Product product) {
+            this.id = product.getId();
+            this.product = product;
+            this.category = bucketKey(product.getCategory());
+            this.wood = bucketKey(product.getWoodType());
+            this.price = product.getSellingPrice() != null ? product.getSellingPrice() : 0.0;
+        }
+        
+        String pairKey() {
+            return category + '\u0000' + wood;
+        }
+    }
+    
+    /**
+     * Products of one bucket sorted by price
+     */
+    private static class PriceBucket {
+        private final TreeMap<Double, List<Entry>> prices = new TreeMap<>();
+        
+        void add(Entry entry) {
+            prices.computeIfAbsent(entry.price, k -> new ArrayList<>(1)).add(entry);
+        }
+        
+        void remove(Entry entry) {
+            List<Entry> samePrice = prices.get(entry.price);
+            if (samePrice != null) {
+                samePrice.removeIf(other -> other.id == entry.id);
+                if (samePrice.isEmpty()) {
+                    prices.remove(entry.price);
+                }
+            }
+        }
+        
+        /**
+         * The part inside the price window around a price, or the parts below and above it
+         */
+        List<NavigableMap<Double, List<Entry>>> parts(double price, boolean insideWindow) {
+            double low = price * PRICE_WINDOW_LOW;
+            double high = price * PRICE_WINDOW_HIGH;
+            if (insideWindow) {
+                return List.of(prices.subMap(low, true, high, true));
+            }
+            return List.of(prices.headMap(low, false), prices.tailMap(high, false));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.repositories.ProductRepository;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Atomic stock changes for order confirmation, goods receipt and restocking
+ *
+ * Every delta is applied in the database as "stock = stock + delta" guarded by
+ * "stock + delta >= 0", so concurrent confirmations neither lose updates nor
+ * oversell, and no row lock is held between reading and writing the product.
+ * If any line is rejected, or the driver does not confirm it changed, the
+ * exception rolls the whole batch back with the caller's transaction.
+ */
+@Service
+@Transactional
+public class StockAdjustmentService {
+    
+    @Autowired
+    private ProductRepository productRepository;
+    
+    @Autowired
+    private ProductIndexListener productIndexListener;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    /**
+     * Add each delta (product id -> quantity, negative to deduct) to the stock
+     * Returns the updated products, the catalog indexes see them after commit
+     */
+    public List<Product> adjustStock(Map<Long, Integer> deltas) {
+        if (deltas.isEmpty()) {
+            return List.of();
+        }
+        
+        // Pending entity changes must reach the database before the batch reads stock
+        productRepository.flush();
+        List<Long> rejected = productRepository.adjustStock(deltas);
+        if (!rejected.isEmpty()) {
+            Long productId = rejected.get(0);
+            throw rejection(productId, deltas.get(productId));
+        }
+        
+        // The update bypassed the persistence context: copies already loaded in it are refreshed,
+        // the other products are read in one query
+        List<Product> products = new ArrayList<>(deltas.size());
+        List<Long> notLoaded = new ArrayList<>();
+        for (Long productId : deltas.keySet()) {
+            Product reference = entityManager.getReference(Product.class, productId);
+            if (Hibernate.isInitialized(reference)) {
+                entityManager.refresh(reference);
+                products.add((Product) Hibernate.unproxy(reference));
+            } else {
+                notLoaded.add(productId);
+            }
+        }
+        for (Product product : productRepository.findAllById(notLoaded)) {
+            products.add((Product) Hibernate.unproxy(product));
+        }
+        productIndexListener.onProductsSaved(products);
+        return products;
+    }
+    
+    /**
+     * Error for a line the batch did not change, worded from the stock now in the database
+     */
+    private RuntimeException rejection(Long productId, int delta) {
+        Product product = productRepository.findById(productId).orElse(null);
+        Integer stock = productRepository.findStockById(productId).orElse(null);
+        if (product == null || stock == null) {
+            return new RuntimeException("Product not found: " + productId);
+        }
+        if (stock + delta < 0) {
+            return new RuntimeException("Insufficient stock for product: " + product.getName() +
+                    ". Available: " + stock + ", Requested: " + -delta);
+        }
+        // The driver did not report whether the row changed, the caller's rollback undoes it either way
+        return new RuntimeException("Stock update for product: " + product.getName() + " could not be confirmed");
+    }
+}
@@ -0,0 +1,243 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.SalesOrder;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.SalesOrderItem;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.StockReservationLedger;
+import lk.nibm.kd.hdse252.pdsa_cw.repositories.ProductRepository;
+import lk.nibm.kd.hdse252.pdsa_cw.repositories.SalesOrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stock reservations for pending sales orders
+ *
+ * Creating an order reserves its units in a StockReservationLedger, so pending
+ * orders can no longer claim the same stock. Confirmation turns the reservation
+ * into the stock deduction, cancellation or deletion gives it back, and an
+ * order left pending longer than the TTL loses it. Stock on hand follows the
+ * database through the CatalogIndex callbacks, and a periodic reconciliation
+ * re-reads it and drops reservations of orders that are no longer pending.
+ *
+ * The ledger is in memory, so the reservations of pending orders that have not
+ * expired are restored from the database at startup. An order confirmed without
+ * a reservation (expired, or not restored) reserves again before its deduction,
+ * so it cannot take units held by other pending orders. The conditional update
+ * in StockAdjustmentService stays the final check against stock on hand.
+ */
+@Service
+public class StockReservationService implements CatalogIndex {
+    
+    @Autowired
+    private ProductRepository productRepository;
+    
+    @Autowired
+    private SalesOrderRepository salesOrderRepository;
+    
+    @Value("${inventory.reservation.ttl-minutes:30}")
+    private long ttlMinutes;
+    
+    private final StockReservationLedger ledger = new StockReservationLedger();
+    
+    @Override
+    public void loadAll(List<Product> products) {
+        reloadAll(products);
+        int restored = restorePendingReservations();
+        if (restored > 0) {
+            System.out.println("✓ Stock reservations restored (" + restored + " pending orders)");
+        }
+    }
+    
+    /**
+     * A bulk product write leaves the orders alone, so only stock on hand is reloaded
+     */
+    @Override
+    public void reloadAll(List<Product> products) {
+        for (Product product : products) {
+            ledger.setOnHand(product.getId(), product.getStock(), CatalogIndex.versionOf(product));
+        }
+    }
+    
+    @Override
+    public void productSaved(Product product) {
+        ledger.setOnHand(product.getId(), product.getStock(), CatalogIndex.versionOf(product));
+    }
+    
+    @Override
+    public void productRemoved(Product product) {
+        ledger.removeProduct(product.getId());
+    }
+    
+    /**
+     * Reserve the lines of an order, or throw if any product lacks free stock
+     * The reservation is given back if the order's transaction rolls back
+     */
+    public void reserve(SalesOrder salesOrder) {
+        Map<Long, Integer> lines = new LinkedHashMap<>();
+        Map<Long, Product> products = new HashMap<>();
+        for (SalesOrderItem item : salesOrder.getItems()) {
+            Product product = item.getProduct();
+            ledger.trackIfAbsent(product.getId(), product.getStock(), CatalogIndex.versionOf(product));
+            lines.merge(product.getId(), item.getQuantity(), Integer::sum);
+            products.put(product.getId(), product);
+        }
+        
+        long orderId = salesOrder.getId();
+        Long shortProductId = ledger.reserve(orderId, lines, System.currentTimeMillis() + ttlMinutes * 60_000);
+        if (shortProductId != null) {
+            throw new RuntimeException("Insufficient stock for product: " + products.get(shortProductId).getName() +
+                    ". Available: " + Math.max(0, ledger.freeStock(shortProductId)) +
+                    ", Requested: " + lines.get(shortProductId));
+        }
+        
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            ledger.markCommitted(orderId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ledger.markCommitted(orderId);
+            }
+            
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    ledger.release(orderId);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Keep an order's units reserved while it is confirmed
+     * Renews its reservation, or reserves again if it has none, throwing if the stock is no longer free
+     */
+    public void holdForConfirmation(SalesOrder salesOrder) {
+        if (!ledger.renew(salesOrder.getId(), System.currentTimeMillis() + ttlMinutes * 60_000)) {
+            reserve(salesOrder);
+        }
+    }
+    
+    /**
+     * The order's stock was deducted, drop its reservation once the deduction commits
+     * Registered after the stock change, so the lower stock is applied before the units are released
+     */
+    public void orderConfirmed(long orderId) {
+        releaseAfterCommit(orderId);
+    }
+    
+    /**
+     * The order left PENDING without a confirmation (cancelled, deleted), give its units back once that commits
+     */
+    public void orderClosed(long orderId) {
+        releaseAfterCommit(orderId);
+    }
+    
+    /**
+     * Free stock for new orders (on hand minus reserved) and reserved units, O(1)
+     */
+    public Map<String, Object> getAvailability(long productId) {
+        Map<String, Object> availability = new HashMap<>();
+        availability.put("productId", productId);
+        availability.put("available", ledger.freeStock(productId));
+        availability.put("reserved", ledger.reservedStock(productId));
+        return availability;
+    }
+    
+    /**
+     * Release reservations of orders left pending longer than the TTL
+     */
+    @Scheduled(fixedDelayString = "${inventory.reservation.expiry-interval-ms:60000}")
+    public void expireReservations() {
+        int expired = ledger.expire(System.currentTimeMillis());
+        if (expired > 0) {
+            System.out.println("Stock reservations expired: " + expired);
+        }
+    }
+    
+    /**
+     * Re-read stock on hand and drop reservations whose orders are no longer pending
+     * Catches changes that never reached the callbacks (e.g. rows edited directly in the database)
+     */
+    @Scheduled(fixedDelayString = "${inventory.reservation.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        // Taken before the query, so every order in it was already committed when the query ran
+        Set<Long> committed = ledger.committedOrderIds();
+        Set<Long> pending = new HashSet<>(salesOrderRepository.findIdsByStatus("PENDING"));
+        for (Object[] row : productRepository.findStockLevels()) {
+            ledger.setOnHand(((Number) row[0]).longValue(), ((Number) row[1]).intValue(),
+                    ((Number) row[2]).longValue());
+        }
+        
+        int dropped = 0;
+        for (Long orderId : committed) {
+            if (!pending.contains(orderId) && ledger.release(orderId)) {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            System.out.println("Stock reservations reconciled, dropped " + dropped + " stale");
+        }
+    }
+    
+    private void releaseAfterCommit(long orderId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            ledger.release(orderId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ledger.release(orderId);
+            }
+        });
+    }
+    
+    /**
+     * Reserve again for pending orders created within the TTL, returns how many were restored
+     */
+    private int restorePendingReservations() {
+        List<Object[]> items = salesOrderRepository.findOrderLines("PENDING");
+        long now = System.currentTimeMillis();
+        int restored = 0;
+        
+        int start = 0;
+        while (start < items.size()) {
+            long orderId = ((Number) items.get(start)[0]).longValue();
+            LocalDateTime createdAt = items.get(start)[3] != null
+                    ? (LocalDateTime) items.get(start)[3]
+                    : LocalDateTime.now();
+            Map<Long, Integer> lines = new LinkedHashMap<>();
+            int end = start;
+            while (end < items.size() && ((Number) items.get(end)[0]).longValue() == orderId) {
+                lines.merge(((Number) items.get(end)[1]).longValue(), ((Number) items.get(end)[2]).intValue(),
+                        Integer::sum);
+                end++;
+            }
+            start = end;
+            
+            long expiresAt = createdAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                    + ttlMinutes * 60_000;
+            // An order that no longer fits the stock stays pending without a reservation
+            if (expiresAt > now && ledger.reserve(orderId, lines, expiresAt) == null) {
+                ledger.markCommitted(orderId);
+                restored++;
+            }
+        }
+        return restored;
+    }
+}
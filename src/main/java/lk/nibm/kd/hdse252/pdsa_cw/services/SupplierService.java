@@ -3,7 +3,6 @@ package lk.nibm.kd.hdse252.pdsa_cw.services;
 import lk.nibm.kd.hdse252.pdsa_cw.dto.SupplierDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.entities.Supplier;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.SupplierRepository;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -19,16 +18,16 @@ public class SupplierService {
     private SupplierRepository supplierRepository;
     
     @Autowired
-    private ModelMapper modelMapper;
+    private EntityMapper entityMapper;
     
     public SupplierDTO createSupplier(SupplierDTO supplierDTO) {
         if (supplierRepository.existsBySupplierCode(supplierDTO.getSupplierCode())) {
             throw new RuntimeException("Supplier code already exists");
         }
         
-        Supplier supplier = modelMapper.map(supplierDTO, Supplier.class);
+        Supplier supplier = entityMapper.toSupplier(supplierDTO);
         Supplier savedSupplier = supplierRepository.save(supplier);
-        return modelMapper.map(savedSupplier, SupplierDTO.class);
+        return entityMapper.toSupplierDTO(savedSupplier);
     }
     
     public SupplierDTO updateSupplier(Long id, SupplierDTO supplierDTO) {
@@ -45,7 +44,7 @@ public class SupplierService {
         supplier.setStatus(supplierDTO.getStatus());
         
         Supplier updatedSupplier = supplierRepository.save(supplier);
-        return modelMapper.map(updatedSupplier, SupplierDTO.class);
+        return entityMapper.toSupplierDTO(updatedSupplier);
     }
     
     public void deleteSupplier(Long id) {
@@ -55,18 +54,18 @@ public class SupplierService {
     public SupplierDTO getSupplierById(Long id) {
         Supplier supplier = supplierRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Supplier not found"));
-        return modelMapper.map(supplier, SupplierDTO.class);
+        return entityMapper.toSupplierDTO(supplier);
     }
     
     public List<SupplierDTO> getAllSuppliers() {
         return supplierRepository.findAll().stream()
-                .map(supplier -> modelMapper.map(supplier, SupplierDTO.class))
+                .map(entityMapper::toSupplierDTO)
                 .collect(Collectors.toList());
     }
     
     public List<SupplierDTO> getSuppliersByStatus(String status) {
         return supplierRepository.findByStatus(status).stream()
-                .map(supplier -> modelMapper.map(supplier, SupplierDTO.class))
+                .map(entityMapper::toSupplierDTO)
                 .collect(Collectors.toList());
     }
 }
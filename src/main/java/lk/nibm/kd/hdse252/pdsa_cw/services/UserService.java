@@ -3,7 +3,6 @@ package lk.nibm.kd.hdse252.pdsa_cw.services;
 import lk.nibm.kd.hdse252.pdsa_cw.dto.UserDTO;
 import lk.nibm.kd.hdse252.pdsa_cw.entities.User;
 import lk.nibm.kd.hdse252.pdsa_cw.repositories.UserRepository;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -19,7 +18,7 @@ public class UserService {
     private UserRepository userRepository;
     
     @Autowired
-    private ModelMapper modelMapper;
+    private EntityMapper entityMapper;
     
     public UserDTO createUser(UserDTO userDTO) {
         if (userRepository.existsByUsername(userDTO.getUsername())) {
@@ -29,9 +28,9 @@ public class UserService {
             throw new RuntimeException("Email already exists");
         }
         
-        User user = modelMapper.map(userDTO, User.class);
+        User user = entityMapper.toUser(userDTO);
         User savedUser = userRepository.save(user);
-        return modelMapper.map(savedUser, UserDTO.class);
+        return entityMapper.toUserDTO(savedUser);
     }
     
     public UserDTO updateUser(Long id, UserDTO userDTO) {
@@ -55,7 +54,7 @@ public class UserService {
         }
         
         User updatedUser = userRepository.save(user);
-        return modelMapper.map(updatedUser, UserDTO.class);
+        return entityMapper.toUserDTO(updatedUser);
     }
     
     public void deleteUser(Long id) {
@@ -65,19 +64,19 @@ public class UserService {
     public UserDTO getUserById(Long id) {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("User not found"));
-        return modelMapper.map(user, UserDTO.class);
+        return entityMapper.toUserDTO(user);
     }
     
     public List<UserDTO> getAllUsers() {
         return userRepository.findAll().stream()
-                .map(user -> modelMapper.map(user, UserDTO.class))
+                .map(entityMapper::toUserDTO)
                 .collect(Collectors.toList());
     }
     
     public UserDTO getUserByUsername(String username) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
-        return modelMapper.map(user, UserDTO.class);
+        return entityMapper.toUserDTO(user);
     }
 }
 
@@ -141,6 +141,11 @@ const api = {
             return api.get('/products');
         },
         
+        async getPage(cursor = null, size = 50, sort = 'productCode') {
+            const cursorParam = cursor ? `&cursor=${encodeURIComponent(cursor)}` : '';
+            return api.get(`/products/page?sort=${sort}&size=${size}${cursorParam}`);
+        },
+        
         async getById(id) {
             return api.get(`/products/${id}`);
         },
@@ -175,6 +180,14 @@ const api = {
         
         async search(searchData) {
             return api.post('/products/search', searchData);
+        },
+        
+        async searchWithFacets(searchData) {
+            return api.post('/products/search/facets', searchData);
+        },
+        
+        async autocomplete(prefix, limit = 10) {
+            return api.get(`/products/autocomplete?prefix=${encodeURIComponent(prefix)}&limit=${limit}`);
         }
     },
     
@@ -0,0 +1,138 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoPurchaseMatrixTests {
+
+    private static final int TOP = 5;
+    private static final int PRODUCTS = 60;
+
+    @Test
+    void incrementalAndPartitionedBuildsAgree() {
+        List<long[]> orders = randomOrders(new Random(42), 3000);
+        CoPurchaseMatrix incremental = new CoPurchaseMatrix(TOP);
+        for (long[] order : orders) {
+            incremental.addOrder(order);
+        }
+        CoPurchaseMatrix partitioned = buildPartitioned(orders, 4);
+
+        assertEquals(incremental.size(), partitioned.size());
+        for (long productId = 0; productId < PRODUCTS; productId++) {
+            List<long[]> expected = expectedPartners(orders, productId);
+            assertEquals(orderCount(orders, productId), incremental.orderCount(productId));
+            assertEquals(orderCount(orders, productId), partitioned.orderCount(productId));
+            assertPartners(expected, TOP, incremental.topPartners(productId, TOP));
+            assertPartners(expected, TOP, partitioned.topPartners(productId, TOP));
+            // Longer than the stored lists, ranked from the counts
+            assertPartners(expected, 3 * TOP, incremental.topPartners(productId, 3 * TOP));
+        }
+        assertNull(incremental.topPartners(PRODUCTS + 1, TOP));
+        assertEquals(0, incremental.orderCount(PRODUCTS + 1));
+    }
+
+    @Test
+    void removedProductLeavesEveryList() {
+        List<long[]> orders = randomOrders(new Random(7), 1000);
+        CoPurchaseMatrix incremental = new CoPurchaseMatrix(TOP);
+        for (long[] order : orders) {
+            incremental.addOrder(order);
+        }
+        CoPurchaseMatrix partitioned = buildPartitioned(orders, 3);
+
+        List<long[]> remaining = new ArrayList<>();
+        for (long[] order : orders) {
+            long[] kept = LongStream.of(order).filter(id -> id % 7 != 0).toArray();
+            if (kept.length > 0) {
+                remaining.add(kept);
+            }
+        }
+        for (long productId = 0; productId < PRODUCTS; productId += 7) {
+            incremental.removeProduct(productId);
+            partitioned.removeProduct(productId);
+        }
+
+        for (long productId = 0; productId < PRODUCTS; productId++) {
+            if (productId % 7 == 0) {
+                assertNull(incremental.topPartners(productId, TOP));
+                assertNull(partitioned.topPartners(productId, TOP));
+                continue;
+            }
+            List<long[]> expected = expectedPartners(remaining, productId);
+            assertPartners(expected, TOP, incremental.topPartners(productId, TOP));
+            assertPartners(expected, TOP, partitioned.topPartners(productId, TOP));
+        }
+    }
+
+    private static CoPurchaseMatrix buildPartitioned(List<long[]> orders, int partitions) {
+        CoPurchaseMatrix combined = new CoPurchaseMatrix(TOP);
+        for (int partition = 0; partition < partitions; partition++) {
+            CoPurchaseMatrix part = new CoPurchaseMatrix(TOP);
+            for (long[] order : orders) {
+                part.countOrder(order, partition, partitions);
+            }
+            part.rankPartners();
+            combined.absorb(part);
+            assertEquals(0, part.size());
+        }
+        return combined;
+    }
+
+    private static List<long[]> randomOrders(Random random, int count) {
+        List<long[]> orders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // Skewed towards low ids, so some pairs are much more common than others
+            orders.add(LongStream.generate(() -> (long) (PRODUCTS * Math.pow(random.nextDouble(), 2)))
+                    .limit(1 + random.nextInt(5))
+                    .distinct()
+                    .toArray());
+        }
+        return orders;
+    }
+
+    private static int orderCount(List<long[]> orders, long productId) {
+        return (int) orders.stream().filter(order -> LongStream.of(order).anyMatch(id -> id == productId)).count();
+    }
+
+    /**
+     * Partners of the product as (id, count), most common first, then lowest id
+     */
+    private static List<long[]> expectedPartners(List<long[]> orders, long productId) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (long[] order : orders) {
+            if (LongStream.of(order).anyMatch(id -> id == productId)) {
+                for (long partnerId : order) {
+                    if (partnerId != productId) {
+                        counts.merge(partnerId, 1L, Long::sum);
+                    }
+                }
+            }
+        }
+        List<long[]> partners = new ArrayList<>();
+        counts.forEach((partnerId, count) -> partners.add(new long[] {partnerId, count}));
+        partners.sort(Comparator.comparingLong((long[] pair) -> -pair[1]).thenComparingLong(pair -> pair[0]));
+        return partners;
+    }
+
+    private static void assertPartners(List<long[]> expected, int limit, NeighborList actual) {
+        List<long[]> top = expected.subList(0, Math.min(limit, expected.size()));
+        if (actual == null) {
+            assertTrue(top.isEmpty());
+            return;
+        }
+        assertEquals(top.size(), actual.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(top.get(i)[0], actual.productIdAt(i));
+            assertEquals(top.get(i)[1], actual.scoreAt(i));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsumptionRingBufferTests {
+
+    private static final long START = 20_000;
+
+    @Test
+    void runningTotalsMatchSummingTheRecords() {
+        Random random = new Random(42);
+        ConsumptionRingBuffer buffer = new ConsumptionRingBuffer();
+        List<long[]> accepted = new ArrayList<>();
+        long currentDay = START;
+
+        for (int step = 0; step < 5000; step++) {
+            int action = random.nextInt(10);
+            if (action < 6) {
+                // Mostly recent days, sometimes one that already left the window
+                long day = currentDay - random.nextInt(40) + (random.nextInt(8) == 0 ? 1 : 0);
+                int quantity = 1 + random.nextInt(9);
+                buffer.record(day, quantity);
+                currentDay = Math.max(currentDay, day);
+                if (day > currentDay - ConsumptionRingBuffer.WINDOW_DAYS) {
+                    accepted.add(new long[] {day, quantity});
+                }
+            } else {
+                // Gaps of up to twice the window, so sometimes every day leaves at once
+                currentDay += random.nextInt(10) == 0 ? random.nextInt(60) : random.nextInt(3);
+            }
+            assertEquals(windowTotal(accepted, currentDay), buffer.getWindowTotal(currentDay));
+            assertEquals(movingAverage(accepted, currentDay), buffer.movingAverage(currentDay), 1e-9);
+            assertEquals(windowTotal(accepted, currentDay) == 0, buffer.isEmpty(currentDay));
+        }
+    }
+
+    @Test
+    void shortHistoryIsAveragedOverItsOwnDays() {
+        ConsumptionRingBuffer buffer = new ConsumptionRingBuffer();
+        assertEquals(0.0, buffer.movingAverage(START));
+        buffer.record(START, 6);
+        buffer.record(START + 2, 3);
+        assertEquals(3.0, buffer.movingAverage(START + 2));
+        assertEquals(9.0 / 7, buffer.movingAverage(START + 6));
+        // START has left the 7 day window, the 30 day total still holds it
+        assertEquals(3.0 / 7, buffer.movingAverage(START + 7));
+        assertEquals(9, buffer.getWindowTotal(START + 7));
+        assertTrue(buffer.isEmpty(START + 40));
+    }
+
+    @Test
+    void copyIsIndependent() {
+        ConsumptionRingBuffer buffer = new ConsumptionRingBuffer();
+        buffer.record(START, 4);
+        ConsumptionRingBuffer copy = buffer.copy();
+        buffer.record(START, 10);
+        copy.record(START + 1, 1);
+        assertEquals(14, buffer.getWindowTotal(START + 1));
+        assertEquals(5, copy.getWindowTotal(START + 1));
+    }
+
+    private static long windowTotal(List<long[]> accepted, long today) {
+        long total = 0;
+        for (long[] record : accepted) {
+            if (record[0] > today - ConsumptionRingBuffer.WINDOW_DAYS) {
+                total += record[1];
+            }
+        }
+        return total;
+    }
+
+    private static double movingAverage(List<long[]> accepted, long today) {
+        long firstDay = Long.MAX_VALUE;
+        long total = 0;
+        for (long[] record : accepted) {
+            if (record[0] > today - ConsumptionRingBuffer.WINDOW_DAYS) {
+                firstDay = Math.min(firstDay, record[0]);
+            }
+            if (record[0] > today - ConsumptionRingBuffer.AVERAGE_DAYS) {
+                total += record[1];
+            }
+        }
+        if (firstDay == Long.MAX_VALUE) {
+            return 0.0;
+        }
+        return (double) total / Math.min(ConsumptionRingBuffer.AVERAGE_DAYS, today - firstDay + 1);
+    }
+}
@@ -0,0 +1,76 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongIntHashMapTests {
+
+    private static final int MISSING = -1;
+
+    @Test
+    void randomPutsAndRemovesMatchHashMap() {
+        Random random = new Random(42);
+        LongIntHashMap map = new LongIntHashMap(4);
+        Map<Long, Integer> expected = new HashMap<>();
+
+        for (int step = 0; step < 50_000; step++) {
+            // A small key range keeps long probe runs, so removals shift entries back often
+            long key = random.nextInt(300) - 150;
+            int value = random.nextInt(1000);
+            switch (random.nextInt(3)) {
+                case 0 -> assertEquals(orMissing(expected.put(key, value)), map.put(key, value, MISSING));
+                case 1 -> assertEquals(orMissing(expected.remove(key)), map.remove(key, MISSING));
+                default -> assertEquals(expected.merge(key, value, Integer::sum), map.addTo(key, value));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertMatches(expected, map);
+    }
+
+    @Test
+    void removingFromTheMiddleOfAProbeRunKeepsLaterKeysReachable() {
+        LongIntHashMap map = new LongIntHashMap(64);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (long key = 0; key < 48; key++) {
+            map.put(key * 64, (int) key, MISSING);
+            expected.put(key * 64, (int) key);
+        }
+        for (long key = 0; key < 48; key += 3) {
+            assertEquals((int) key, map.remove(key * 64, MISSING));
+            expected.remove(key * 64);
+        }
+        assertMatches(expected, map);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(MISSING, map.get(64, MISSING));
+    }
+
+    @Test
+    void reservedKeyIsRejected() {
+        LongIntHashMap map = new LongIntHashMap();
+        assertThrows(IllegalArgumentException.class, () -> map.put(Long.MIN_VALUE, 1, MISSING));
+        assertEquals(MISSING, map.get(Long.MIN_VALUE, MISSING));
+    }
+
+    private static void assertMatches(Map<Long, Integer> expected, LongIntHashMap map) {
+        for (long key = -200; key < 3200; key++) {
+            int value = orMissing(expected.get(key));
+            assertEquals(value, map.get(key, MISSING));
+            assertEquals(value, map.getOptimistic(key, MISSING));
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+        Map<Long, Integer> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    private static int orMissing(Integer value) {
+        return value != null ? value : MISSING;
+    }
+}
@@ -0,0 +1,64 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingListTests {
+
+    @Test
+    void entriesReadBackThroughEveryVarintLength() {
+        PostingList postingList = new PostingList();
+        List<int[]> expected = new ArrayList<>();
+        int documentId = 0;
+        // Gaps and frequencies that need 1 to 5 varint bytes
+        int[] sizes = {1, 127, 128, 16_383, 16_384, 2_097_152, 268_435_456};
+        for (int gap : sizes) {
+            for (int frequency : new int[] {1, 300, Integer.MAX_VALUE}) {
+                documentId += gap;
+                postingList.add(documentId, frequency);
+                expected.add(new int[] {documentId, frequency});
+            }
+        }
+
+        PostingList.Cursor cursor = postingList.cursor();
+        for (int[] entry : expected) {
+            assertTrue(cursor.next());
+            assertEquals(entry[0], cursor.documentId());
+            assertEquals(entry[1], cursor.termFrequency());
+        }
+        assertFalse(cursor.next());
+        assertEquals(expected.size(), postingList.getLiveDocumentCount());
+    }
+
+    @Test
+    void smallGapsTakeTwoBytesAnEntry() {
+        PostingList postingList = new PostingList();
+        for (int documentId = 0; documentId < 1000; documentId += 3) {
+            postingList.add(documentId, 2);
+        }
+        assertEquals(2 * 334, postingList.getSizeInBytes());
+
+        postingList.documentDeleted();
+        assertEquals(333, postingList.getLiveDocumentCount());
+        // Deleted entries stay readable until the index is rebuilt
+        int entries = 0;
+        PostingList.Cursor cursor = postingList.cursor();
+        while (cursor.next()) {
+            entries++;
+        }
+        assertEquals(334, entries);
+    }
+
+    @Test
+    void documentIdsMustIncrease() {
+        PostingList postingList = new PostingList();
+        postingList.add(5, 1);
+        assertThrows(IllegalArgumentException.class, () -> postingList.add(5, 1));
+        assertThrows(IllegalArgumentException.class, () -> postingList.add(4, 1));
+        assertEquals(1, postingList.getLiveDocumentCount());
+    }
+}
@@ -0,0 +1,73 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmoothingForecastTests {
+
+    private static final long START = 20_000;
+
+    @Test
+    void steadyConsumptionIsForecastFlat() {
+        SmoothingForecast forecast = new SmoothingForecast(false);
+        assertFalse(forecast.hasObservations());
+        for (long day = START; day < START + 20; day++) {
+            forecast.observe(day, 5);
+        }
+        assertEquals(20, forecast.getObservedDays());
+        assertEquals(5.0, forecast.getLevel(), 1e-9);
+        assertEquals(0.0, forecast.getTrend(), 1e-9);
+        assertEquals(35.0, forecast.forecastTotal(START + 20, 7), 1e-9);
+    }
+
+    @Test
+    void trendIsFollowedAndForecastsStopAtZero() {
+        SmoothingForecast growing = new SmoothingForecast(false);
+        for (int i = 0; i < 200; i++) {
+            growing.observe(START + i, 10 + 2 * i);
+        }
+        assertEquals(2.0, growing.getTrend(), 1e-3);
+        // The next 3 days of the line are 410, 412 and 414
+        assertEquals(1236.0, growing.forecastTotal(START + 200, 3), 0.5);
+
+        SmoothingForecast shrinking = new SmoothingForecast(false);
+        for (int i = 0; i < 50; i++) {
+            shrinking.observe(START + i, Math.max(0, 100 - 3 * i));
+        }
+        assertTrue(shrinking.getTrend() < 0);
+        // Far enough ahead, the line is below 0 and every day counts as 0
+        assertEquals(0.0, shrinking.forecastTotal(START + 400, 7));
+    }
+
+    @Test
+    void weeklySeasonalityIsLearned() {
+        double[] week = {2, 2, 2, 2, 2, 12, 12};
+        SmoothingForecast seasonal = new SmoothingForecast(true);
+        SmoothingForecast plain = new SmoothingForecast(false);
+        for (int i = 0; i < 52 * SmoothingForecast.SEASON_DAYS; i++) {
+            long day = START + i;
+            double quantity = week[(int) Math.floorMod(day, (long) SmoothingForecast.SEASON_DAYS)];
+            seasonal.observe(day, quantity);
+            plain.observe(day, quantity);
+        }
+
+        long next = START + 52 * SmoothingForecast.SEASON_DAYS;
+        for (long day = next; day < next + SmoothingForecast.SEASON_DAYS; day++) {
+            double expected = week[(int) Math.floorMod(day, (long) SmoothingForecast.SEASON_DAYS)];
+            assertEquals(expected, seasonal.forecastTotal(day, 1), 1.0);
+        }
+        // Both see the same weekly total, only the seasonal one places it on the right days
+        assertEquals(34.0, seasonal.forecastTotal(next, 7), 2.0);
+        double[] plainDays = new double[7];
+        for (int i = 0; i < 7; i++) {
+            plainDays[i] = plain.forecastTotal(next + i, 1);
+        }
+        assertTrue(plainDays[6] - plainDays[0] < 1.0);
+
+        SmoothingForecast copy = seasonal.copy();
+        copy.observe(next, 100);
+        assertEquals(52 * SmoothingForecast.SEASON_DAYS, seasonal.getObservedDays());
+        assertNotEquals(copy.getLevel(), seasonal.getLevel());
+    }
+}
@@ -0,0 +1,159 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockReservationLedgerTests {
+
+    private static final int ORDERS = 5_000;
+
+    @Test
+    void orderIsReservedCompletelyOrNotAtAll() {
+        StockReservationLedger ledger = new StockReservationLedger();
+        ledger.setOnHand(1, 5, 0);
+        ledger.setOnHand(2, 2, 0);
+
+        assertEquals(2L, ledger.reserve(10, lines(1L, 3, 2L, 3), Long.MAX_VALUE));
+        assertEquals(0, ledger.reservedStock(1));
+        assertEquals(5, ledger.freeStock(1));
+
+        // A product the ledger does not track cannot be reserved either
+        assertEquals(3L, ledger.reserve(10, lines(1L, 3, 3L, 1), Long.MAX_VALUE));
+        assertEquals(0, ledger.reservedStock(1));
+
+        assertNull(ledger.reserve(10, lines(1L, 3, 2L, 2), Long.MAX_VALUE));
+        assertEquals(2, ledger.freeStock(1));
+        assertEquals(0, ledger.freeStock(2));
+
+        // Reserving again for the same order replaces its lines
+        assertNull(ledger.reserve(10, lines(1L, 1), Long.MAX_VALUE));
+        assertEquals(1, ledger.reservedStock(1));
+        assertEquals(0, ledger.reservedStock(2));
+
+        assertTrue(ledger.release(10));
+        assertFalse(ledger.release(10));
+        assertEquals(5, ledger.freeStock(1));
+        assertEquals(2, ledger.freeStock(2));
+    }
+
+    @Test
+    void releaseRacingExpiryGivesUnitsBackOnce() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            StockReservationLedger ledger = new StockReservationLedger();
+            ledger.setOnHand(1, 100_000, 0);
+            // A live order, giving back any unit twice would eat into its reservation
+            assertNull(ledger.reserve(0, lines(1L, 500), Long.MAX_VALUE));
+            for (long orderId = 1; orderId <= ORDERS; orderId++) {
+                assertNull(ledger.reserve(orderId, lines(1L, 5), 10));
+            }
+
+            AtomicInteger released = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread releasing = new Thread(() -> {
+                await(start);
+                for (long orderId = ORDERS; orderId >= 1; orderId--) {
+                    if (ledger.release(orderId)) {
+                        released.incrementAndGet();
+                    }
+                }
+            });
+            Thread expiring = new Thread(() -> {
+                await(start);
+                released.addAndGet(ledger.expire(100));
+            });
+            releasing.start();
+            expiring.start();
+            start.countDown();
+            releasing.join();
+            expiring.join();
+
+            assertEquals(ORDERS, released.get());
+            assertEquals(500, ledger.reservedStock(1));
+            assertEquals(99_500, ledger.freeStock(1));
+        }
+    }
+
+    @Test
+    void renewedReservationIsNotExpired() throws InterruptedException {
+        StockReservationLedger ledger = new StockReservationLedger();
+        ledger.setOnHand(1, 10, 0);
+        assertNull(ledger.reserve(1, lines(1L, 4), 10));
+        assertTrue(ledger.renew(1, 1_000));
+        assertEquals(0, ledger.expire(100));
+        assertEquals(4, ledger.reservedStock(1));
+        assertFalse(ledger.renew(2, 1_000));
+
+        for (int round = 0; round < 20; round++) {
+            StockReservationLedger racing = new StockReservationLedger();
+            racing.setOnHand(1, 100_000, 0);
+            for (long orderId = 1; orderId <= ORDERS; orderId++) {
+                assertNull(racing.reserve(orderId, lines(1L, 5), 10));
+            }
+
+            AtomicInteger renewed = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread renewing = new Thread(() -> {
+                await(start);
+                for (long orderId = ORDERS; orderId >= 1; orderId--) {
+                    if (racing.renew(orderId, Long.MAX_VALUE)) {
+                        renewed.incrementAndGet();
+                    }
+                }
+            });
+            Thread expiring = new Thread(() -> {
+                await(start);
+                racing.expire(100);
+            });
+            renewing.start();
+            expiring.start();
+            start.countDown();
+            renewing.join();
+            expiring.join();
+
+            // Every order is either renewed and keeps its units, or expired and gave them back
+            assertEquals(5 * renewed.get(), racing.reservedStock(1));
+        }
+    }
+
+    @Test
+    void olderStockVersionIsIgnored() {
+        StockReservationLedger ledger = new StockReservationLedger();
+        ledger.setOnHand(1, 10, 2);
+        ledger.setOnHand(1, 50, 1);
+        assertEquals(10, ledger.freeStock(1));
+
+        assertNull(ledger.reserve(1, lines(1L, 4), Long.MAX_VALUE));
+        ledger.setOnHand(1, 8, 3);
+        assertEquals(4, ledger.reservedStock(1));
+        assertEquals(4, ledger.freeStock(1));
+
+        // Tracking an already loaded product changes nothing
+        ledger.trackIfAbsent(1, 100, 4);
+        assertEquals(4, ledger.freeStock(1));
+
+        ledger.removeProduct(1);
+        assertEquals(0, ledger.freeStock(1));
+    }
+
+    private static Map<Long, Integer> lines(Object... productsAndQuantities) {
+        Map<Long, Integer> lines = new LinkedHashMap<>();
+        for (int i = 0; i < productsAndQuantities.length; i += 2) {
+            lines.put((Long) productsAndQuantities[i], (Integer) productsAndQuantities[i + 1]);
+        }
+        return lines;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package lk.nibm.kd.hdse252.pdsa_cw.entities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopKHeapTests {
+
+    // Score highest first, then id lowest first, like NeighborList.ranksBefore
+    private static final Comparator<double[]> RANKING = Comparator
+            .comparingDouble((double[] pair) -> -pair[1])
+            .thenComparingDouble(pair -> pair[0]);
+
+    @Test
+    void keepsTheBestPairsAndDrainsThemBestFirst() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            int capacity = 1 + random.nextInt(12);
+            TopKHeap heap = new TopKHeap(capacity);
+            List<double[]> offered = new ArrayList<>();
+            for (long id = 0, count = random.nextInt(60); id < count; id++) {
+                // Few distinct scores, so the id tie-break decides often
+                double score = random.nextInt(5) / 4.0;
+                heap.offer(id, score);
+                offered.add(new double[] {id, score});
+            }
+            offered.sort(RANKING);
+            List<double[]> expected = offered.subList(0, Math.min(capacity, offered.size()));
+            assertEquals(expected.size() == capacity, heap.isFull());
+            if (!expected.isEmpty()) {
+                assertEquals(expected.get(expected.size() - 1)[1], heap.weakestScore());
+            }
+
+            NeighborList drained = heap.drainToNeighborList(capacity);
+            assertEquals(0, heap.size());
+            assertPairs(expected, drained);
+        }
+    }
+
+    @Test
+    void combinedHeapsKeepTheOverallBest() {
+        Random random = new Random(7);
+        TopKHeap combined = new TopKHeap(10);
+        List<double[]> offered = new ArrayList<>();
+        long id = 0;
+        for (int part = 0; part < 4; part++) {
+            TopKHeap partial = new TopKHeap(10);
+            for (int i = 0; i < 40; i++, id++) {
+                double score = random.nextDouble();
+                partial.offer(id, score);
+                offered.add(new double[] {id, score});
+            }
+            combined.offerAll(partial);
+        }
+        offered.sort(RANKING);
+        assertPairs(offered.subList(0, 10), combined.drainToNeighborList(10));
+
+        TopKHeap empty = new TopKHeap(0);
+        empty.offer(1, 1.0);
+        assertEquals(0, empty.size());
+    }
+
+    @Test
+    void neighborListEvictsTheWeakestAndCloses() {
+        NeighborList list = new NeighborList(3);
+        assertEquals(-1, list.offer(5, 0.5));
+        assertEquals(-1, list.offer(3, 0.9));
+        assertEquals(-1, list.offer(4, 0.5));
+        assertTrue(list.isFull());
+        // Equal score and higher id than the weakest, so it does not make the list
+        assertEquals(6, list.offer(6, 0.5));
+        assertEquals(5, list.offer(1, 0.5));
+        assertEquals(List.of(3L, 1L, 4L), ids(list));
+
+        assertTrue(list.remove(1));
+        assertFalse(list.remove(1));
+        assertFalse(list.contains(1));
+        assertEquals(List.of(3L, 4L), ids(list));
+        assertEquals(-1, list.offer(2, 0.7));
+        assertEquals(List.of(3L, 2L, 4L), ids(list));
+        assertEquals(0.7, list.scoreAt(1));
+    }
+
+    private static void assertPairs(List<double[]> expected, NeighborList actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals((long) expected.get(i)[0], actual.productIdAt(i));
+            assertEquals(expected.get(i)[1], actual.scoreAt(i));
+        }
+    }
+
+    private static List<Long> ids(NeighborList list) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < list.size(); i++) {
+            ids.add(list.productIdAt(i));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,140 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsumptionPipelineTests {
+
+    private final RecordingAnalytics analytics = new RecordingAnalytics();
+
+    @AfterEach
+    void clearTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void movementsOutsideATransactionAreRecorded() throws InterruptedException {
+        ConsumptionPipeline pipeline = pipeline(16);
+        pipeline.start();
+        pipeline.publish("P001", 3);
+        pipeline.publish("P002", 1);
+        pipeline.publish("P001", 4);
+        // Ignored, nothing moved
+        pipeline.publish(null, 5);
+        pipeline.publish("P003", 0);
+        pipeline.stop();
+
+        assertEquals(Map.of("P001", 7, "P002", 1), analytics.recorded);
+        assertEquals(0, pipeline.getBacklog());
+    }
+
+    @Test
+    void transactionMovementsArriveOnlyAfterCommit() throws InterruptedException {
+        ConsumptionPipeline pipeline = pipeline(16);
+        pipeline.start();
+
+        TransactionSynchronizationManager.initSynchronization();
+        pipeline.publish("P001", 2);
+        pipeline.publish("P001", 5);
+        pipeline.publish("P002", 1);
+        // One synchronization per transaction, however many movements it has
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, synchronizations.size());
+        assertEquals(0, pipeline.getBacklog());
+        finish(synchronizations, TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        TransactionSynchronizationManager.initSynchronization();
+        pipeline.publish("P001", 1);
+        pipeline.publish("P003", 4);
+        finish(TransactionSynchronizationManager.getSynchronizations(), TransactionSynchronization.STATUS_COMMITTED);
+        pipeline.stop();
+
+        assertEquals(Map.of("P001", 1, "P003", 4), analytics.recorded);
+    }
+
+    @Test
+    void fullQueueCoalescesIntoTheOverflowMap() throws InterruptedException {
+        ConsumptionPipeline pipeline = pipeline(2);
+        // No worker yet, so nothing leaves the queue until the pipeline stops
+        ReflectionTestUtils.setField(pipeline, "queue", new ArrayBlockingQueue<Map<String, Integer>>(2));
+        Thread finished = new Thread(() -> { });
+        finished.start();
+        ReflectionTestUtils.setField(pipeline, "worker", finished);
+
+        for (int i = 1; i <= 10; i++) {
+            pipeline.publish(i % 2 == 0 ? "P001" : "P002", i);
+        }
+        // Two queued batches, the rest summed into one entry per product
+        assertEquals(4, pipeline.getBacklog());
+
+        pipeline.stop();
+        assertEquals(Map.of("P001", 2 + 4 + 6 + 8 + 10, "P002", 1 + 3 + 5 + 7 + 9), analytics.recorded);
+        assertEquals(0, pipeline.getBacklog());
+    }
+
+    @Test
+    void failedTotalsAreRetriedInsteadOfDropped() throws InterruptedException {
+        ConsumptionPipeline pipeline = pipeline(16);
+        ReflectionTestUtils.setField(pipeline, "retryDelayMs", 20L);
+        analytics.failuresLeft.set(3);
+        pipeline.start();
+        pipeline.publish("P001", 3);
+        pipeline.publish("P001", 2);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (analytics.recorded.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        pipeline.publish("P002", 1);
+        pipeline.stop();
+
+        assertEquals(0, analytics.failuresLeft.get());
+        assertEquals(Map.of("P001", 5, "P002", 1), analytics.recorded);
+        assertEquals(0, pipeline.getBacklog());
+    }
+
+    private ConsumptionPipeline pipeline(int capacity) {
+        ConsumptionPipeline pipeline = new ConsumptionPipeline();
+        ReflectionTestUtils.setField(pipeline, "productAnalyticsService", analytics);
+        ReflectionTestUtils.setField(pipeline, "capacity", capacity);
+        return pipeline;
+    }
+
+    private static void finish(List<TransactionSynchronization> synchronizations, int status) {
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    /**
+     * Collects the recorded totals instead of updating the history and the store
+     * The first failuresLeft calls fail without recording anything
+     */
+    private static class RecordingAnalytics extends ProductAnalyticsService {
+        private final Map<String, Integer> recorded = new ConcurrentHashMap<>();
+        private final AtomicInteger failuresLeft = new AtomicInteger();
+
+        @Override
+        public void recordStockConsumption(String productCode, int quantityConsumed) {
+            if (failuresLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                throw new IllegalStateException("history unavailable");
+            }
+            recorded.merge(productCode, quantityConsumed, Integer::sum);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsumptionStoreTests {
+
+    private static final long TODAY = LocalDate.now().toEpochDay();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void eventsSurviveAReopen() throws IOException {
+        Path file = directory.resolve("consumption.log");
+        ConsumptionStore store = open(file);
+        store.append("P001", TODAY, 3);
+        store.append("P001", TODAY, 2);
+        store.append("P002", TODAY - 1, 7);
+        store.flush();
+        store.append("P001", TODAY - 2, 1);
+        // Older than the daily window, so it is read back as a weekly total
+        store.append("P002", TODAY - 60, 4);
+        store.close();
+
+        Map<String, ConsumptionStore.ProductConsumption> loaded = open(file).load(TODAY);
+        assertEquals(Map.of(TODAY, 5L, TODAY - 2, 1L), loaded.get("P001").getDailyTotals());
+        assertEquals(Map.of(TODAY - 1, 7L), loaded.get("P002").getDailyTotals());
+        assertEquals(Map.of(ConsumptionStore.weekStart(TODAY - 60), 4L), loaded.get("P002").getWeeklyTotals());
+    }
+
+    @Test
+    void damagedBlockIsSkippedWithoutLosingLaterBlocks() throws IOException {
+        Path file = directory.resolve("consumption.log");
+        ConsumptionStore store = open(file);
+        store.append("P001", TODAY, 1);
+        store.flush();
+        long secondBlockStart = Files.size(file);
+        store.append("P002", TODAY, 2);
+        store.flush();
+        store.append("P001", TODAY, 4);
+        store.append("P002", TODAY, 8);
+        store.flush();
+        store.close();
+
+        // Flip the last payload byte of the second block, which also defines P002
+        long secondBlockEnd = secondBlockStart + 8 + ByteBuffer.wrap(Files.readAllBytes(file))
+                .getInt((int) secondBlockStart);
+        flipByte(file, secondBlockEnd - 1);
+
+        ConsumptionStore reopened = open(file);
+        Map<String, ConsumptionStore.ProductConsumption> loaded = reopened.load(TODAY);
+        assertEquals(Map.of(TODAY, 5L), loaded.get("P001").getDailyTotals());
+        // P002 records after the damaged block refer to an id whose definition was lost
+        assertFalse(loaded.containsKey("P002"));
+
+        // New products get an id above every id in the file, including the lost one
+        reopened.append("P003", TODAY, 16);
+        reopened.append("P002", TODAY, 32);
+        reopened.close();
+        loaded = open(file).load(TODAY);
+        assertEquals(Map.of(TODAY, 5L), loaded.get("P001").getDailyTotals());
+        assertEquals(Map.of(TODAY, 16L), loaded.get("P003").getDailyTotals());
+        assertEquals(Map.of(TODAY, 32L), loaded.get("P002").getDailyTotals());
+    }
+
+    @Test
+    void tornTailIsCutOffAndAppendsContinue() throws IOException {
+        Path file = directory.resolve("consumption.log");
+        ConsumptionStore store = open(file);
+        store.append("P001", TODAY, 1);
+        store.close();
+        long goodSize = Files.size(file);
+
+        // A block header promising more bytes than were written, as after a crash mid-write
+        ByteBuffer torn = ByteBuffer.allocate(12).putInt(100).putInt(0).putInt(42);
+        Files.write(file, torn.array(), StandardOpenOption.APPEND);
+
+        ConsumptionStore reopened = open(file);
+        assertEquals(Map.of(TODAY, 1L), reopened.load(TODAY).get("P001").getDailyTotals());
+        assertEquals(goodSize, Files.size(file));
+        reopened.append("P001", TODAY, 2);
+        reopened.close();
+        assertEquals(Map.of(TODAY, 3L), open(file).load(TODAY).get("P001").getDailyTotals());
+    }
+
+    @Test
+    void failedWriteKeepsEventsAndProductIds() throws IOException {
+        Path file = directory.resolve("consumption.log");
+        ConsumptionStore store = open(file);
+        store.load(TODAY);
+        store.append("P001", TODAY, 1);
+        store.flush();
+
+        // Make the next write fail
+        FileChannel channel = (FileChannel) ReflectionTestUtils.getField(store, "channel");
+        FileChannel closed = FileChannel.open(file, StandardOpenOption.READ);
+        closed.close();
+        ReflectionTestUtils.setField(store, "channel", closed);
+        store.append("P002", TODAY, 2);
+        assertDoesNotThrow(store::flush);
+
+        // Bytes a failed write may have left behind are cut off before the retry
+        Files.write(file, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        ReflectionTestUtils.setField(store, "channel", channel);
+        store.append("P002", TODAY, 4);
+        store.close();
+
+        Map<String, ConsumptionStore.ProductConsumption> loaded = open(file).load(TODAY);
+        assertEquals(Map.of(TODAY, 1L), loaded.get("P001").getDailyTotals());
+        assertEquals(Map.of(TODAY, 6L), loaded.get("P002").getDailyTotals());
+    }
+
+    @Test
+    void compactionKeepsTheRolledUpTotals() throws IOException {
+        Path file = directory.resolve("consumption.log");
+        ConsumptionStore store = open(file);
+        for (int block = 0; block < 70; block++) {
+            store.append("P001", TODAY - block, 1 + block);
+            store.append("P002", TODAY - 2 * block, 2);
+            store.flush();
+        }
+        Map<String, ConsumptionStore.ProductConsumption> before = store.load(TODAY);
+        long sizeBefore = Files.size(file);
+
+        store.compact();
+        assertTrue(Files.size(file) < sizeBefore);
+        Map<String, ConsumptionStore.ProductConsumption> after = store.load(TODAY);
+        assertTotalsEqual(before, after);
+
+        // The compacted file numbers products afresh, appends must follow it
+        store.append("P003", TODAY, 5);
+        store.append("P001", TODAY, 1);
+        store.close();
+        Map<String, ConsumptionStore.ProductConsumption> reopened = open(file).load(TODAY);
+        assertEquals(5L, reopened.get("P003").getDailyTotals().get(TODAY));
+        assertEquals(before.get("P001").getDailyTotals().get(TODAY) + 1,
+                reopened.get("P001").getDailyTotals().get(TODAY));
+        assertEquals(before.get("P002").getWeeklyTotals(), reopened.get("P002").getWeeklyTotals());
+    }
+
+    private static ConsumptionStore open(Path file) throws IOException {
+        ConsumptionStore store = new ConsumptionStore();
+        ReflectionTestUtils.setField(store, "storePath", file.toString());
+        store.open();
+        return store;
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            one.put(0, (byte) (one.get(0) ^ 0x55)).rewind();
+            channel.write(one, position);
+        }
+    }
+
+    private static void assertTotalsEqual(Map<String, ConsumptionStore.ProductConsumption> expected,
+                                          Map<String, ConsumptionStore.ProductConsumption> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String code : expected.keySet()) {
+            assertEquals(new TreeMap<>(expected.get(code).getDailyTotals()), actual.get(code).getDailyTotals());
+            assertEquals(new TreeMap<>(expected.get(code).getWeeklyTotals()), actual.get(code).getWeeklyTotals());
+        }
+    }
+}
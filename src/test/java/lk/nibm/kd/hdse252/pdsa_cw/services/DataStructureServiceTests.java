@@ -0,0 +1,341 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.entities.LinkedListNode;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.RestockRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataStructureServiceTests {
+
+    private static final int WRITERS = 8;
+    private static final int PRODUCTS_PER_WRITER = 2_000;
+
+    @Test
+    void concurrentWritesAreNotLost() throws Exception {
+        DataStructureService service = new DataStructureService();
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        // Readers keep walking the structures while the writers run
+        Future<?> sortedReader = pool.submit(() -> {
+            start.await();
+            while (writing.get()) {
+                assertSorted(service.getSortedFromBST());
+                service.getAllFromArray();
+                service.getRecentItems();
+            }
+            return null;
+        });
+        Future<?> searchReader = pool.submit(() -> {
+            start.await();
+            while (writing.get()) {
+                Product found = service.searchInBST("P0-00000");
+                assertTrue(found == null || found.getProductCode().equals("P0-00000"));
+            }
+            return null;
+        });
+
+        Future<?>[] writers = new Future<?>[WRITERS];
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers[w] = pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < PRODUCTS_PER_WRITER; i++) {
+                    Product product = product((long) writer * PRODUCTS_PER_WRITER + i,
+                            String.format("P%d-%05d", writer, i));
+                    service.addToArray(product);
+                    service.insertIntoBST(product);
+                    service.addToRecentItems(product);
+                    service.enqueueRestockRequest(new RestockRequest(product.getProductCode(),
+                            product.getName(), 10, 1, "HIGH"));
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        sortedReader.get(10, TimeUnit.SECONDS);
+        searchReader.get(10, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        int expected = WRITERS * PRODUCTS_PER_WRITER;
+        assertEquals(expected, service.getAllFromArray().size());
+        assertEquals(expected, service.getRestockQueueSize());
+        assertEquals(expected, service.getAllRestockRequests().size());
+        assertEquals(10, service.getRecentItems().size());
+
+        List<Product> sorted = service.getSortedFromBST();
+        assertEquals(expected, sorted.size());
+        assertSorted(sorted);
+        for (int w = 0; w < WRITERS; w++) {
+            String code = String.format("P%d-%05d", w, PRODUCTS_PER_WRITER - 1);
+            assertEquals(code, service.searchInBST(code).getProductCode());
+        }
+    }
+
+    @Test
+    void concurrentRemovalsKeepTreeConsistent() throws Exception {
+        DataStructureService service = new DataStructureService();
+        int total = WRITERS * PRODUCTS_PER_WRITER;
+        for (int i = 0; i < total; i++) {
+            Product product = product((long) i, String.format("P%06d", i));
+            service.addToArray(product);
+            service.insertIntoBST(product);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+        Future<?>[] removers = new Future<?>[WRITERS];
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            removers[w] = pool.submit(() -> {
+                // Each thread removes the even codes in its own slice
+                for (int i = writer * PRODUCTS_PER_WRITER; i < (writer + 1) * PRODUCTS_PER_WRITER; i += 2) {
+                    service.removeFromBST(String.format("P%06d", i));
+                    service.removeFromArray((long) i);
+                }
+            });
+        }
+        for (Future<?> remover : removers) {
+            remover.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        List<Product> sorted = service.getSortedFromBST();
+        assertEquals(total / 2, sorted.size());
+        assertEquals(total / 2, service.getAllFromArray().size());
+        assertSorted(sorted);
+        assertNull(service.searchInBST("P000000"));
+        assertNotNull(service.searchInBST("P000001"));
+        for (int i = 0; i < total; i++) {
+            Product found = service.findInArray((long) i);
+            if (i % 2 == 0) {
+                assertNull(found);
+            } else {
+                assertEquals(String.format("P%06d", i), found.getProductCode());
+            }
+        }
+    }
+
+    @Test
+    void restockQueueServesMostUrgentFirstAndDeduplicates() {
+        DataStructureService service = new DataStructureService();
+        service.enqueueRestockRequest(restockRequest("P001", "LOW", 0.9));
+        service.enqueueRestockRequest(restockRequest("P002", "MEDIUM", 0.7));
+        service.enqueueRestockRequest(restockRequest("P003", "HIGH", 0.5));
+        service.enqueueRestockRequest(restockRequest("P004", "HIGH", 0.1));
+
+        // P001 is triggered again with a lower stock, so it moves up instead of being added twice
+        service.enqueueRestockRequest(restockRequest("P001", "HIGH", 0.3));
+        service.enqueueRestockRequest(restockRequest("P001", "HIGH", 0.2));
+        assertEquals(4, service.getRestockQueueSize());
+
+        List<String> listed = service.getAllRestockRequests().stream()
+                .map(RestockRequest::getProductCode).toList();
+        assertEquals(List.of("P004", "P001", "P003", "P002"), listed);
+
+        assertEquals("P004", service.peekRestockRequest().getProductCode());
+        for (String code : List.of("P004", "P001", "P003", "P002")) {
+            RestockRequest claimed = service.claimRestockRequest();
+            assertEquals(code, claimed.getProductCode());
+            service.completeRestockRequest(claimed);
+        }
+        assertNull(service.claimRestockRequest());
+        assertEquals(0, service.getRestockQueueSize());
+    }
+
+    @Test
+    void claimedRestockRequestGoesBackUnlessCompleted() {
+        DataStructureService service = new DataStructureService();
+        service.enqueueRestockRequest(restockRequest("P001", "HIGH", 0.1));
+        service.enqueueRestockRequest(restockRequest("P002", "LOW", 0.9));
+
+        RestockRequest claimed = service.claimRestockRequest();
+        assertEquals("P001", claimed.getProductCode());
+        assertEquals(1, service.getRestockQueueSize());
+
+        // The stock update rolled back, so the request is served again
+        service.returnRestockRequest(claimed);
+        assertEquals(2, service.getRestockQueueSize());
+        assertSame(claimed, service.claimRestockRequest());
+        service.completeRestockRequest(claimed);
+        assertEquals("P002", service.peekRestockRequest().getProductCode());
+
+        // A newer request queued while the old one was claimed is kept over it
+        RestockRequest stale = service.claimRestockRequest();
+        RestockRequest newer = restockRequest("P002", "HIGH", 0.2);
+        service.enqueueRestockRequest(newer);
+        service.returnRestockRequest(stale);
+        assertEquals(1, service.getRestockQueueSize());
+        assertSame(newer, service.peekRestockRequest());
+    }
+
+    @Test
+    void recentItemsFollowSaveAndRemoveHooks() {
+        DataStructureService service = new DataStructureService();
+        for (long id = 1; id <= 10; id++) {
+            service.productSaved(product(id, String.format("P%03d", id)));
+        }
+        // A reader still walking the full list keeps all of it when newer items push the oldest out
+        LinkedListNode snapshot = (LinkedListNode) ReflectionTestUtils.getField(service, "recentItemsHead");
+        for (long id = 11; id <= 12; id++) {
+            service.productSaved(product(id, String.format("P%03d", id)));
+        }
+        int snapshotLength = 0;
+        for (LinkedListNode node = snapshot; node != null; node = node.getNext()) {
+            snapshotLength++;
+        }
+        assertEquals(10, snapshotLength);
+        List<Long> recent = service.getRecentItems().stream().map(Product::getId).toList();
+        assertEquals(List.of(12L, 11L, 10L, 9L, 8L, 7L, 6L, 5L, 4L, 3L), recent);
+
+        // Saving an existing product replaces its copy in place instead of moving it to the front
+        Product renamed = product(7L, "P007");
+        renamed.setName("Renamed");
+        service.productSaved(renamed);
+        assertEquals("Renamed", service.getRecentItems().get(5).getName());
+        assertEquals(10, service.getRecentItems().size());
+
+        service.productRemoved(product(12L, "P012"));
+        service.productRemoved(product(7L, "P007"));
+        recent = service.getRecentItems().stream().map(Product::getId).toList();
+        assertEquals(List.of(11L, 10L, 9L, 8L, 6L, 5L, 4L, 3L), recent);
+        assertNull(service.findInArray(12L));
+        assertNull(service.searchInBST("P007"));
+    }
+
+    @Test
+    void olderCopyArrivingLateIsIgnored() {
+        DataStructureService service = new DataStructureService();
+        Product first = product(1L, "P001");
+        first.setVersion(0L);
+        service.productSaved(first);
+        Product older = product(1L, "P001");
+        older.setVersion(1L);
+        older.setName("Older");
+        Product newer = product(1L, "P001");
+        newer.setVersion(2L);
+        newer.setName("Newer");
+
+        // The second commit's callback runs first
+        service.productSaved(newer);
+        service.productSaved(older);
+        assertEquals("Newer", service.findInArray(1L).getName());
+        assertEquals("Newer", service.searchInBST("P001").getName());
+        assertEquals("Newer", service.getRecentItems().get(0).getName());
+
+        // The same version again is applied, e.g. a reload of the committed row
+        Product reloaded = product(1L, "P001");
+        reloaded.setVersion(2L);
+        reloaded.setName("Reloaded");
+        service.productSaved(reloaded);
+        assertEquals("Reloaded", service.findInArray(1L).getName());
+    }
+
+    @Test
+    void deletedProductLeavesTheRestockQueue(@TempDir Path directory) throws Exception {
+        RestockJournal journal = new RestockJournal();
+        ReflectionTestUtils.setField(journal, "journalPath", directory.resolve("restock.journal").toString());
+        journal.open();
+        DataStructureService service = new DataStructureService();
+        ReflectionTestUtils.setField(service, "restockJournal", journal);
+
+        String[] priorities = {"HIGH", "MEDIUM", "LOW"};
+        for (int i = 1; i <= 9; i++) {
+            service.enqueueRestockRequest(restockRequest("P00" + i, priorities[i % 3], i / 10.0));
+        }
+        service.productRemoved(product(3L, "P003"));
+        service.productRemoved(product(5L, "P005"));
+        // Not queued, nothing to remove
+        service.productRemoved(product(42L, "P042"));
+
+        List<String> expected = List.of("P006", "P009", "P001", "P004", "P007", "P002", "P008");
+        assertEquals(expected, service.getAllRestockRequests().stream().map(RestockRequest::getProductCode).toList());
+        // The heap stays ordered after removals from the middle
+        for (String code : expected) {
+            assertEquals(code, service.claimRestockRequest().getProductCode());
+        }
+        assertNull(service.claimRestockRequest());
+        journal.close();
+
+        // Claims are not journaled, the removals are, so only the deleted products are gone after a restart
+        RestockJournal reopened = new RestockJournal();
+        ReflectionTestUtils.setField(reopened, "journalPath", directory.resolve("restock.journal").toString());
+        reopened.open();
+        assertEquals(List.of("P001", "P002", "P004", "P006", "P007", "P008", "P009"),
+                reopened.replay().stream().map(RestockRequest::getProductCode).toList());
+        reopened.close();
+    }
+
+    @Test
+    void restockRequestIsNotQueuedWhenItsJournalWriteFails(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("restock.journal");
+        RestockJournal journal = new RestockJournal();
+        ReflectionTestUtils.setField(journal, "journalPath", file.toString());
+        ReflectionTestUtils.setField(journal, "retryDelayMs", 20L);
+        journal.open();
+        DataStructureService service = new DataStructureService();
+        ReflectionTestUtils.setField(service, "restockJournal", journal);
+
+        FileChannel closed = FileChannel.open(file, StandardOpenOption.READ);
+        closed.close();
+        FileChannel channel = RestockJournalTests.swapChannel(journal, closed);
+        assertThrows(UncheckedIOException.class,
+                () -> service.enqueueRestockRequest(restockRequest("P001", "HIGH", 0.1)));
+        assertEquals(0, service.getRestockQueueSize());
+
+        // The journal keeps working, and the retried write ends with the request removed as in the heap
+        RestockJournalTests.swapChannel(journal, channel);
+        service.enqueueRestockRequest(restockRequest("P002", "LOW", 0.9));
+        assertEquals(List.of("P002"), service.getAllRestockRequests().stream()
+                .map(RestockRequest::getProductCode).toList());
+        journal.close();
+
+        RestockJournal reopened = new RestockJournal();
+        ReflectionTestUtils.setField(reopened, "journalPath", file.toString());
+        reopened.open();
+        assertEquals(List.of("P002"), reopened.replay().stream().map(RestockRequest::getProductCode).toList());
+        reopened.close();
+    }
+
+    private static RestockRequest restockRequest(String code, String priority, double stockRatio) {
+        RestockRequest request = new RestockRequest(code, "Product " + code, 10, 1, priority);
+        request.setStockRatio(stockRatio);
+        return request;
+    }
+
+    private static Product product(Long id, String code) {
+        Product product = new Product();
+        product.setId(id);
+        product.setProductCode(code);
+        product.setName("Product " + code);
+        return product;
+    }
+
+    private static void assertSorted(List<Product> products) {
+        for (int i = 1; i < products.size(); i++) {
+            assertTrue(products.get(i - 1).getProductCode()
+                    .compareToIgnoreCase(products.get(i).getProductCode()) < 0);
+        }
+    }
+}
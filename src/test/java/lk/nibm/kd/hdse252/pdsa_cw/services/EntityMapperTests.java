@@ -0,0 +1,160 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.dto.CustomerDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.PurchaseOrderDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.SalesOrderDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.SupplierDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.UserDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Customer;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.PurchaseOrder;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.PurchaseOrderItem;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.SalesOrder;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.SalesOrderItem;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Supplier;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.User;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityMapperTests {
+
+    // Field types filled and compared by name, nested objects and lists are checked separately
+    private static final Set<Class<?>> SIMPLE_TYPES = Set.of(String.class, Long.class, Integer.class, Double.class,
+            Boolean.class, LocalDateTime.class);
+
+    private final EntityMapper mapper = new EntityMapper();
+    private int nextValue = 1;
+
+    @Test
+    void everyFieldWithTheSameNameIsCopied() throws Exception {
+        Product product = product();
+        ProductDTO productDTO = mapper.toProductDTO(product);
+        assertSameNamedFieldsEqual(product, productDTO);
+        // Backward compatible aliases follow the current columns
+        assertEquals(product.getSellingPrice(), productDTO.getPrice());
+        assertEquals(product.getStock(), productDTO.getStockQuantity());
+
+        Customer customer = filled(new Customer());
+        assertSameNamedFieldsEqual(customer, mapper.toCustomerDTO(customer));
+        CustomerDTO customerDTO = filled(new CustomerDTO());
+        assertSameNamedFieldsEqual(customerDTO, mapper.toCustomer(customerDTO));
+
+        Supplier supplier = filled(new Supplier());
+        assertSameNamedFieldsEqual(supplier, mapper.toSupplierDTO(supplier));
+        SupplierDTO supplierDTO = filled(new SupplierDTO());
+        assertSameNamedFieldsEqual(supplierDTO, mapper.toSupplier(supplierDTO));
+
+        User user = filled(new User());
+        assertSameNamedFieldsEqual(user, mapper.toUserDTO(user));
+        UserDTO userDTO = filled(new UserDTO());
+        assertSameNamedFieldsEqual(userDTO, mapper.toUser(userDTO));
+    }
+
+    @Test
+    void ordersAreMappedWithTheirItems() throws Exception {
+        SalesOrder salesOrder = filled(new SalesOrder());
+        salesOrder.setCustomer(filled(new Customer()));
+        for (int i = 0; i < 3; i++) {
+            SalesOrderItem item = filled(new SalesOrderItem());
+            item.setSalesOrder(salesOrder);
+            item.setProduct(product());
+            salesOrder.getItems().add(item);
+        }
+        SalesOrderDTO salesOrderDTO = mapper.toSalesOrderDTO(salesOrder);
+        assertSameNamedFieldsEqual(salesOrder, salesOrderDTO);
+        assertEquals(salesOrder.getCustomer().getId(), salesOrderDTO.getCustomerId());
+        assertSameNamedFieldsEqual(salesOrder.getCustomer(), salesOrderDTO.getCustomer());
+        assertEquals(3, salesOrderDTO.getItems().size());
+        for (int i = 0; i < 3; i++) {
+            SalesOrderItem item = salesOrder.getItems().get(i);
+            assertSameNamedFieldsEqual(item, salesOrderDTO.getItems().get(i));
+            assertEquals(salesOrder.getId(), salesOrderDTO.getItems().get(i).getSalesOrderId());
+            assertEquals(item.getProduct().getId(), salesOrderDTO.getItems().get(i).getProductId());
+        }
+
+        PurchaseOrder purchaseOrder = filled(new PurchaseOrder());
+        purchaseOrder.setSupplier(filled(new Supplier()));
+        PurchaseOrderItem purchaseItem = filled(new PurchaseOrderItem());
+        purchaseItem.setPurchaseOrder(purchaseOrder);
+        purchaseItem.setProduct(product());
+        purchaseOrder.setItems(List.of(purchaseItem));
+        PurchaseOrderDTO purchaseOrderDTO = mapper.toPurchaseOrderDTO(purchaseOrder);
+        assertSameNamedFieldsEqual(purchaseOrder, purchaseOrderDTO);
+        assertEquals(purchaseOrder.getSupplier().getId(), purchaseOrderDTO.getSupplierId());
+        assertSameNamedFieldsEqual(purchaseOrder.getSupplier(), purchaseOrderDTO.getSupplier());
+        assertSameNamedFieldsEqual(purchaseItem, purchaseOrderDTO.getItems().get(0));
+        assertEquals(purchaseOrder.getId(), purchaseOrderDTO.getItems().get(0).getPurchaseOrderId());
+        assertSameNamedFieldsEqual(purchaseItem.getProduct(), purchaseOrderDTO.getItems().get(0).getProduct());
+
+        // An order without an item list maps to one without items
+        salesOrder.setItems(null);
+        assertNull(mapper.toSalesOrderDTO(salesOrder).getItems());
+    }
+
+    /**
+     * A product as persisted, where the legacy columns mirror the current ones
+     */
+    private Product product() throws IllegalAccessException {
+        Product product = filled(new Product());
+        product.setPrice(product.getSellingPrice());
+        product.setStockQuantityLegacy(product.getStock());
+        return product;
+    }
+
+    /**
+     * Set every simple field to a value no other field holds
+     */
+    private <T> T filled(T target) throws IllegalAccessException {
+        for (Field field : target.getClass().getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || !SIMPLE_TYPES.contains(field.getType())) {
+                continue;
+            }
+            int value = nextValue++;
+            field.setAccessible(true);
+            Class<?> type = field.getType();
+            if (type == String.class) {
+                field.set(target, field.getName() + "-" + value);
+            } else if (type == Long.class) {
+                field.set(target, (long) value);
+            } else if (type == Integer.class) {
+                field.set(target, value);
+            } else if (type == Double.class) {
+                field.set(target, value + 0.5);
+            } else if (type == Boolean.class) {
+                field.set(target, value % 2 == 0);
+            } else {
+                field.set(target, LocalDateTime.of(2026, 1, 1, 0, 0).plusMinutes(value));
+            }
+        }
+        return target;
+    }
+
+    private static void assertSameNamedFieldsEqual(Object source, Object target) throws Exception {
+        for (Field targetField : target.getClass().getDeclaredFields()) {
+            if (Modifier.isStatic(targetField.getModifiers()) || !SIMPLE_TYPES.contains(targetField.getType())) {
+                continue;
+            }
+            Field sourceField;
+            try {
+                sourceField = source.getClass().getDeclaredField(targetField.getName());
+            } catch (NoSuchFieldException e) {
+                continue;
+            }
+            if (sourceField.getType() != targetField.getType()) {
+                continue;
+            }
+            sourceField.setAccessible(true);
+            targetField.setAccessible(true);
+            assertEquals(sourceField.get(source), targetField.get(target),
+                    target.getClass().getSimpleName() + "." + targetField.getName());
+        }
+    }
+}
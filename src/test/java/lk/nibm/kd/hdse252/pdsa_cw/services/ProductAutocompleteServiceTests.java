@@ -0,0 +1,188 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.RadixTrieNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductAutocompleteServiceTests {
+
+    private static final Comparator<String> KEY_ORDER = Comparator.comparingInt(String::length)
+            .thenComparing(Comparator.naturalOrder());
+
+    @Test
+    void shorterKeysComeFirstThenAlphabetical() {
+        ProductAutocompleteService service = new ProductAutocompleteService();
+        service.loadAll(List.of(
+                product(1L, "X1", "Teakwood"),
+                product(2L, "X2", "Teaspoon"),
+                product(3L, "X3", "Teak"),
+                product(4L, "X4", "Tea"),
+                product(5L, "X5", "Teal")));
+
+        // Depth-first order would give tea, teak, teakwood, teal, teaspoon
+        assertEquals(List.of(4L, 3L, 5L, 1L, 2L), service.findByPrefix("te", 10));
+        assertEquals(List.of(4L, 3L), service.findByPrefix("TE", 2));
+        // The prefix ends inside the "akwood" edge
+        assertEquals(List.of(1L), service.findByPrefix("teakw", 10));
+        assertEquals(List.of(), service.findByPrefix("teb", 10));
+    }
+
+    @Test
+    void olderCopyArrivingLateIsIgnored() {
+        ProductAutocompleteService service = new ProductAutocompleteService();
+        service.loadAll(List.of());
+        Product older = product(1L, "X1", "Teak Bowl");
+        older.setVersion(1L);
+        Product newer = product(1L, "X1", "Mahogany Bowl");
+        newer.setVersion(2L);
+
+        service.productSaved(newer);
+        service.productSaved(older);
+        assertEquals(List.of(), service.findByPrefix("teak", 10));
+        assertEquals(List.of(1L), service.findByPrefix("mahog", 10));
+    }
+
+    @Test
+    void removingKeysMergesTheEdgesBackTogether() {
+        ProductAutocompleteService service = new ProductAutocompleteService();
+        service.loadAll(List.of(
+                product(1L, "X1", "Tea"),
+                product(2L, "X2", "Teak"),
+                product(3L, "X3", "Teal")));
+        RadixTrieNode tea = root(service).getChildren().get('t');
+        assertEquals("tea", tea.getLabel());
+        assertEquals(Set.of('k', 'l'), tea.getChildren().keySet());
+
+        // "tea" still branches, so it stays even without products of its own
+        service.productRemoved(product(1L, "X1", "Tea"));
+        assertEquals("tea", root(service).getChildren().get('t').getLabel());
+        assertEquals(List.of(2L, 3L), service.findByPrefix("tea", 10));
+
+        // Left with one child and no products, the node is merged into it
+        service.productRemoved(product(3L, "X3", "Teal"));
+        RadixTrieNode teak = root(service).getChildren().get('t');
+        assertEquals("teak", teak.getLabel());
+        assertTrue(teak.getChildren().isEmpty());
+        assertEquals(List.of(2L), service.findByPrefix("te", 10));
+
+        // Renaming replaces the old keys
+        service.productSaved(product(2L, "X2", "Oak"));
+        assertEquals(List.of(), service.findByPrefix("teak", 10));
+        assertEquals(List.of(2L), service.findByPrefix("oa", 10));
+        assertEquals(Set.of('o', 'x'), root(service).getChildren().keySet());
+    }
+
+    @Test
+    void randomSavesAndRemovesMatchAPlainScan() {
+        Random random = new Random(42);
+        String[] syllables = {"te", "a", "k", "ta", "l", "ble", "o", "ak"};
+        ProductAutocompleteService service = new ProductAutocompleteService();
+        service.loadAll(List.of());
+        Map<Long, Product> live = new HashMap<>();
+
+        for (int step = 0; step < 2000; step++) {
+            long id = 1 + random.nextInt(40);
+            if (random.nextInt(4) == 0) {
+                Product removed = live.remove(id);
+                if (removed != null) {
+                    service.productRemoved(removed);
+                }
+            } else {
+                String name = word(random, syllables) + " " + word(random, syllables);
+                Product product = product(id, "C" + id, name);
+                live.put(id, product);
+                service.productSaved(product);
+            }
+
+            String prefix = word(random, syllables);
+            prefix = prefix.substring(0, Math.min(prefix.length(), 1 + random.nextInt(4)));
+            // Each product's best key for the prefix: shortest, then alphabetical
+            Map<Long, String> bestKeys = new HashMap<>();
+            for (Product product : live.values()) {
+                for (String key : (product.getProductCode() + " " + product.getName()).toLowerCase().split(" ")) {
+                    if (key.startsWith(prefix)) {
+                        bestKeys.merge(product.getId(), key, (a, b) -> KEY_ORDER.compare(a, b) <= 0 ? a : b);
+                    }
+                }
+            }
+            int limit = 1 + random.nextInt(8);
+            List<Long> found = service.findByPrefix(prefix, limit);
+            assertEquals(Math.min(limit, bestKeys.size()), found.size(), prefix);
+            for (int i = 0; i < found.size(); i++) {
+                assertTrue(bestKeys.containsKey(found.get(i)), prefix);
+                if (i > 0) {
+                    assertTrue(KEY_ORDER.compare(bestKeys.get(found.get(i - 1)), bestKeys.get(found.get(i))) <= 0);
+                }
+            }
+            // Nothing left out ranks before the last result
+            if (!found.isEmpty()) {
+                String last = bestKeys.get(found.get(found.size() - 1));
+                for (Map.Entry<Long, String> entry : bestKeys.entrySet()) {
+                    if (!found.contains(entry.getKey())) {
+                        assertTrue(KEY_ORDER.compare(entry.getValue(), last) >= 0, prefix);
+                    }
+                }
+            }
+            assertShortestKeyLengths(root(service), 0);
+        }
+    }
+
+    @Test
+    void sequentialCodesComeOutInOrder() {
+        ProductAutocompleteService service = new ProductAutocompleteService();
+        List<Product> products = new ArrayList<>();
+        for (long id = 1; id <= 100_000; id++) {
+            products.add(product(id, String.format("P%06d", id), "Mask"));
+        }
+        service.loadAll(products);
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), service.findByPrefix("p", 5));
+        assertEquals(List.of(100_000L), service.findByPrefix("p1", 5));
+        assertEquals(List.of(42_010L, 42_011L, 42_012L), service.findByPrefix("p04201", 3));
+        // The name key is shorter than every code
+        assertEquals(List.of(1L, 2L), service.findByPrefix("m", 2));
+    }
+
+    /**
+     * Check every node's shortest key length against its subtree, returns the subtree's shortest key length
+     */
+    private static int assertShortestKeyLengths(RadixTrieNode node, int keyLength) {
+        int shortest = node.getProductIds().isEmpty() ? Integer.MAX_VALUE : keyLength;
+        for (RadixTrieNode child : node.getChildren().values()) {
+            shortest = Math.min(shortest, assertShortestKeyLengths(child, keyLength + child.getLabel().length()));
+        }
+        assertEquals(shortest, node.getShortestKeyLength());
+        return shortest;
+    }
+
+    private static RadixTrieNode root(ProductAutocompleteService service) {
+        return (RadixTrieNode) ReflectionTestUtils.getField(service, "root");
+    }
+
+    private static String word(Random random, String[] syllables) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0, count = 1 + random.nextInt(3); i < count; i++) {
+            word.append(syllables[random.nextInt(syllables.length)]);
+        }
+        return word.toString();
+    }
+
+    private static Product product(Long id, String code, String name) {
+        Product product = new Product();
+        product.setId(id);
+        product.setProductCode(code);
+        product.setName(name);
+        return product;
+    }
+}
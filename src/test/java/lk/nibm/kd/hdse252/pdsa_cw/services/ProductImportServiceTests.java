@@ -0,0 +1,172 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.config.CatalogIndexLoader;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductImportResultDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductImportResultDTO.ImportRowErrorDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.RestockRequest;
+import lk.nibm.kd.hdse252.pdsa_cw.repositories.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductImportServiceTests {
+
+    private static final String HEADER = "productCode,name,description,category,itemType,woodType,finishedType,"
+            + "isCarved,cost,sellingPrice,stock,minStockLevel,dimensions,weight";
+
+    private final List<Product> inserted = new ArrayList<>();
+    private final AtomicInteger reloads = new AtomicInteger();
+    private final DataStructureService dataStructureService = new DataStructureService();
+    private final ProductImportService service = importService(Set.of("EXIST"));
+
+    @Test
+    void csvFieldsAreParsedPerRfc4180() throws IOException {
+        String csv = "\uFEFFProductCode,NAME,Description,category,itemType,woodType,finishedType,"
+                + "isCarved,cost,sellingPrice,stock,minStockLevel,dimensions,weight,notes\n"
+                + "P001,\"Chair, carved\",\"Says \"\"hello\"\"\nover two lines\",Furniture,Chair,Teak,Polished,"
+                + "true,100,200,2,5,1x1,3.5,not a field\r\n"
+                + "\r\n"
+                + "P002,Table,,Furniture,Table,Teak,Polished,false,100,abc,10,5,1x1,3.5\n"
+                + "P003,Stool,,Furniture,Stool,Teak,Polished,false,100,150,10,5,  ,3.5\n"
+                + "P001,Again,,Furniture,Chair,Teak,Polished,false,100,150,10,5,1x1,3.5\n"
+                + "EXIST,Old,,Furniture,Chair,Teak,Polished,false,100,150,10,5,1x1,3.5\n"
+                + "P004,Bench,,Furniture,Bench,Teak,Polished,false,100,150,10,5,1x1,3.5";
+
+        ProductImportResultDTO result = service.importProducts(stream(csv), "csv");
+
+        assertEquals(6, result.getTotalRows());
+        assertEquals(2, result.getImported());
+        assertEquals(4, result.getFailed());
+        List<ImportRowErrorDTO> errors = result.getChunks().get(0).getErrors();
+        assertEquals(List.of(2, 3, 4, 5), errors.stream().map(ImportRowErrorDTO::getRow).toList());
+        assertTrue(errors.get(0).getMessage().startsWith("Invalid value"));
+        assertEquals("Missing required field: dimensions", errors.get(1).getMessage());
+        assertEquals("Duplicate product code in file", errors.get(2).getMessage());
+        assertEquals("Product with code EXIST already exists", errors.get(3).getMessage());
+
+        Product chair = inserted.get(0);
+        assertEquals("P001", chair.getProductCode());
+        assertEquals("Chair, carved", chair.getName());
+        assertEquals("Says \"hello\"\nover two lines", chair.getDescription());
+        assertEquals(200.0, chair.getSellingPrice());
+        assertEquals(true, chair.getIsCarved());
+        assertEquals("P004", inserted.get(1).getProductCode());
+        assertEquals(1, reloads.get());
+        // Stock 2 is at or below the minimum of 5
+        assertEquals(List.of("P001"), dataStructureService.getAllRestockRequests().stream()
+                .map(RestockRequest::getProductCode).toList());
+    }
+
+    @Test
+    void ndjsonRowsAreReadLineByLineInChunks() throws IOException {
+        StringBuilder ndjson = new StringBuilder();
+        int rows = ProductImportService.CHUNK_SIZE + 500;
+        for (int i = 1; i <= rows; i++) {
+            if (i == 700) {
+                ndjson.append("{\"productCode\": \"BROKEN\", \n");
+            } else {
+                ndjson.append(String.format("{\"productCode\":\"N%05d\",\"name\":\"Item\",\"category\":\"Decor\","
+                        + "\"itemType\":\"Mask\",\"woodType\":\"Ebony\",\"finishedType\":\"Raw\",\"isCarved\":true,"
+                        + "\"cost\":1,\"sellingPrice\":2,\"stock\":20,\"minStockLevel\":1,\"dimensions\":\"1\","
+                        + "\"weight\":1,\"unknown\":\"ignored\"}%n", i));
+            }
+            if (i % 400 == 0) {
+                ndjson.append("   \n");
+            }
+        }
+
+        ProductImportResultDTO result = service.importProducts(stream(ndjson.toString()), "ndjson");
+
+        assertEquals(rows, result.getTotalRows());
+        assertEquals(rows - 1, result.getImported());
+        assertEquals(2, result.getChunks().size());
+        assertEquals(ProductImportService.CHUNK_SIZE + 1, result.getChunks().get(1).getFirstRow());
+        assertEquals(500, result.getChunks().get(1).getRows());
+        ImportRowErrorDTO broken = result.getChunks().get(0).getErrors().get(0);
+        assertEquals(700, broken.getRow());
+        assertTrue(broken.getMessage().startsWith("Invalid JSON"));
+        assertEquals(rows - 1, inserted.size());
+        assertEquals(0, dataStructureService.getRestockQueueSize());
+    }
+
+    @Test
+    void emptyInputAndUnknownFormat() throws IOException {
+        ProductImportResultDTO result = service.importProducts(stream(HEADER + "\n\n"), "csv");
+        assertEquals(0, result.getTotalRows());
+        assertTrue(result.getChunks().isEmpty());
+        assertEquals(0, reloads.get());
+        assertThrows(IllegalArgumentException.class, () -> service.importProducts(stream(""), "xml"));
+    }
+
+    private ProductImportService importService(Set<String> existingCodes) {
+        ProductRepository repository = (ProductRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {ProductRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findExistingProductCodes" -> ((Collection<?>) args[0]).stream()
+                            .filter(existingCodes::contains).toList();
+                    case "insertAll" -> {
+                        for (Object product : (List<?>) args[0]) {
+                            inserted.add((Product) product);
+                        }
+                        yield null;
+                    }
+                    case "findAll" -> {
+                        reloads.incrementAndGet();
+                        yield new ArrayList<>(inserted);
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        CatalogIndexLoader loader = new CatalogIndexLoader();
+        ReflectionTestUtils.setField(loader, "productRepository", repository);
+        ReflectionTestUtils.setField(loader, "catalogIndexes", List.of());
+
+        ProductImportService importService = new ProductImportService();
+        ReflectionTestUtils.setField(importService, "productRepository", repository);
+        ReflectionTestUtils.setField(importService, "dataStructureService", dataStructureService);
+        ReflectionTestUtils.setField(importService, "catalogIndexLoader", loader);
+        ReflectionTestUtils.setField(importService, "objectMapper", Jackson2ObjectMapperBuilder.json().build());
+        ReflectionTestUtils.setField(importService, "transactionManager", new NoOpTransactionManager());
+        return importService;
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Runs the chunk callbacks without a database
+     */
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
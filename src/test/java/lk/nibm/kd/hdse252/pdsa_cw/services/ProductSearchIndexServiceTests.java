@@ -0,0 +1,217 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.dto.FacetResultDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductSearchDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductSearchIndexServiceTests {
+
+    @Test
+    void wordMatchesInsideLongerWords() {
+        ProductSearchIndexService service = new ProductSearchIndexService();
+        service.loadAll(List.of(
+                product(1L, "WC001", "Mahogany Bed", "Furniture", "Mahogany", 35000.0, 5),
+                product(2L, "WC002", "Yoga Stool", "Furniture", "Teak", 4000.0, 8),
+                product(3L, "WC003", "Buddha Statue", "Statues", "Teak", 15000.0, 25)));
+
+        // Prefix and infix matches, like the LIKE %term% search did
+        assertEquals(List.of(1L, 2L), idsOf(service.search(criteria("oga"))));
+        assertEquals(List.of(3L), idsOf(service.search(criteria("budd"))));
+        assertEquals(List.of(3L), idsOf(service.search(criteria("ddh"))));
+        // Too short to look inside words, so only prefixes count
+        assertEquals(List.of(), idsOf(service.search(criteria("ga"))));
+
+        // New words are added to the gram index as products are saved
+        service.productSaved(product(4L, "WC004", "Yogurt Bowl", "Kitchen", "Teak", 900.0, 40));
+        assertEquals(List.of(4L), idsOf(service.search(criteria("gur"))));
+        assertEquals(List.of(1L, 2L), idsOf(service.search(criteria("oga"))));
+        assertEquals(List.of(2L, 4L), idsOf(service.search(criteria("yog"))));
+    }
+
+    @Test
+    void priceRangesStayExactWithManyEqualPrices() {
+        ProductSearchIndexService service = new ProductSearchIndexService();
+        Random random = new Random(42);
+        Map<Long, Product> catalog = new HashMap<>();
+        List<Product> initial = new ArrayList<>();
+        for (long id = 1; id <= 500; id++) {
+            // Few distinct prices, so most documents share theirs with many others
+            Product product = product(id, "C" + id, "Item " + id, "Furniture", "Teak", 1000.0 * random.nextInt(5), 1);
+            catalog.put(id, product);
+            initial.add(product);
+        }
+        service.loadAll(initial);
+
+        for (int step = 0; step < 2000; step++) {
+            long id = 1 + random.nextInt(600);
+            if (random.nextInt(3) == 0) {
+                Product removed = catalog.remove(id);
+                if (removed != null) {
+                    service.productRemoved(removed);
+                }
+            } else {
+                Product saved = product(id, "C" + id, "Item " + id, "Furniture", "Teak", 1000.0 * random.nextInt(5), 1);
+                catalog.put(id, saved);
+                service.productSaved(saved);
+            }
+        }
+
+        for (double min = 0; min <= 4000; min += 1000) {
+            ProductSearchDTO criteria = new ProductSearchDTO();
+            criteria.setMinPrice(min);
+            criteria.setMaxPrice(min + 1000);
+            double low = min;
+            List<Long> expected = catalog.values().stream()
+                    .filter(p -> p.getSellingPrice() >= low && p.getSellingPrice() <= low + 1000)
+                    .map(Product::getId).sorted().toList();
+            assertEquals(expected, idsOf(service.search(criteria)));
+        }
+    }
+
+    @Test
+    void blankFilterValuesAreIgnored() {
+        ProductSearchIndexService service = new ProductSearchIndexService();
+        Product unnamedCategory = product(1L, "WC001", "Plain Box", "Furniture", "Teak", 100.0, 1);
+        unnamedCategory.setCategory("");
+        service.loadAll(List.of(unnamedCategory, product(2L, "WC002", "Carved Box", "Decor", "Teak", 200.0, 1)));
+
+        ProductSearchDTO criteria = criteria("   ");
+        criteria.setCategory("  ");
+        criteria.setWoodType(" ");
+        assertEquals(List.of(1L, 2L), idsOf(service.search(criteria)));
+    }
+
+    @Test
+    void nameMatchesOutrankDescriptionMatches() {
+        ProductSearchIndexService service = new ProductSearchIndexService();
+        Product inDescription = product(1L, "WC001", "Dining Table", "Furniture", "Teak", 100.0, 1);
+        inDescription.setDescription("Solid teak with a carved rim");
+        Product inName = product(2L, "WC002", "Teak Bowl", "Kitchen", "Teak", 100.0, 1);
+        Product inLongName = product(3L, "WC003", "Teak Bowl With Handles And Carved Rim", "Kitchen", "Teak", 100.0, 1);
+        service.loadAll(List.of(inDescription, inName, inLongName));
+
+        // Same frequency in a shorter document scores higher, the description counts once
+        assertEquals(List.of(2L, 3L, 1L), service.search(criteria("teak")).stream().map(Product::getId).toList());
+
+        // AND needs every word, OR any of them, best match first
+        assertEquals(List.of(3L, 1L), service.search(criteria("carved rim")).stream().map(Product::getId).toList());
+        ProductSearchDTO either = criteria("bowl dining");
+        either.setSearchMode("OR");
+        assertEquals(List.of(1L, 2L, 3L), idsOf(service.search(either)));
+        assertEquals(List.of(), service.search(criteria("bowl dining")));
+
+        // A removed document no longer matches and no longer counts towards the document frequency
+        service.productRemoved(inName);
+        assertEquals(List.of(3L, 1L), service.search(criteria("teak")).stream().map(Product::getId).toList());
+    }
+
+    @Test
+    void olderCopyArrivingLateIsIgnored() {
+        ProductSearchIndexService service = new ProductSearchIndexService();
+        Product older = product(1L, "WC001", "Teak Bowl", "Kitchen", "Teak", 100.0, 1);
+        older.setVersion(1L);
+        Product newer = product(1L, "WC001", "Mahogany Bowl", "Kitchen", "Mahogany", 100.0, 1);
+        newer.setVersion(2L);
+        service.loadAll(List.of());
+
+        service.productSaved(newer);
+        service.productSaved(older);
+        assertEquals(List.of(), service.search(criteria("teak")));
+        assertEquals(List.of(1L), idsOf(service.search(criteria("mahogany"))));
+    }
+
+    @Test
+    void facetCountsFollowFiltersAndUpdates() {
+        ProductSearchIndexService service = new ProductSearchIndexService();
+        Random random = new Random(7);
+        String[] categories = {"Furniture", "Decor", "Kitchen"};
+        String[] woodTypes = {"Teak", "Mahogany", "Ebony", "Jak"};
+        Map<Long, Product> catalog = new LinkedHashMap<>();
+        List<Product> initial = new ArrayList<>();
+        for (long id = 1; id <= 300; id++) {
+            Product product = product(id, "C" + id, (id % 2 == 0 ? "Carved " : "Plain ") + "Item",
+                    categories[random.nextInt(3)], woodTypes[random.nextInt(4)], 2000.0 * random.nextInt(40), 1);
+            catalog.put(id, product);
+            initial.add(product);
+        }
+        service.loadAll(initial);
+        for (int step = 0; step < 500; step++) {
+            long id = 1 + random.nextInt(350);
+            if (random.nextInt(4) == 0) {
+                Product removed = catalog.remove(id);
+                if (removed != null) {
+                    service.productRemoved(removed);
+                }
+            } else {
+                Product saved = product(id, "C" + id, (random.nextBoolean() ? "Carved " : "Plain ") + "Item",
+                        categories[random.nextInt(3)], woodTypes[random.nextInt(4)], 2000.0 * random.nextInt(40), 1);
+                catalog.put(id, saved);
+                service.productSaved(saved);
+            }
+        }
+
+        ProductSearchDTO criteria = criteria("carved");
+        criteria.setCategory("furniture");
+        FacetResultDTO facets = new FacetResultDTO();
+        List<Product> results = service.search(criteria, facets);
+
+        List<Product> expected = catalog.values().stream()
+                .filter(p -> p.getName().startsWith("Carved") && p.getCategory().equals("Furniture"))
+                .toList();
+        assertEquals(idsOf(expected), idsOf(results));
+        assertEquals(expected.size(), facets.getTotal());
+        assertEquals(Map.of("Furniture", expected.size()), facets.getCategories());
+        Map<String, Integer> woodTypeCounts = new HashMap<>();
+        Map<String, Integer> priceCounts = new HashMap<>();
+        for (Product product : expected) {
+            woodTypeCounts.merge(product.getWoodType(), 1, Integer::sum);
+            double price = product.getSellingPrice();
+            String bucket = price < 5000 ? "0 - 5,000" : price < 10000 ? "5,000 - 10,000"
+                    : price < 25000 ? "10,000 - 25,000" : price < 50000 ? "25,000 - 50,000" : "50,000+";
+            priceCounts.merge(bucket, 1, Integer::sum);
+        }
+        assertEquals(woodTypeCounts, facets.getWoodTypes());
+        // Most common first
+        List<Integer> counts = new ArrayList<>(facets.getWoodTypes().values());
+        for (int i = 1; i < counts.size(); i++) {
+            assertTrue(counts.get(i - 1) >= counts.get(i));
+        }
+        facets.getPriceRanges().values().removeIf(count -> count == 0);
+        assertEquals(priceCounts, facets.getPriceRanges());
+    }
+
+    private static ProductSearchDTO criteria(String searchTerm) {
+        ProductSearchDTO criteria = new ProductSearchDTO();
+        criteria.setSearchTerm(searchTerm);
+        return criteria;
+    }
+
+    private static List<Long> idsOf(List<Product> products) {
+        return products.stream().map(Product::getId).sorted().toList();
+    }
+
+    private static Product product(Long id, String code, String name, String category, String woodType,
+                                   double price, int stock) {
+        Product product = new Product();
+        product.setId(id);
+        product.setProductCode(code);
+        product.setName(name);
+        product.setCategory(category);
+        product.setWoodType(woodType);
+        product.setItemType("Item");
+        product.setFinishedType("Polished");
+        product.setSellingPrice(price);
+        product.setStock(stock);
+        return product;
+    }
+}
@@ -0,0 +1,161 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductListItem;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.ProductPageDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.dto.RestockRequestDTO;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import lk.nibm.kd.hdse252.pdsa_cw.entities.RestockRequest;
+import lk.nibm.kd.hdse252.pdsa_cw.repositories.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductServiceTests {
+
+    // Product code -> id, codes chosen so string order differs from id order
+    private final TreeMap<String, Long> catalog = new TreeMap<>();
+    private final ProductService service = new ProductService();
+    private final DataStructureService dataStructureService = new DataStructureService();
+    private final List<Map<Long, Integer>> adjustments = new ArrayList<>();
+
+    ProductServiceTests() {
+        String[] codes = {"A10", "A9", "B:1", "B:10", "Ähnlich", "C", "a1", "Z", "M-1", "M_1", "0", "ÿ"};
+        for (int i = 0; i < codes.length; i++) {
+            catalog.put(codes[i], (long) (codes.length - i) * 3);
+        }
+        ReflectionTestUtils.setField(service, "productRepository", repository());
+        ReflectionTestUtils.setField(service, "dataStructureService", dataStructureService);
+        ReflectionTestUtils.setField(service, "stockAdjustmentService", new StockAdjustmentService() {
+            @Override
+            public List<Product> adjustStock(Map<Long, Integer> deltas) {
+                adjustments.add(deltas);
+                return List.of();
+            }
+        });
+    }
+
+    @Test
+    void pagesWalkTheWholeCatalogOnceInOrder() {
+        for (int size = 1; size <= catalog.size() + 1; size++) {
+            assertEquals(new ArrayList<>(catalog.keySet()), walk("productCode", size));
+            List<String> byId = catalog.entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue())
+                    .map(Map.Entry::getKey)
+                    .toList();
+            assertEquals(byId, walk("id", size));
+        }
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        ProductPageDTO page = service.getProductPage("productCode", null, catalog.size());
+        assertEquals(catalog.size(), page.getItems().size());
+        assertNull(page.getNextCursor());
+
+        page = service.getProductPage("productCode", null, catalog.size() - 1);
+        assertNotNull(page.getNextCursor());
+        ProductPageDTO last = service.getProductPage("productCode", page.getNextCursor(), catalog.size() - 1);
+        assertEquals(List.of(catalog.lastKey()), codes(last));
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    void badRequestsAreRejected() {
+        String codeCursor = service.getProductPage("productCode", null, 2).getNextCursor();
+        String idCursor = service.getProductPage("id", null, 2).getNextCursor();
+
+        // A cursor only fits the sort it was issued for
+        assertThrows(IllegalArgumentException.class, () -> service.getProductPage("id", codeCursor, 2));
+        assertThrows(IllegalArgumentException.class, () -> service.getProductPage("productCode", idCursor, 2));
+        assertThrows(IllegalArgumentException.class, () -> service.getProductPage("id", "not base64!", 2));
+        assertThrows(IllegalArgumentException.class, () -> service.getProductPage("id", "aWQ6eA", 2)); // "id:x"
+        assertThrows(IllegalArgumentException.class, () -> service.getProductPage("name", null, 2));
+        assertThrows(IllegalArgumentException.class, () -> service.getProductPage("id", null, 0));
+        assertThrows(IllegalArgumentException.class, () -> service.getProductPage("id", null, 100_000));
+    }
+
+    @Test
+    void restockRequestOfADeletedProductIsDropped() {
+        dataStructureService.enqueueRestockRequest(new RestockRequest("GONE", "Deleted", 10, 0, "HIGH"));
+        dataStructureService.enqueueRestockRequest(new RestockRequest("A10", "Table", 6, 1, "LOW"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            RestockRequestDTO processed = service.processNextRestockRequest();
+            assertEquals("A10", processed.getProductCode());
+            assertEquals(List.of(Map.of(catalog.get("A10"), 6)), adjustments);
+            // Rolled back, so the request for the existing product is served again, the deleted one is not
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(List.of("A10"), dataStructureService.getAllRestockRequests().stream()
+                .map(RestockRequest::getProductCode).toList());
+    }
+
+    private List<String> walk(String sort, int size) {
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            ProductPageDTO page = service.getProductPage(sort, cursor, size);
+            assertTrue(page.getItems().size() <= size);
+            seen.addAll(codes(page));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return seen;
+    }
+
+    private static List<String> codes(ProductPageDTO page) {
+        return page.getItems().stream().map(ProductListItem::getProductCode).toList();
+    }
+
+    /**
+     * Keyset queries over the in-memory catalog, in the order the SQL would return
+     */
+    private ProductRepository repository() {
+        return (ProductRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {ProductRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findListItemsAfterCode" -> catalog.tailMap((String) args[0], false).keySet().stream()
+                            .limit(((Limit) args[1]).max())
+                            .map(this::item)
+                            .toList();
+                    case "findByProductCode" -> Optional.ofNullable(catalog.get((String) args[0])).map(id -> {
+                        Product product = new Product();
+                        product.setId(id);
+                        product.setProductCode((String) args[0]);
+                        return product;
+                    });
+                    case "findListItemsAfterId" -> catalog.entrySet().stream()
+                            .filter(entry -> entry.getValue() > (Long) args[0])
+                            .sorted(Comparator.comparing(Map.Entry::getValue))
+                            .limit(((Limit) args[1]).max())
+                            .map(entry -> item(entry.getKey()))
+                            .toList();
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private ProductListItem item(String code) {
+        Long id = catalog.get(code);
+        return (ProductListItem) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {ProductListItem.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> id;
+                    case "getProductCode" -> code;
+                    default -> null;
+                });
+    }
+}
@@ -0,0 +1,161 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.entities.RestockRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RestockJournalTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayReturnsPendingRequestsInQueueOrder() throws Exception {
+        Path file = directory.resolve("restock.journal");
+        RestockJournal journal = open(file);
+        assertTrue(journal.replay().isEmpty());
+        RestockRequest first = request("P001", 10);
+        RestockRequest second = request("P002", 20);
+        RestockRequest third = request("P003", 30);
+        journal.appendUpsert(first);
+        journal.appendUpsert(second);
+        journal.appendUpsert(third);
+        first.setRequestedQuantity(15);
+        first.setStockRatio(0.25);
+        journal.appendUpsert(first);
+        journal.awaitDurable(journal.appendRemove("P002"));
+        journal.close();
+
+        RestockJournal reopened = open(file);
+        assertEquals(List.of(first, third), reopened.replay());
+        reopened.close();
+    }
+
+    @Test
+    void tornTailIsCutOffAndAppendsContinue() throws Exception {
+        Path file = directory.resolve("restock.journal");
+        RestockJournal journal = open(file);
+        journal.replay();
+        RestockRequest first = request("P001", 10);
+        journal.awaitDurable(journal.appendUpsert(first));
+        journal.close();
+        long goodSize = Files.size(file);
+
+        // A record header promising more bytes than were written, as after a crash mid-write
+        ByteBuffer torn = ByteBuffer.allocate(12).putInt(64).putInt(0).putInt(7);
+        Files.write(file, torn.array(), StandardOpenOption.APPEND);
+
+        RestockJournal reopened = open(file);
+        assertEquals(List.of(first), reopened.replay());
+        assertEquals(goodSize, Files.size(file));
+        RestockRequest second = request("P002", 20);
+        reopened.awaitDurable(reopened.appendUpsert(second));
+        reopened.close();
+
+        RestockJournal again = open(file);
+        assertEquals(List.of(first, second), again.replay());
+        again.close();
+    }
+
+    @Test
+    void compactionKeepsOnlyTheLiveRequests() throws Exception {
+        Path file = directory.resolve("restock.journal");
+        RestockJournal journal = open(file);
+        journal.replay();
+        RestockRequest live = request("P001", 10);
+        long ticket = 0;
+        for (int i = 0; i < 1200; i++) {
+            live.setRequestedQuantity(i);
+            ticket = journal.appendUpsert(live);
+            journal.appendRemove("P999");
+        }
+        journal.awaitDurable(ticket);
+        assertTrue(journal.needsCompaction(1));
+        long sizeBefore = Files.size(file);
+
+        // The rewrite keeps only the live set, also over records still buffered, and appends go to the new file
+        journal.appendUpsert(request("P002", 20));
+        journal.compact(List.of(live));
+        assertFalse(journal.needsCompaction(1));
+        assertTrue(Files.size(file) < sizeBefore);
+        RestockRequest later = request("P003", 30);
+        journal.awaitDurable(journal.appendUpsert(later));
+        journal.close();
+
+        RestockJournal reopened = open(file);
+        assertEquals(List.of(live, later), reopened.replay());
+        reopened.close();
+    }
+
+    @Test
+    void failedWriteIsRetriedOnceTheDiskRecovers() throws Exception {
+        Path file = directory.resolve("restock.journal");
+        RestockJournal journal = open(file);
+        journal.replay();
+        RestockRequest first = request("P001", 10);
+        journal.awaitDurable(journal.appendUpsert(first));
+
+        // Make the next writes fail
+        FileChannel closed = FileChannel.open(file, StandardOpenOption.READ);
+        closed.close();
+        FileChannel channel = swapChannel(journal, closed);
+        RestockRequest second = request("P002", 20);
+        long failing = journal.appendUpsert(second);
+        assertThrows(UncheckedIOException.class, () -> journal.awaitDurable(failing));
+        // Compaction cannot write the buffered records either, so it keeps the current file
+        long sizeBefore = Files.size(file);
+        assertDoesNotThrow(() -> journal.compact(List.of(first)));
+        assertEquals(sizeBefore, Files.size(file));
+
+        // Bytes a failed write may have left behind are cut off before the retry
+        Files.write(file, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        swapChannel(journal, channel);
+        RestockRequest third = request("P003", 30);
+        journal.awaitDurable(journal.appendUpsert(third));
+        journal.close();
+
+        RestockJournal reopened = open(file);
+        assertEquals(List.of(first, second, third), reopened.replay());
+        reopened.close();
+    }
+
+    /**
+     * Replace the journal's file channel while the flusher is kept out
+     */
+    static FileChannel swapChannel(RestockJournal journal, FileChannel replacement) {
+        ReentrantLock fileLock = (ReentrantLock) ReflectionTestUtils.getField(journal, "fileLock");
+        fileLock.lock();
+        try {
+            FileChannel current = (FileChannel) ReflectionTestUtils.getField(journal, "channel");
+            ReflectionTestUtils.setField(journal, "channel", replacement);
+            return current;
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    private static RestockJournal open(Path file) throws IOException {
+        RestockJournal journal = new RestockJournal();
+        ReflectionTestUtils.setField(journal, "journalPath", file.toString());
+        ReflectionTestUtils.setField(journal, "retryDelayMs", 20L);
+        journal.open();
+        return journal;
+    }
+
+    private static RestockRequest request(String productCode, int quantity) {
+        return new RestockRequest(productCode, "Product " + productCode, quantity, 2, "HIGH");
+    }
+}
@@ -0,0 +1,145 @@
+package lk.nibm.kd.hdse252.pdsa_cw.services;
+
+import lk.nibm.kd.hdse252.pdsa_cw.entities.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimilarityIndexServiceTests {
+
+    private static final String[] CATEGORIES = {"Furniture", "Decor", "Kitchen", "Statues"};
+    private static final String[] WOOD_TYPES = {"Teak", "Mahogany", "Ebony"};
+
+    @Test
+    void neighborsMatchScoringEveryProductThroughUpdates() {
+        Random random = new Random(42);
+        Map<Long, Product> catalog = new LinkedHashMap<>();
+        for (long id = 1; id <= 200; id++) {
+            catalog.put(id, product(id, random));
+        }
+        SimilarityIndexService service = new SimilarityIndexService();
+        service.loadAll(new ArrayList<>(catalog.values()));
+        assertMatchesBruteForce(service, catalog);
+
+        for (int step = 0; step < 300; step++) {
+            long id = 1 + random.nextInt(240);
+            if (random.nextInt(4) == 0) {
+                Product removed = catalog.remove(id);
+                if (removed != null) {
+                    service.productRemoved(removed);
+                }
+            } else {
+                Product saved = product(id, random);
+                catalog.put(id, saved);
+                service.productSaved(saved);
+            }
+        }
+        assertMatchesBruteForce(service, catalog);
+        assertThrows(RuntimeException.class, () -> service.findSimilar("MISSING", 5));
+    }
+
+    @Test
+    void parallelBuildMatchesScoringEveryProduct() {
+        Random random = new Random(7);
+        Map<Long, Product> catalog = new LinkedHashMap<>();
+        // Above the size from which the build is split across fork-join tasks
+        for (long id = 1; id <= 3000; id++) {
+            catalog.put(id, product(id, random));
+        }
+        SimilarityIndexService service = new SimilarityIndexService();
+        service.loadAll(new ArrayList<>(catalog.values()));
+        assertEquals(3000, service.size());
+        for (long id = 1; id <= 3000; id += 97) {
+            assertSimilar(service, catalog, catalog.get(id), SimilarityIndexService.NEIGHBORS);
+        }
+    }
+
+    @Test
+    void stockOnlySaveKeepsTheStoredLists() {
+        Random random = new Random(11);
+        Map<Long, Product> catalog = new LinkedHashMap<>();
+        for (long id = 1; id <= 100; id++) {
+            catalog.put(id, product(id, random));
+        }
+        SimilarityIndexService service = new SimilarityIndexService();
+        service.loadAll(new ArrayList<>(catalog.values()));
+        Map<?, ?> lists = (Map<?, ?>) ReflectionTestUtils.getField(service, "neighbors");
+        Object listOf5 = lists.get(5L);
+
+        Product restocked = copy(catalog.get(5L));
+        restocked.setStock(99);
+        catalog.put(5L, restocked);
+        service.productSaved(restocked);
+        assertSame(listOf5, lists.get(5L));
+        // The new copy is served, with the same neighbors
+        assertEquals(99, service.findSimilar("C1", 100).stream()
+                .filter(similarity -> similarity.getProduct().getId() == 5L)
+                .findFirst().orElseThrow().getProduct().getStock());
+        assertMatchesBruteForce(service, catalog);
+
+        // The stored values are compared, not the entity, so a copy changed in place is still refreshed
+        restocked.setSellingPrice(restocked.getSellingPrice() + 700);
+        service.productSaved(restocked);
+        assertNotSame(listOf5, ((Map<?, ?>) ReflectionTestUtils.getField(service, "neighbors")).get(5L));
+        assertMatchesBruteForce(service, catalog);
+    }
+
+    private static void assertMatchesBruteForce(SimilarityIndexService service, Map<Long, Product> catalog) {
+        for (Product target : catalog.values()) {
+            assertSimilar(service, catalog, target, SimilarityIndexService.NEIGHBORS);
+        }
+        // Longer than the stored lists, computed from the candidate buckets
+        Product first = catalog.values().iterator().next();
+        assertSimilar(service, catalog, first, 3 * SimilarityIndexService.NEIGHBORS);
+    }
+
+    private static void assertSimilar(SimilarityIndexService service, Map<Long, Product> catalog,
+                                      Product target, int limit) {
+        List<Product> expected = catalog.values().stream()
+                .filter(other -> !other.getId().equals(target.getId()))
+                .sorted(Comparator
+                        .comparingDouble((Product other) -> -ProductAnalyticsService.calculateSimilarity(target, other))
+                        .thenComparing(Product::getId))
+                .limit(limit)
+                .toList();
+        List<ProductAnalyticsService.ProductSimilarity> actual = service.findSimilar(target.getProductCode(), limit);
+        assertEquals(expected.stream().map(Product::getId).toList(),
+                actual.stream().map(similarity -> similarity.getProduct().getId()).toList(),
+                target.getProductCode());
+        for (ProductAnalyticsService.ProductSimilarity similarity : actual) {
+            assertEquals(ProductAnalyticsService.calculateSimilarity(target, similarity.getProduct()),
+                    similarity.getSimilarityScore());
+        }
+    }
+
+    private static Product copy(Product product) {
+        Product copy = new Product();
+        copy.setId(product.getId());
+        copy.setProductCode(product.getProductCode());
+        copy.setName(product.getName());
+        copy.setCategory(product.getCategory());
+        copy.setWoodType(product.getWoodType());
+        copy.setSellingPrice(product.getSellingPrice());
+        return copy;
+    }
+
+    private static Product product(long id, Random random) {
+        Product product = new Product();
+        product.setId(id);
+        product.setProductCode("C" + id);
+        product.setName("Item " + id);
+        product.setCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+        product.setWoodType(WOOD_TYPES[random.nextInt(WOOD_TYPES.length)]);
+        // Rounded prices, so equal scores are common and the id tie-break matters
+        product.setSellingPrice(500.0 * (1 + random.nextInt(60)));
+        return product;
+    }
+}